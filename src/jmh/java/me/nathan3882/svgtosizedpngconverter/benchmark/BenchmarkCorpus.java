@@ -0,0 +1,80 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.FileUtils;
+
+import me.nathan3882.svgtosizedpngconverter.types.AndroidCompatibleImageType;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+import me.nathan3882.svgtosizedpngconverter.types.IOSCompatibleImageType;
+
+/**
+ * The svg files the benchmarks are run against, bundled as resources: a simple glyph, heavy paths, gradients and
+ * filters. They're copied out to a temporary directory because the converter reads its inputs from files.
+ */
+public final class BenchmarkCorpus {
+
+    /**
+     * The names of the bundled svg files, without their extension. Kept in step with the {@code @Param}s of the
+     * benchmarks.
+     */
+    public static final String GLYPH = "glyph";
+    public static final String PATHS = "paths";
+    public static final String GRADIENTS = "gradients";
+    public static final String FILTERS = "filters";
+
+    private static final String RESOURCE_DIRECTORY = "/corpus/";
+    private static final String SVG_EXTENSION = ".svg";
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * Copies a bundled svg file into a directory.
+     *
+     * @param name      the name of the svg, such as {@link #GLYPH}
+     * @param directory the directory to copy it into
+     * @return the copied svg file
+     */
+    public static File copyTo(String name, Path directory) throws IOException {
+        final Path svgPath = directory.resolve(name + SVG_EXTENSION);
+
+        try (InputStream svgStream = BenchmarkCorpus.class.getResourceAsStream(RESOURCE_DIRECTORY + name + SVG_EXTENSION)) {
+            if (svgStream == null) {
+                throw new IOException("There is no corpus svg called " + name);
+            }
+            Files.copy(svgStream, svgPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return svgPath.toFile();
+    }
+
+    /**
+     * Finds the image type an image size {@code @Param} names, which is the name of either an
+     * {@link AndroidCompatibleImageType} or an {@link IOSCompatibleImageType} constant.
+     *
+     * @param name the constant name
+     * @return the image type
+     */
+    public static FilenameAttachableImageType imageTypeNamed(String name) {
+        for (AndroidCompatibleImageType androidImageType : AndroidCompatibleImageType.values()) {
+            if (androidImageType.name().equals(name)) {
+                return androidImageType;
+            }
+        }
+        return IOSCompatibleImageType.valueOf(name);
+    }
+
+    /**
+     * Deletes a temporary directory the corpus was copied into, along with everything created inside of it.
+     *
+     * @param directory the directory to delete
+     */
+    public static void delete(Path directory) {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+}
@@ -0,0 +1,80 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.nathan3882.svgtosizedpngconverter.ConversionEngine;
+import me.nathan3882.svgtosizedpngconverter.ConversionResult;
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
+import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+
+/**
+ * Measures a whole conversion of an input, from a cold parse to every iOS and Android image, on a single worker
+ * thread so that the result doesn't depend on the number of processors. Each is measured rendering every size, and
+ * with --downsample rendering only the largest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS})
+    public String svg;
+
+    @Param({"false", "true"})
+    public boolean downsample;
+
+    private Path corpusDirectory;
+    private File svgFile;
+    private File outputDirectory;
+    private ConversionEngine conversionEngine;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        this.svgFile = BenchmarkCorpus.copyTo(svg, corpusDirectory);
+        this.outputDirectory = corpusDirectory.resolve("output").toFile();
+
+        final ConversionSettings settings = new ConversionSettings();
+        settings.setThreads(1);
+        settings.setDownsample(downsample);
+        this.conversionEngine = new ConversionEngine(settings);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        conversionEngine.shutdown();
+        SvgDocumentCache.getShared().invalidate(svgFile);
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public ConversionResult allDensities() throws DuplicateFileException, LackOfTransformationException, TransformerException, IOException {
+        //Forget the last parse, so every invocation pays for its own.
+        SvgDocumentCache.getShared().invalidate(svgFile);
+        return conversionEngine.convert(svgFile, outputDirectory, false);
+    }
+}
@@ -0,0 +1,86 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Measures an input from a cold parse through to its written outputs, for each size on its own, the way a single
+ * density is created. See {@link ConversionBenchmark} for a whole conversion of every size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS})
+    public String svg;
+
+    @Param({"L_DPI", "M_DPI", "H_DPI", "X_HDPI", "XX_HDPI", "XXX_HDPI", "NO_DPI", "ONE_X", "TWO_X", "THREE_X"})
+    public String imageType;
+
+    private Path corpusDirectory;
+    private File svgFile;
+    private File outputSvgFile;
+    private File outputPngFile;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        this.svgFile = BenchmarkCorpus.copyTo(svg, corpusDirectory);
+        this.outputSvgFile = corpusDirectory.resolve("output").resolve("resized.svg").toFile();
+        this.outputPngFile = corpusDirectory.resolve("output").resolve("resized.png").toFile();
+
+        final FilenameAttachableImageType filenameAttachableImageType = BenchmarkCorpus.imageTypeNamed(imageType);
+        this.width = filenameAttachableImageType.getWidth();
+        this.height = filenameAttachableImageType.getHeight();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SvgDocumentCache.getShared().invalidate(svgFile);
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public File density() throws DuplicateFileException, LackOfTransformationException, TransformerException, IOException {
+        //Forget the last parse, so every invocation pays for its own.
+        SvgDocumentCache.getShared().invalidate(svgFile);
+
+        final SvgFile baseSvgFile = SvgFile.fromFile(svgFile.getPath());
+        if (!baseSvgFile.resizeInMemory(width, height)) {
+            throw new IllegalStateException(svgFile + " could not be resized");
+        }
+        baseSvgFile.saveTo(outputSvgFile, true);
+        baseSvgFile.createPngAlternative(outputPngFile);
+        return outputPngFile;
+    }
+}
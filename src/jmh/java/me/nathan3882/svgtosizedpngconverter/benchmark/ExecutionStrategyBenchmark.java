@@ -0,0 +1,88 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.nathan3882.svgtosizedpngconverter.BatchConverter;
+import me.nathan3882.svgtosizedpngconverter.ConversionEngine;
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
+import me.nathan3882.svgtosizedpngconverter.ExecutionStrategy;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+
+/**
+ * Measures a batch conversion of the whole corpus on each --executor, with every processor, so that the quickest on
+ * a particular build host can be chosen. Run it on the host itself, with -Djmh.args="ExecutionStrategyBenchmark",
+ * and on Java 21 or later to measure virtual threads rather than the pool they fall back to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionStrategyBenchmark {
+
+    @Param({"sequential", "pool", "forkjoin", "virtual"})
+    public String executor;
+
+    private Path corpusDirectory;
+    private List<BatchConverter.BatchInput> inputs;
+    private File outputDirectory;
+    private ConversionEngine conversionEngine;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        final Path inputDirectory = corpusDirectory.resolve("input");
+        Files.createDirectories(inputDirectory);
+
+        this.inputs = new ArrayList<>();
+        for (String svg : new String[]{BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS}) {
+            inputs.add(new BatchConverter.BatchInput(BenchmarkCorpus.copyTo(svg, inputDirectory), inputDirectory.relativize(inputDirectory)));
+        }
+        this.outputDirectory = corpusDirectory.resolve("output").toFile();
+
+        final ConversionSettings settings = new ConversionSettings();
+        settings.setExecutionStrategy(ExecutionStrategy.fromName(executor)
+                .orElseThrow(() -> new IllegalArgumentException("There is no executor called " + executor)));
+        this.conversionEngine = new ConversionEngine(settings);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        conversionEngine.shutdown();
+        forgetParses();
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public BatchConverter.BatchSummary batch() {
+        //Forget the last parses, so every invocation pays for its own.
+        forgetParses();
+        return new BatchConverter(conversionEngine).convertAll(inputs, outputDirectory);
+    }
+
+    private void forgetParses() {
+        for (BatchConverter.BatchInput input : inputs) {
+            SvgDocumentCache.getShared().invalidate(input.getSvgFile());
+        }
+    }
+}
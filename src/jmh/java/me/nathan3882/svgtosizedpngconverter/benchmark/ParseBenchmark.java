@@ -0,0 +1,58 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgMetaPost;
+
+/**
+ * Measures parsing an input svg with {@link SvgMetaPost}, which is done once per input, whatever its sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS})
+    public String svg;
+
+    private Path corpusDirectory;
+    private String svgUri;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        final File svgFile = BenchmarkCorpus.copyTo(svg, corpusDirectory);
+        this.svgUri = svgFile.toURI().toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public Document parse() throws IOException {
+        return new SvgMetaPost(svgUri).getSVGDocument();
+    }
+}
@@ -0,0 +1,107 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.png.BatikPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.OptimizingPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.PngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.PngFilter;
+import me.nathan3882.svgtosizedpngconverter.png.TunedPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+
+/**
+ * Compares the throughput of the png encoders on the same rendered image. Output size is the other half of the
+ * trade off, so the encoded size of each combination is printed when it's set up. The 2048 pixel size is large enough
+ * for the {@link TunedPngEncoder} to deflate in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PngEncoderBenchmark {
+
+    @Param({BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS})
+    public String svg;
+
+    @Param({"180", "1024", "2048"})
+    public int size;
+
+    @Param({"batik", "level1-none", "level6-adaptive", "level9-adaptive", "batik-optimized"})
+    public String encoder;
+
+    private Path corpusDirectory;
+    private File svgFile;
+    private BufferedImage image;
+    private PngEncoder pngEncoder;
+    private ByteArrayOutputStream pngOutputStream;
+
+    @Setup
+    public void setUp() throws IOException, LackOfTransformationException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        this.svgFile = BenchmarkCorpus.copyTo(svg, corpusDirectory);
+
+        final SvgFile baseSvgFile = SvgFile.fromFile(svgFile.getPath());
+        if (!baseSvgFile.resizeInMemory(size, size)) {
+            throw new IllegalStateException(svgFile + " could not be resized");
+        }
+        this.image = baseSvgFile.rasterize();
+        this.pngEncoder = encoderNamed(encoder);
+        this.pngOutputStream = new ByteArrayOutputStream(size * size * 4);
+
+        pngEncoder.encode(image, pngOutputStream);
+        System.out.println(svg + " at " + size + "px with " + encoder + " is " + pngOutputStream.size() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        SvgDocumentCache.getShared().invalidate(svgFile);
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        pngOutputStream.reset();
+        pngEncoder.encode(image, pngOutputStream);
+        return pngOutputStream.size();
+    }
+
+    private static PngEncoder encoderNamed(String name) {
+        switch (name) {
+            case "batik":
+                return BatikPngEncoder.INSTANCE;
+            case "level1-none":
+                return new TunedPngEncoder(1, PngFilter.NONE);
+            case "level6-adaptive":
+                return new TunedPngEncoder(6, PngFilter.ADAPTIVE);
+            case "level9-adaptive":
+                return new TunedPngEncoder(9, PngFilter.ADAPTIVE);
+            case "batik-optimized":
+                return new OptimizingPngEncoder(BatikPngEncoder.INSTANCE);
+            default:
+                throw new IllegalArgumentException("There is no png encoder called " + name);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package me.nathan3882.svgtosizedpngconverter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Measures each stage that runs once per output size, against an input that's already been parsed: resizing a copy
+ * of the document, serializing the resized svg with {@link SvgFile#saveTo} and rendering the png with
+ * {@link SvgFile#createPngAlternative(File)}. Each stage includes the resize it depends on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param({BenchmarkCorpus.GLYPH, BenchmarkCorpus.PATHS, BenchmarkCorpus.GRADIENTS, BenchmarkCorpus.FILTERS})
+    public String svg;
+
+    @Param({"L_DPI", "M_DPI", "H_DPI", "X_HDPI", "XX_HDPI", "XXX_HDPI", "NO_DPI", "ONE_X", "TWO_X", "THREE_X"})
+    public String imageType;
+
+    private Path corpusDirectory;
+    private File svgFile;
+    private File outputSvgFile;
+    private File outputPngFile;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.corpusDirectory = Files.createTempDirectory("svgtspc-benchmark");
+        this.svgFile = BenchmarkCorpus.copyTo(svg, corpusDirectory);
+        this.outputSvgFile = corpusDirectory.resolve("output").resolve("resized.svg").toFile();
+        this.outputPngFile = corpusDirectory.resolve("output").resolve("resized.png").toFile();
+
+        final FilenameAttachableImageType filenameAttachableImageType = BenchmarkCorpus.imageTypeNamed(imageType);
+        this.width = filenameAttachableImageType.getWidth();
+        this.height = filenameAttachableImageType.getHeight();
+
+        //Parsed once here, so that only the per size stages are measured.
+        SvgDocumentCache.getShared().get(svgFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SvgDocumentCache.getShared().invalidate(svgFile);
+        BenchmarkCorpus.delete(corpusDirectory);
+    }
+
+    @Benchmark
+    public SVGOMDocument resizeInMemory() {
+        return resize().getResizedDocument().get();
+    }
+
+    @Benchmark
+    public String saveTo() throws DuplicateFileException, LackOfTransformationException, TransformerException, IOException {
+        return resize().saveTo(outputSvgFile, false);
+    }
+
+    @Benchmark
+    public File createPngAlternative() throws IOException, LackOfTransformationException {
+        resize().createPngAlternative(outputPngFile);
+        return outputPngFile;
+    }
+
+    private SvgFile resize() {
+        final SvgFile baseSvgFile = SvgFile.fromFile(svgFile.getPath());
+        if (!baseSvgFile.resizeInMemory(width, height)) {
+            throw new IllegalStateException(svgFile + " could not be resized");
+        }
+        return baseSvgFile;
+    }
+}
@@ -2,43 +2,64 @@ package me.nathan3882.svgtosizedpngconverter;
 
 
 import org.apache.commons.cli.CommandLine;
-import org.apache.commons.cli.Option;
 
-import java.util.List;
 import java.util.Optional;
 
 public enum Argument {
 
-    OUTPUT_FILE_DIRECTORY("o", "outputDirectory", "This argument lets the program know which directory to put / output the iOS and Android png files into."),
-    INPUT_FILE("i", "inputFile", "This argument lets the program know which directory to fetch the initial SVG file from.");
+    OUTPUT_FILE_DIRECTORY("o", "outputDirectory", true, true, "This argument lets the program know which directory to put / output the iOS and Android png files into."),
+    INPUT_FILE("i", "inputFile", true, true, "This argument lets the program know which SVG file to convert. A directory, or a glob such as icons/**/*.svg, converts every SVG file found in it."),
+    NO_SVG("ns", "no-svg", false, false, "Only write the png images, the resized svg files are not saved to the output directory."),
+    THREADS("t", "threads", true, false, "The number of worker threads to transform the densities on. Defaults to the number of available processors."),
+    EXECUTOR("ex", "executor", true, false, "What the densities are transformed on: pool, a fixed pool of --threads threads and the default, sequential, one at a time on a single thread, forkjoin, a work stealing pool of --threads threads, or virtual, a virtual thread each on Java 21 or later."),
+    WATCH("w", "watch", false, false, "Convert the input, then keep watching it and convert each SVG file again as soon as it's saved, deleting the images of any that are deleted, until stopped with Ctrl+C."),
+    DAEMON("d", "daemon", false, false, "Keep a warmed up converter running, which converts each request sent to it by --client over a loopback socket."),
+    CLIENT("c", "client", false, false, "Send this conversion to the converter started with --daemon, rather than converting it in this process."),
+    PORT("p", "port", true, false, "The loopback port the --daemon listens on and the --client connects to."),
+    SHUTDOWN("sd", "shutdown", false, false, "With --client, stop the running --daemon once the requests it's converting are finished, rather than sending it a conversion."),
+    INCREMENTAL("inc", "incremental", false, false, "Only convert inputs whose content, output sizes or render settings changed since the outputs were last created, as recorded in a manifest in the output directory."),
+    CACHE_DIRECTORY("cd", "cache-dir", true, false, "A directory of rendered png images shared between runs, projects and processes. Identical svgs at identical sizes are copied or linked from it instead of rendered again."),
+    CACHE_SIZE("cs", "cache-size", true, false, "The size in megabytes the --cache-dir is kept under, by evicting the least recently used renders. Defaults to 512."),
+    STREAM_SVG("ss", "stream-svg", false, false, "Write the resized svg files by streaming the input through and only rewriting the root width and height, keeping every other byte as it was, rather than re-serializing the whole document."),
+    METRICS_OUT("mo", "metrics-out", true, false, "A file to write the time taken by each stage, and counts of inputs, outputs, bytes and failures, to at the end of the run. Written as Prometheus text if it ends in .prom, otherwise as JSON."),
+    PNG_LEVEL("pl", "png-level", true, false, "Encode the png images with the tuned encoder at this zlib compression level, from 0 for fastest to 9 for smallest. Defaults to 6 when --png-filter is given."),
+    PNG_FILTER("pf", "png-filter", true, false, "Encode the png images with the tuned encoder using this row filter strategy: none, sub, up or adaptive. Defaults to none when --png-level is given, which suits flat icon artwork best."),
+    OPTIMIZE_PNG("op", "optimize-png", false, false, "Losslessly shrink every png after it's encoded: images of 256 colours or fewer are also written as palette pngs, ancillary chunks that don't change how they look are dropped, and the smaller result is kept."),
+    DOWNSAMPLE("ds", "downsample", false, false, "Render the largest iOS and Android png once each, and shrink it down to the smaller sizes by area averaging, instead of rendering every size from the svg."),
+    DOWNSAMPLE_MAX_DELTA("dmd", "downsample-max-delta", true, false, "Implies --downsample, and also renders each smaller size to check the downsampled png against. If any channel of any pixel differs by more than this, from 0 to 255, the true render is written instead."),
+    VECTOR_DRAWABLE("vd", "vector-drawable", false, false, "Convert each svg into a single Android VectorDrawable in drawable, instead of a png per density. Svgs that use something a VectorDrawable can't draw, such as text, filters or gradients, get their pngs as before."),
+    ATLAS("at", "atlas", false, false, "Pack the pngs of every svg into a texture atlas per density, written to an atlas directory as one or a few sheets with a JSON index of where each icon is, instead of a png per svg."),
+    ATLAS_SIZE("as", "atlas-size", true, false, "The most pixels wide and high each --atlas sheet can be, 2048 by default. Icons that don't fit go on further sheets."),
+    MEMORY_BUDGET("mb", "memory-budget", true, false, "The megabytes of memory the densities being rendered at once are estimated to need at most, as each is only started once it fits. Defaults to half the maximum heap, 0 starts every density straight away."),
+    WRITER_THREADS("wt", "writer-threads", true, false, "The number of dedicated threads to write the encoded svg and png files on, so that rendering doesn't wait on the disk. 0, the default, writes each file on the thread that rendered it."),
+    WRITE_QUEUE("wq", "write-queue", true, false, "The most encoded files that can wait for a writer thread, 32 by default. Rendering is held back while the queue is full.");
 
     private final String argumentString;
     private final String argumentStringLong;
+    private final boolean takesValue;
+    private final boolean required;
     private final String description;
 
-    Argument(String argumentString, String argumentStringLong, String description) {
+    Argument(String argumentString, String argumentStringLong, boolean takesValue, boolean required, String description) {
         this.argumentString = argumentString;
         this.argumentStringLong = argumentStringLong;
+        this.takesValue = takesValue;
+        this.required = required;
         this.description = description;
     }
 
     public Optional<String> getValueFromContainer(CommandLine commandLineOptionContainer) {
-        Option[] optionArray = commandLineOptionContainer.getOptions();
-        final List<String> argList = commandLineOptionContainer.getArgList();
-
-        //Arg list is the actual provided values at what ever index. Indexes are the same as the index in options list
-        for (int index = 0; index < optionArray.length; index++) {
-
-            Option argumentString = optionArray[index];
-
-            if (getArgumentString().equals(argumentString.getOpt())) {
-                // If this Argument is 'o' AND argument string's getOpt is 'o' as index i, then we know that the
-                // argList.get(i) will be the associated value from the container.
-                return Optional.of(argList.get(index));
-            }
+        return Optional.ofNullable(commandLineOptionContainer.getOptionValue(getArgumentString()));
+    }
 
-        }
-        return Optional.empty();
+    /**
+     * Gets whether this argument was provided at all, useful for flags that don't take a value.
+     *
+     * @param commandLineOptionContainer the parsed command line
+     * @return true if the argument was provided
+     */
+    public boolean isPresentIn(CommandLine commandLineOptionContainer) {
+        return commandLineOptionContainer.hasOption(getArgumentString());
     }
 
     public String getDescription() {
@@ -53,4 +74,12 @@ public enum Argument {
         return argumentString;
     }
 
+    public boolean takesValue() {
+        return takesValue;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
 }
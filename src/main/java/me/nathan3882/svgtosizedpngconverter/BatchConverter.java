@@ -0,0 +1,427 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgPreflight;
+import me.nathan3882.svgtosizedpngconverter.types.AndroidCompatibleImageType;
+import me.nathan3882.svgtosizedpngconverter.types.FileType;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+import me.nathan3882.svgtosizedpngconverter.types.IOSCompatibleImageType;
+
+/**
+ * Converts every svg found under a directory, or matched by a glob, in one run. Each input's images go to the same
+ * sub path under the output directory as the input has under the directory it was found in.
+ */
+public class BatchConverter {
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final String ANY_DIRECTORY_GLOB_PREFIX = "**/";
+
+    private final ConversionEngine conversionEngine;
+    private final ConversionSettings settings;
+    private final int iconWorkers;
+
+    /**
+     * @param conversionEngine the engine that renders the densities of every input
+     */
+    public BatchConverter(ConversionEngine conversionEngine) {
+        this(conversionEngine, conversionEngine.getSettings());
+    }
+
+    /**
+     * @param conversionEngine the engine that renders the densities of every input
+     * @param settings         the settings to convert every input with
+     */
+    public BatchConverter(ConversionEngine conversionEngine, ConversionSettings settings) {
+        this.conversionEngine = conversionEngine;
+        this.settings = settings;
+        this.iconWorkers = conversionEngine.getSettings().getExecutionStrategy().getParallelism(conversionEngine.getSettings().getThreads());
+    }
+
+    /**
+     * Gets whether the given input argument names a batch of svgs, being a directory or a glob, rather than one file.
+     * A path that exists is never a glob, even if it has glob characters in it, such as {@code icons [old]/a.svg}.
+     *
+     * @param inputArgument the value of the input argument
+     * @return true if it should be converted by a {@link BatchConverter}
+     */
+    public static boolean isBatchInput(String inputArgument) {
+        final File inputFile = new File(inputArgument);
+        if (inputFile.exists()) {
+            return inputFile.isDirectory();
+        }
+        return StringUtils.containsAny(inputArgument, GLOB_CHARACTERS);
+    }
+
+    /**
+     * Finds every svg that the input argument names, walking the directory, or the part of the glob before its first
+     * wildcard, with NIO.
+     *
+     * @param inputArgument        a directory, or a glob such as {@code icons/**}{@code /*.svg}
+     * @param imageOutputDirectory the directory the images are written to, inside of which no inputs are found
+     * @return the inputs found, sorted by path
+     */
+    public static List<BatchInput> findInputs(String inputArgument, File imageOutputDirectory) throws IOException {
+        return InputPattern.of(inputArgument).findInputs(imageOutputDirectory);
+    }
+
+    /**
+     * Converts every input, keeping at most a bounded number of inputs queued at once. Inputs that fail are counted
+     * and reported, and don't stop the rest of the batch.
+     * <p>
+     * Every input is preflighted first, see {@link SvgPreflight}. Those that aren't well formed svgs are rejected
+     * before anything is parsed or rendered, and the rest are converted costliest first, so that a large illustration
+     * found last doesn't leave every other thread idle while it's rendered alone at the end of the batch.
+     *
+     * @param inputs               the inputs to convert
+     * @param imageOutputDirectory the directory to recreate the inputs' sub paths inside of
+     * @return the summary of the batch
+     */
+    public BatchSummary convertAll(List<BatchInput> inputs, File imageOutputDirectory) {
+        final BatchSummary batchSummary = new BatchSummary();
+
+        //Inputs only wait on their densities here, the rendering itself happens on the engine's worker pool.
+        //The queue is bounded, and once it's full the submitting thread converts the input itself, which stops
+        //thousands of inputs being queued up at once.
+        final ThreadPoolExecutor inputExecutor = new ThreadPoolExecutor(iconWorkers, iconWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(iconWorkers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            for (BatchInput input : preflight(inputs, batchSummary, inputExecutor)) {
+                inputExecutor.execute(() -> convertOne(input, imageOutputDirectory, batchSummary));
+            }
+        } finally {
+            inputExecutor.shutdown();
+            awaitUninterruptibly(inputExecutor);
+        }
+
+        batchSummary.finish();
+        return batchSummary;
+    }
+
+    /**
+     * Preflights every input on the input workers, reporting and rejecting those that can't be converted. Each one is
+     * only read through, but that's still much of a batch's time before its first render when it's thousands of svgs.
+     *
+     * @return the inputs that can be converted, costliest first, and otherwise in the order they were given
+     */
+    private static List<BatchInput> preflight(List<BatchInput> inputs, BatchSummary batchSummary, ExecutorService inputExecutor) {
+        final List<FilenameAttachableImageType> imageTypes = new ArrayList<>();
+        imageTypes.addAll(IOSCompatibleImageType.asList());
+        imageTypes.addAll(AndroidCompatibleImageType.asList());
+
+        final List<Future<SvgPreflight>> preflightFutures = new ArrayList<>(inputs.size());
+        for (BatchInput input : inputs) {
+            preflightFutures.add(inputExecutor.submit(() -> {
+                final long startNanos = System.nanoTime();
+                final SvgPreflight svgPreflight = SvgPreflight.of(input.getSvgFile(), imageTypes);
+                ConversionMetrics.getShared().recordStage(Stage.PREFLIGHT, System.nanoTime() - startNanos);
+                return svgPreflight;
+            }));
+        }
+
+        final List<BatchInput> preflightedInputs = new ArrayList<>(inputs.size());
+        final Map<BatchInput, Long> costs = new HashMap<>();
+
+        //Gathered in the order they were given, so that problems are reported in the same order every time.
+        for (int i = 0; i < inputs.size(); i++) {
+            final BatchInput input = inputs.get(i);
+            final SvgPreflight svgPreflight;
+            try {
+                svgPreflight = getUninterruptibly(preflightFutures.get(i));
+            } catch (ExecutionException e) {
+                batchSummary.record(false, false, 0);
+                ConversionMetrics.getShared().recordInputFailure();
+                System.out.println("ERROR: " + input.getSvgFile().getPath() + " could not be preflighted, so it's been skipped - " + e.getCause());
+                continue;
+            }
+
+            final Optional<String> problem = svgPreflight.getProblem();
+            if (problem.isPresent()) {
+                batchSummary.record(false, false, 0);
+                ConversionMetrics.getShared().recordInputFailure();
+                System.out.println("ERROR: " + input.getSvgFile().getPath() + " isn't a well formed svg, so it's been skipped - " + problem.get());
+                continue;
+            }
+            preflightedInputs.add(input);
+            costs.put(input, svgPreflight.getCost());
+        }
+
+        //The sort is stable, so inputs of the same cost keep their order.
+        preflightedInputs.sort(Comparator.comparingLong(costs::get).reversed());
+        return preflightedInputs;
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void convertOne(BatchInput input, File imageOutputDirectory, BatchSummary batchSummary) {
+        final File inputSvgFile = input.getSvgFile();
+        final File outputDirectory = input.getRelativeDirectory().toString().isEmpty()
+                ? imageOutputDirectory
+                : new File(imageOutputDirectory, input.getRelativeDirectory().toString());
+
+        try {
+            final ConversionResult conversionResult = conversionEngine.convert(inputSvgFile, outputDirectory, false, settings);
+            batchSummary.record(conversionResult.isSuccessful(), conversionResult.isUpToDate(), conversionResult.getBytesWritten());
+
+            if (conversionResult.isUpToDate()) {
+                return; //Nothing to report, there's often thousands of these.
+            }
+            if (conversionResult.isSuccessful()) {
+                System.out.println("Converted " + inputSvgFile.getPath() + " into " + outputDirectory.getPath());
+                for (String note : conversionResult.getNotes()) {
+                    System.out.println("  " + note);
+                }
+            } else {
+                System.out.println("ERROR: Not every image of " + inputSvgFile.getPath() + " could be created :(");
+            }
+        } catch (Throwable throwable) {
+            batchSummary.record(false, false, 0);
+            System.out.println("ERROR: " + inputSvgFile.getPath() + " could not be converted - " + throwable);
+        }
+    }
+
+    private static void awaitUninterruptibly(ThreadPoolExecutor executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The svgs an input argument names: those under a base directory that a matcher accepts the relative path of.
+     */
+    public static class InputPattern {
+
+        private final Path baseDirectory;
+        private final PathMatcher pathMatcher;
+        private final boolean recursive;
+
+        private InputPattern(Path baseDirectory, PathMatcher pathMatcher, boolean recursive) {
+            this.baseDirectory = baseDirectory;
+            this.pathMatcher = pathMatcher;
+            this.recursive = recursive;
+        }
+
+        /**
+         * Reads an input argument, which is a directory, a glob, or a single svg file. A path that exists is never
+         * read as a glob, even if it has glob characters in it.
+         *
+         * @param inputArgument a directory, a glob such as {@code icons/**}{@code /*.svg}, or an svg file
+         * @return the pattern of the svgs the argument names
+         */
+        public static InputPattern of(String inputArgument) {
+            if (!new File(inputArgument).exists() && StringUtils.containsAny(inputArgument, GLOB_CHARACTERS)) {
+                final String normalisedArgument = FilenameUtils.separatorsToUnix(inputArgument);
+                final int firstGlobIndex = StringUtils.indexOfAny(normalisedArgument, GLOB_CHARACTERS);
+                final int baseEndIndex = normalisedArgument.lastIndexOf('/', firstGlobIndex);
+
+                final Path baseDirectory = Paths.get(baseEndIndex < 0 ? "." : normalisedArgument.substring(0, baseEndIndex + 1));
+                final String glob = normalisedArgument.substring(baseEndIndex + 1);
+
+                final PathMatcher globMatcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+                //"**/*.svg" should also match svgs directly inside the base directory.
+                final PathMatcher topLevelMatcher = glob.startsWith(ANY_DIRECTORY_GLOB_PREFIX)
+                        ? FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(ANY_DIRECTORY_GLOB_PREFIX.length()))
+                        : globMatcher;
+                return new InputPattern(baseDirectory, path -> globMatcher.matches(path) || topLevelMatcher.matches(path), glob.contains("/"));
+            }
+
+            final Path inputPath = Paths.get(inputArgument);
+            if (Files.isDirectory(inputPath)) {
+                return new InputPattern(inputPath, path -> FilenameUtils.getExtension(path.toString()).equals(FileType.SVG.getExtensionNoDot()), true);
+            }
+
+            //A single file is the only svg in its directory that's matched.
+            final Path fileName = inputPath.getFileName();
+            return new InputPattern(inputPath.getParent() == null ? Paths.get(".") : inputPath.getParent(), path -> path.equals(fileName), false);
+        }
+
+        /**
+         * Finds every svg the pattern matches, walking the base directory with NIO. Svgs inside of the output directory
+         * are never inputs, even if it's inside of the base directory, as they'd be converted again by every batch.
+         *
+         * @param imageOutputDirectory the directory the images are written to
+         * @return the inputs found, sorted by path
+         */
+        public List<BatchInput> findInputs(File imageOutputDirectory) throws IOException {
+            if (!Files.isDirectory(baseDirectory)) {
+                return new ArrayList<>();
+            }
+
+            final Path outputPath = imageOutputDirectory.toPath().toAbsolutePath().normalize();
+            try (Stream<Path> walk = Files.walk(baseDirectory)) {
+                return walk.filter(Files::isRegularFile)
+                        .filter(path -> !path.toAbsolutePath().normalize().startsWith(outputPath))
+                        .filter(this::matches)
+                        .sorted()
+                        .map(this::toBatchInput)
+                        .collect(Collectors.toList());
+            }
+        }
+
+        /**
+         * Gets whether the pattern matches a path, which must be under the base directory.
+         *
+         * @param path the path, as found under {@link #getBaseDirectory()}
+         * @return true if the path is one of the inputs
+         */
+        public boolean matches(Path path) {
+            return path.startsWith(baseDirectory) && pathMatcher.matches(baseDirectory.relativize(path));
+        }
+
+        /**
+         * Gets the input of a path the pattern matches.
+         *
+         * @param path the path, as found under {@link #getBaseDirectory()}
+         * @return the input, along with the directory it's in relative to the base directory
+         */
+        public BatchInput toBatchInput(Path path) {
+            return new BatchInput(path.toFile(), baseDirectory.relativize(path.getParent()));
+        }
+
+        public Path getBaseDirectory() {
+            return baseDirectory;
+        }
+
+        /**
+         * Gets whether the pattern can match svgs inside of the base directory's sub directories.
+         *
+         * @return false if only svgs directly inside of the base directory are matched
+         */
+        public boolean isRecursive() {
+            return recursive;
+        }
+    }
+
+    /**
+     * An svg found by {@link #findInputs}, along with the directory it was found in relative to the batch's base.
+     */
+    public static class BatchInput {
+
+        private final File svgFile;
+        private final Path relativeDirectory;
+
+        public BatchInput(File svgFile, Path relativeDirectory) {
+            this.svgFile = svgFile;
+            this.relativeDirectory = relativeDirectory;
+        }
+
+        public File getSvgFile() {
+            return svgFile;
+        }
+
+        public Path getRelativeDirectory() {
+            return relativeDirectory;
+        }
+    }
+
+    /**
+     * Counts the inputs, failures and bytes of a batch while it's running, from any thread.
+     */
+    public static class BatchSummary {
+
+        private final long startNanos = System.nanoTime();
+        private long finishNanos;
+        private int icons;
+        private int failures;
+        private int upToDate;
+        private long bytesWritten;
+
+        public synchronized void record(boolean successful, boolean wasUpToDate, long bytes) {
+            icons++;
+            if (!successful) {
+                failures++;
+            }
+            if (wasUpToDate) {
+                upToDate++;
+            }
+            bytesWritten += bytes;
+        }
+
+        public synchronized void finish() {
+            this.finishNanos = System.nanoTime();
+        }
+
+        public synchronized double getElapsedSeconds() {
+            return (finishNanos - startNanos) / 1_000_000_000D;
+        }
+
+        public synchronized double getIconsPerSecond() {
+            final double elapsedSeconds = getElapsedSeconds();
+            return elapsedSeconds > 0 ? icons / elapsedSeconds : icons;
+        }
+
+        public synchronized int getIcons() {
+            return icons;
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        public synchronized int getUpToDate() {
+            return upToDate;
+        }
+
+        public synchronized long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Converted %d icons in %.2fs (%.1f icons/sec), %d were already up to date, %d failed, %s written.",
+                    icons, getElapsedSeconds(), getIconsPerSecond(), upToDate, failures, FileUtils.byteCountToDisplaySize(bytesWritten));
+        }
+    }
+}
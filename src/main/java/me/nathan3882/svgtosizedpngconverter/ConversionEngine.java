@@ -0,0 +1,362 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.TransformerException;
+
+import me.nathan3882.svgtosizedpngconverter.atlas.TextureAtlas;
+import me.nathan3882.svgtosizedpngconverter.cache.ContentHash;
+import me.nathan3882.svgtosizedpngconverter.cache.OutputManifest;
+import me.nathan3882.svgtosizedpngconverter.cache.OutputManifests;
+import me.nathan3882.svgtosizedpngconverter.cache.RenderCache;
+import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.output.AsyncOutputWriter;
+import me.nathan3882.svgtosizedpngconverter.svglogic.ParsedSvg;
+import me.nathan3882.svgtosizedpngconverter.svglogic.RasterBufferPool;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+import me.nathan3882.svgtosizedpngconverter.transformers.AndroidImageTransformer;
+import me.nathan3882.svgtosizedpngconverter.transformers.DensityOptions;
+import me.nathan3882.svgtosizedpngconverter.transformers.DensityResult;
+import me.nathan3882.svgtosizedpngconverter.transformers.IOSImageTransformer;
+import me.nathan3882.svgtosizedpngconverter.transformers.MemoryBudget;
+import me.nathan3882.svgtosizedpngconverter.transformers.SvgImageTransformer;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+import me.nathan3882.svgtosizedpngconverter.types.VectorDrawableImageType;
+
+/**
+ * Converts input svg files into the images of every {@link TransformerType}. The densities of all types are
+ * submitted to one shared worker pool as a single job graph, fed by a single parse of the input, so the time per icon
+ * is close to that of its slowest density rather than the sum of them all. The pool is created by the
+ * {@link ExecutionStrategy} of the settings. With --writer-threads, the encoded images are written to disk by a
+ * separate {@link AsyncOutputWriter} while the pool renders the next ones.
+ * Each density only starts once the memory it's estimated to need fits in the engine's {@link MemoryBudget}.
+ */
+public class ConversionEngine {
+
+    private final ConversionSettings settings;
+    private final ExecutorService executorService;
+    private final AsyncOutputWriter asyncOutputWriter;
+    private final MemoryBudget memoryBudget;
+    private final DensityOptions densityOptions;
+    private final OutputManifests outputManifests = new OutputManifests();
+
+    public ConversionEngine(ConversionSettings settings) {
+        this.settings = settings;
+        this.executorService = settings.getExecutionStrategy().createExecutorService(settings.getThreads());
+        this.asyncOutputWriter = settings.getWriterThreads() > 0 ? new AsyncOutputWriter(settings.getWriterThreads(), settings.getWriteQueueCapacity()) : null;
+        this.memoryBudget = settings.getMemoryBudgetBytes() > 0 ? new MemoryBudget(settings.getMemoryBudgetBytes()) : null;
+        this.densityOptions = new DensityOptions(asyncOutputWriter, memoryBudget, settings.getExecutionStrategy().createRenderPermits().orElse(null));
+    }
+
+    /**
+     * Converts one input svg, waiting until every image of it has been created and printing the progress of each.
+     *
+     * @param inputSvgFile         the svg file to convert
+     * @param imageOutputDirectory the directory that the transformers create their own directories inside of
+     * @return the outcome for each {@link TransformerType}
+     */
+    public ConversionResult convert(File inputSvgFile, File imageOutputDirectory) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        return convert(inputSvgFile, imageOutputDirectory, true);
+    }
+
+    /**
+     * Converts one input svg, waiting until every image of it has been created. This is safe to call for several
+     * inputs at once, their densities then share the worker pool.
+     *
+     * @param inputSvgFile         the svg file to convert
+     * @param imageOutputDirectory the directory that the transformers create their own directories inside of
+     * @param printMessages        whether the progress of each density should be printed
+     * @return the outcome for each {@link TransformerType}
+     */
+    public ConversionResult convert(File inputSvgFile, File imageOutputDirectory, boolean printMessages) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        return convert(inputSvgFile, imageOutputDirectory, printMessages, settings);
+    }
+
+    /**
+     * Converts one input svg with settings other than the engine's own, such as those of a single daemon request.
+     * The size of the worker pool, and whether there are writer threads, are always the engine's.
+     *
+     * @param inputSvgFile         the svg file to convert
+     * @param imageOutputDirectory the directory that the transformers create their own directories inside of
+     * @param printMessages        whether the progress of each density should be printed
+     * @param conversionSettings   the settings to transform this input with
+     * @return the outcome for each {@link TransformerType}
+     */
+    public ConversionResult convert(File inputSvgFile, File imageOutputDirectory, boolean printMessages, ConversionSettings conversionSettings) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        final List<SvgImageTransformer> transformers = Arrays.asList(
+                new IOSImageTransformer(inputSvgFile, imageOutputDirectory, conversionSettings),
+                new AndroidImageTransformer(inputSvgFile, imageOutputDirectory, conversionSettings));
+
+        final ConversionResult conversionResult = new ConversionResult();
+
+        //The transformers only create their own directory, not the one it's inside of.
+        Files.createDirectories(imageOutputDirectory.toPath());
+
+        final boolean doPngAlso = true;
+
+        OutputManifest outputManifest = null;
+        String inputHash = null;
+        if (conversionSettings.isIncremental()) {
+            outputManifest = outputManifests.get(imageOutputDirectory);
+            inputHash = ContentHash.of(inputSvgFile);
+
+            if (isUpToDate(transformers, doPngAlso, outputManifest, inputHash, conversionSettings)) {
+                if (printMessages) {
+                    System.out.println(inputSvgFile.getPath() + " hasn't changed since its images were last created, so it's been skipped.");
+                }
+                for (SvgImageTransformer transformer : transformers) {
+                    conversionResult.add(transformer.getTransformerType(), transformer.getOutputDirectory(), true);
+                }
+                conversionResult.setUpToDate(true);
+                return conversionResult;
+            }
+        }
+
+        ConversionMetrics.getShared().recordInput(inputSvgFile.length());
+
+        final ParsedSvg parsedSvg;
+        try {
+            //Parse up front, every density of every type is then rendered from this one parse.
+            parsedSvg = SvgDocumentCache.getShared().get(inputSvgFile);
+        } catch (IOException e) {
+            ConversionMetrics.getShared().recordInputFailure();
+            System.out.println("ERROR: " + inputSvgFile.getPath() + " could not be parsed, so none of its images were created :(");
+            e.printStackTrace();
+
+            for (SvgImageTransformer transformer : transformers) {
+                conversionResult.add(transformer.getTransformerType(), transformer.getOutputDirectory(), false);
+            }
+            return conversionResult;
+        }
+
+        //The rasterizers kept idle between densities hold graphics trees of their own until the input is done.
+        final long idleRasterizerBytes = memoryBudget == null ? 0 :
+                ParsedSvg.MAXIMUM_IDLE_RASTERIZERS * MemoryBudget.estimateDocumentBytes(parsedSvg.getComplexity());
+        if (memoryBudget != null) {
+            memoryBudget.hold(idleRasterizerBytes);
+        }
+
+        try {
+            final List<List<Future<DensityResult>>> densityFuturesPerTransformer = new ArrayList<>();
+            for (SvgImageTransformer transformer : transformers) {
+                densityFuturesPerTransformer.add(transformer.submitDensities(doPngAlso, executorService, densityOptions));
+
+                final Optional<String> vectorFallbackOptional = transformer.getVectorFallback();
+                if (vectorFallbackOptional.isPresent()) {
+                    conversionResult.addNote(vectorFallbackOptional.get());
+                    if (printMessages) {
+                        System.out.println(vectorFallbackOptional.get());
+                    }
+                }
+            }
+
+            for (int index = 0; index < transformers.size(); index++) {
+                final SvgImageTransformer transformer = transformers.get(index);
+                final List<DensityResult> densityResults = SvgImageTransformer.collectResults(densityFuturesPerTransformer.get(index), printMessages);
+
+                final boolean successful = SvgImageTransformer.isSuccessful(densityResults);
+                conversionResult.add(transformer.getTransformerType(), transformer.getOutputDirectory(), successful);
+                for (DensityResult densityResult : densityResults) {
+                    conversionResult.addBytesWritten(densityResult.getBytesWritten());
+                }
+                if (successful) {
+                    deleteSupersededOutputs(transformer, outputManifest, printMessages);
+                }
+            }
+        } finally {
+            //Every density is done, so the graphics trees built for them are no longer needed.
+            parsedSvg.dropIdleRasterizers();
+            if (memoryBudget != null) {
+                memoryBudget.releaseHeld(idleRasterizerBytes);
+            }
+        }
+
+        if (outputManifest != null && conversionResult.isSuccessful()) {
+            record(transformers, doPngAlso, outputManifest, inputHash, conversionSettings);
+        }
+        return conversionResult;
+    }
+
+    /**
+     * Deletes what's left of the kind of output a transformer didn't create this time, a VectorDrawable or its
+     * densities, and forgets it in the manifest, so the stale one isn't used in place of the new one.
+     */
+    private static void deleteSupersededOutputs(SvgImageTransformer transformer, OutputManifest outputManifest, boolean printMessages) throws IOException {
+        for (File supersededFile : transformer.getSupersededOutputFiles()) {
+            if (Files.deleteIfExists(supersededFile.toPath()) && printMessages) {
+                System.out.println("Deleted \"" + supersededFile.getPath() + "\" as " + (transformer.hasVectorOutput() ? "a vector drawable" : "pngs") + " replaced it.");
+            }
+            if (outputManifest != null) {
+                outputManifest.remove(supersededFile);
+            }
+        }
+    }
+
+    private static boolean isUpToDate(List<SvgImageTransformer> transformers, boolean isPngAlso, OutputManifest outputManifest, String inputHash, ConversionSettings conversionSettings) {
+        final String outputFingerprint = conversionSettings.getOutputFingerprint();
+        final String version = ConverterVersion.get();
+
+        for (SvgImageTransformer transformer : transformers) {
+            //A vector output stands in for every density, so if it's up to date they weren't created.
+            final Optional<File> vectorOutputFileOptional = transformer.getVectorOutputFile();
+            if (vectorOutputFileOptional.isPresent() && outputManifest.isUpToDate(vectorOutputFileOptional.get(), inputHash,
+                    VectorDrawableImageType.VECTOR.getWidth(), VectorDrawableImageType.VECTOR.getHeight(), outputFingerprint, version)) {
+                continue;
+            }
+
+            for (FilenameAttachableImageType imageType : transformer.getImageTypes()) {
+                for (File outputFile : transformer.getOutputFiles(imageType, isPngAlso)) {
+                    if (!outputManifest.isUpToDate(outputFile, inputHash, imageType.getWidth(), imageType.getHeight(), outputFingerprint, version)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void record(List<SvgImageTransformer> transformers, boolean isPngAlso, OutputManifest outputManifest, String inputHash, ConversionSettings conversionSettings) {
+        final String outputFingerprint = conversionSettings.getOutputFingerprint();
+        final String version = ConverterVersion.get();
+
+        for (SvgImageTransformer transformer : transformers) {
+            if (transformer.hasVectorOutput()) {
+                outputManifest.record(transformer.getVectorOutputFile().get(), inputHash,
+                        VectorDrawableImageType.VECTOR.getWidth(), VectorDrawableImageType.VECTOR.getHeight(), outputFingerprint, version);
+                continue;
+            }
+
+            for (FilenameAttachableImageType imageType : transformer.getImageTypes()) {
+                for (File outputFile : transformer.getOutputFiles(imageType, isPngAlso)) {
+                    outputManifest.record(outputFile, inputHash, imageType.getWidth(), imageType.getHeight(), outputFingerprint, version);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the images of every {@link TransformerType} created from an input svg, such as one that's since been
+     * deleted itself, and forgets them and the input's parsed document.
+     *
+     * @param inputSvgFile         the svg file the images were created from, which needn't exist any more
+     * @param imageOutputDirectory the directory that the transformers created their own directories inside of
+     * @return the images that were deleted
+     */
+    public List<File> removeOutputs(File inputSvgFile, File imageOutputDirectory) throws IOException {
+        final List<SvgImageTransformer> transformers = Arrays.asList(
+                new IOSImageTransformer(inputSvgFile, imageOutputDirectory, settings),
+                new AndroidImageTransformer(inputSvgFile, imageOutputDirectory, settings));
+
+        final List<File> outputFiles = new ArrayList<>();
+        for (SvgImageTransformer transformer : transformers) {
+            //A vector output may have fallen back to densities since, or the other way around, so look for both.
+            transformer.getVectorOutputFile().ifPresent(outputFiles::add);
+            for (FilenameAttachableImageType imageType : transformer.getImageTypes()) {
+                outputFiles.addAll(transformer.getOutputFiles(imageType, true));
+            }
+            outputFiles.addAll(transformer.getSupersededOutputFiles());
+        }
+
+        final OutputManifest outputManifest = settings.isIncremental() ? outputManifests.get(imageOutputDirectory) : null;
+        final List<File> deletedFiles = new ArrayList<>();
+        for (File outputFile : outputFiles) {
+            if (Files.deleteIfExists(outputFile.toPath())) {
+                deletedFiles.add(outputFile);
+            }
+            if (outputManifest != null) {
+                outputManifest.remove(outputFile);
+            }
+        }
+
+        SvgDocumentCache.getShared().invalidate(inputSvgFile);
+        return deletedFiles;
+    }
+
+    /**
+     * Packs and writes the sheets of the --atlas of the given settings, if they have one, printing a message about
+     * each. Every input of the run or request must have been converted first.
+     *
+     * @param conversionSettings the settings of the run or request
+     */
+    public void writeAtlas(ConversionSettings conversionSettings) {
+        final Optional<TextureAtlas> textureAtlasOptional = conversionSettings.getTextureAtlas();
+        if (!textureAtlasOptional.isPresent()) {
+            return;
+        }
+
+        try {
+            for (String message : textureAtlasOptional.get().write(conversionSettings.getPngEncoder())) {
+                System.out.println(message);
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: The atlas could not be written :(");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the manifest of every output directory that had outputs recorded in it.
+     */
+    public void saveManifests() throws IOException {
+        outputManifests.saveAll();
+    }
+
+    /**
+     * Writes the {@link ConversionMetrics} recorded so far, if the given settings ask for them. They're recorded for the
+     * whole process, so those written for a daemon request are of every request it's served since it started.
+     *
+     * @param conversionSettings the settings of the run or request
+     */
+    public void writeMetrics(ConversionSettings conversionSettings) {
+        final Optional<File> metricsOutputOptional = conversionSettings.getMetricsOutput();
+        if (!metricsOutputOptional.isPresent()) {
+            return;
+        }
+
+        try {
+            ConversionMetrics.getShared().writeTo(metricsOutputOptional.get());
+        } catch (IOException e) {
+            System.out.println("The metrics could not be written to " + metricsOutputOptional.get().getPath() + " - " + e);
+        }
+    }
+
+    /**
+     * Stops the worker pool once any submitted work is done, waits for any queued images to be written, writes the
+     * atlas, saves the manifests, trims the render cache and writes the metrics. The engine can't be used afterwards.
+     */
+    public void shutdown() throws IOException {
+        executorService.shutdown();
+        if (asyncOutputWriter != null) {
+            asyncOutputWriter.shutdown();
+            System.out.println(asyncOutputWriter);
+        }
+        if (memoryBudget != null) {
+            System.out.println(memoryBudget);
+        }
+        writeAtlas(settings);
+        saveManifests();
+        writeMetrics(settings);
+        System.out.println(RasterBufferPool.getShared());
+
+        final Optional<RenderCache> renderCacheOptional = settings.getRenderCache();
+        if (renderCacheOptional.isPresent()) {
+            final RenderCache renderCache = renderCacheOptional.get();
+            renderCache.trim();
+            System.out.println(renderCache);
+        }
+    }
+
+    public ConversionSettings getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,88 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of converting one input svg, for each {@link TransformerType} that was transformed.
+ */
+public class ConversionResult {
+
+    private final Map<TransformerType, Boolean> successes = new EnumMap<>(TransformerType.class);
+    private final Map<TransformerType, File> outputDirectories = new EnumMap<>(TransformerType.class);
+    private final List<String> notes = new ArrayList<>();
+    private long bytesWritten;
+    private boolean upToDate;
+
+    public void add(TransformerType transformerType, File outputDirectory, boolean successful) {
+        successes.put(transformerType, successful);
+        outputDirectories.put(transformerType, outputDirectory);
+    }
+
+    public void addBytesWritten(long bytes) {
+        this.bytesWritten += bytes;
+    }
+
+    /**
+     * Gets the total size of every file written for this input.
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void addNote(String note) {
+        notes.add(note);
+    }
+
+    /**
+     * Gets anything worth telling the user about how the input was converted, such as why it couldn't be a vector
+     * drawable, that isn't a failure.
+     *
+     * @return the notes, in the order they were added
+     */
+    public List<String> getNotes() {
+        return Collections.unmodifiableList(notes);
+    }
+
+    public void setUpToDate(boolean upToDate) {
+        this.upToDate = upToDate;
+    }
+
+    /**
+     * Gets whether the input was skipped, as all of its outputs were already up to date.
+     *
+     * @return true if nothing was converted
+     */
+    public boolean isUpToDate() {
+        return upToDate;
+    }
+
+    /**
+     * Gets whether every image of the given type was created.
+     *
+     * @param transformerType the type to check
+     * @return true if that type was transformed successfully
+     */
+    public boolean isSuccessful(TransformerType transformerType) {
+        return successes.getOrDefault(transformerType, false);
+    }
+
+    /**
+     * Gets whether every image of every type was created.
+     *
+     * @return true if all types were transformed successfully
+     */
+    public boolean isSuccessful() {
+        return !successes.containsValue(false);
+    }
+
+    public File getOutputDirectory(TransformerType transformerType) {
+        return outputDirectories.get(transformerType);
+    }
+}
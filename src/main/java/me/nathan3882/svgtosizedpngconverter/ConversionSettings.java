@@ -0,0 +1,442 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import org.apache.commons.cli.CommandLine;
+
+import me.nathan3882.svgtosizedpngconverter.atlas.TextureAtlas;
+import me.nathan3882.svgtosizedpngconverter.cache.RenderCache;
+import me.nathan3882.svgtosizedpngconverter.output.AsyncOutputWriter;
+import me.nathan3882.svgtosizedpngconverter.png.BatikPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.OptimizingPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.PngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.PngFilter;
+import me.nathan3882.svgtosizedpngconverter.png.TunedPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.transformers.MemoryBudget;
+
+/**
+ * Holds the user configurable options that change how the {@link me.nathan3882.svgtosizedpngconverter.transformers.SvgImageTransformer}s
+ * produce their output.
+ */
+public class ConversionSettings {
+
+    /**
+     * The {@link #getDownsampleMaximumDelta()} when downsampled pngs aren't checked against a true render.
+     */
+    public static final int UNCHECKED_DOWNSAMPLE = -1;
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private boolean svgAlso = true;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ExecutionStrategy executionStrategy = ExecutionStrategy.POOL;
+    private boolean incremental;
+    private boolean streamSvg;
+    private File cacheDirectory;
+    private long cacheMaximumBytes = RenderCache.DEFAULT_MAXIMUM_BYTES;
+    private File metricsOutput;
+    private PngEncoder pngEncoder = BatikPngEncoder.INSTANCE;
+    private boolean downsample;
+    private int downsampleMaximumDelta = UNCHECKED_DOWNSAMPLE;
+    private boolean vectorDrawable;
+    private TextureAtlas textureAtlas;
+    private long memoryBudgetBytes = MemoryBudget.getDefaultBytes();
+    private int writerThreads;
+    private int writeQueueCapacity = AsyncOutputWriter.DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Creates settings from the parsed run arguments, anything not provided is left at its default.
+     *
+     * @param commandLineOptionContainer the parsed run arguments
+     * @return the configured settings
+     */
+    public static ConversionSettings fromCommandLine(CommandLine commandLineOptionContainer) {
+        final ConversionSettings settings = new ConversionSettings();
+
+        settings.setSvgAlso(!Argument.NO_SVG.isPresentIn(commandLineOptionContainer));
+
+        settings.setIncremental(Argument.INCREMENTAL.isPresentIn(commandLineOptionContainer));
+
+        settings.setStreamSvg(Argument.STREAM_SVG.isPresentIn(commandLineOptionContainer));
+
+        final Optional<String> cacheDirectoryOptional = Argument.CACHE_DIRECTORY.getValueFromContainer(commandLineOptionContainer);
+        cacheDirectoryOptional.ifPresent(cacheDirectory -> settings.setCacheDirectory(new File(cacheDirectory)));
+
+        final Optional<String> cacheSizeOptional = Argument.CACHE_SIZE.getValueFromContainer(commandLineOptionContainer);
+        if (cacheSizeOptional.isPresent()) {
+            final int defaultMegabytes = (int) (settings.getCacheMaximumBytes() / BYTES_PER_MEGABYTE);
+            settings.setCacheMaximumBytes(parsePositiveInt(cacheSizeOptional.get(), defaultMegabytes, "megabytes") * BYTES_PER_MEGABYTE);
+        }
+
+        final Optional<String> metricsOutputOptional = Argument.METRICS_OUT.getValueFromContainer(commandLineOptionContainer);
+        metricsOutputOptional.ifPresent(metricsOutput -> settings.setMetricsOutput(new File(metricsOutput)));
+
+        final Optional<String> pngLevelOptional = Argument.PNG_LEVEL.getValueFromContainer(commandLineOptionContainer);
+        final Optional<String> pngFilterOptional = Argument.PNG_FILTER.getValueFromContainer(commandLineOptionContainer);
+        if (pngLevelOptional.isPresent() || pngFilterOptional.isPresent()) {
+            final int level = pngLevelOptional.map(pngLevel -> parseIntInRange(pngLevel, 0, 9, TunedPngEncoder.DEFAULT_LEVEL, "png level")).orElse(TunedPngEncoder.DEFAULT_LEVEL);
+            final PngFilter pngFilter = pngFilterOptional.map(ConversionSettings::parsePngFilter).orElse(TunedPngEncoder.DEFAULT_FILTER);
+            settings.setPngEncoder(new TunedPngEncoder(level, pngFilter));
+        }
+
+        final Optional<String> downsampleMaximumDeltaOptional = Argument.DOWNSAMPLE_MAX_DELTA.getValueFromContainer(commandLineOptionContainer);
+        settings.setDownsample(Argument.DOWNSAMPLE.isPresentIn(commandLineOptionContainer) || downsampleMaximumDeltaOptional.isPresent());
+        downsampleMaximumDeltaOptional.ifPresent(maximumDelta -> settings.setDownsampleMaximumDelta(parseIntInRange(maximumDelta, 0, 255, 0, "maximum delta")));
+
+        settings.setVectorDrawable(Argument.VECTOR_DRAWABLE.isPresentIn(commandLineOptionContainer));
+
+        final Optional<String> atlasSizeOptional = Argument.ATLAS_SIZE.getValueFromContainer(commandLineOptionContainer);
+        if (Argument.ATLAS.isPresentIn(commandLineOptionContainer) || atlasSizeOptional.isPresent()) {
+            final int maximumSize = atlasSizeOptional.map(atlasSize -> parseIntInRange(atlasSize, 64, 16384, TextureAtlas.DEFAULT_MAXIMUM_SIZE, "atlas size"))
+                    .orElse(TextureAtlas.DEFAULT_MAXIMUM_SIZE);
+            settings.setTextureAtlas(new TextureAtlas(maximumSize));
+
+            if (settings.isIncremental()) {
+                System.out.println("--incremental can't be used with --atlas, as every svg's pngs are needed to pack the sheets, so every svg will be converted.");
+                settings.setIncremental(false);
+            }
+        }
+
+        if (Argument.OPTIMIZE_PNG.isPresentIn(commandLineOptionContainer)) {
+            settings.setPngEncoder(new OptimizingPngEncoder(settings.getPngEncoder()));
+        }
+
+        final Optional<String> threadsOptional = Argument.THREADS.getValueFromContainer(commandLineOptionContainer);
+        if (threadsOptional.isPresent()) {
+            settings.setThreads(parsePositiveInt(threadsOptional.get(), settings.getThreads(), "threads"));
+        }
+
+        final Optional<String> memoryBudgetOptional = Argument.MEMORY_BUDGET.getValueFromContainer(commandLineOptionContainer);
+        if (memoryBudgetOptional.isPresent()) {
+            final int defaultMegabytes = (int) (settings.getMemoryBudgetBytes() / BYTES_PER_MEGABYTE);
+            settings.setMemoryBudgetBytes(parseIntInRange(memoryBudgetOptional.get(), 0, Integer.MAX_VALUE, defaultMegabytes, "memory budget in megabytes") * BYTES_PER_MEGABYTE);
+        }
+
+        final Optional<String> executorOptional = Argument.EXECUTOR.getValueFromContainer(commandLineOptionContainer);
+        executorOptional.ifPresent(executor -> settings.setExecutionStrategy(parseExecutionStrategy(executor)));
+
+        final Optional<String> writerThreadsOptional = Argument.WRITER_THREADS.getValueFromContainer(commandLineOptionContainer);
+        writerThreadsOptional.ifPresent(writerThreads -> settings.setWriterThreads(parseIntInRange(writerThreads, 0, 64, 0, "number of writer threads")));
+
+        final Optional<String> writeQueueOptional = Argument.WRITE_QUEUE.getValueFromContainer(commandLineOptionContainer);
+        writeQueueOptional.ifPresent(writeQueue -> settings.setWriteQueueCapacity(parsePositiveInt(writeQueue, settings.getWriteQueueCapacity(), "queued outputs")));
+
+        return settings;
+    }
+
+    /**
+     * Parses a whole number argument that must be at least one, telling the user and keeping the default if it isn't.
+     *
+     * @param value        the provided argument value
+     * @param defaultValue the value to keep if the provided one isn't valid
+     * @param name         the name of the argument, used in the message to the user
+     * @return the parsed number, or the default
+     */
+    public static int parsePositiveInt(String value, int defaultValue, String name) {
+        try {
+            final int parsed = Integer.parseInt(value.trim());
+            if (parsed >= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //handled below
+        }
+        System.out.println("\"" + value + "\" isn't a valid number of " + name + ", using " + defaultValue + " instead.");
+        return defaultValue;
+    }
+
+    /**
+     * Parses a whole number argument that must be within a range, telling the user and keeping the default if it isn't.
+     *
+     * @param value        the provided argument value
+     * @param minimum      the smallest valid value
+     * @param maximum      the largest valid value
+     * @param defaultValue the value to keep if the provided one isn't valid
+     * @param name         the name of the argument, used in the message to the user
+     * @return the parsed number, or the default
+     */
+    public static int parseIntInRange(String value, int minimum, int maximum, int defaultValue, String name) {
+        try {
+            final int parsed = Integer.parseInt(value.trim());
+            if (parsed >= minimum && parsed <= maximum) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //handled below
+        }
+        System.out.println("\"" + value + "\" isn't a valid " + name + " from " + minimum + " to " + maximum + ", using " + defaultValue + " instead.");
+        return defaultValue;
+    }
+
+    private static PngFilter parsePngFilter(String value) {
+        final Optional<PngFilter> pngFilterOptional = PngFilter.fromName(value);
+        if (!pngFilterOptional.isPresent()) {
+            System.out.println("\"" + value + "\" isn't a png filter, using " + TunedPngEncoder.DEFAULT_FILTER.getName() + " instead.");
+        }
+        return pngFilterOptional.orElse(TunedPngEncoder.DEFAULT_FILTER);
+    }
+
+    private static ExecutionStrategy parseExecutionStrategy(String value) {
+        final Optional<ExecutionStrategy> executionStrategyOptional = ExecutionStrategy.fromName(value);
+        if (!executionStrategyOptional.isPresent()) {
+            System.out.println("\"" + value + "\" isn't an executor, using " + ExecutionStrategy.POOL.getName() + " instead.");
+        }
+        return executionStrategyOptional.orElse(ExecutionStrategy.POOL);
+    }
+
+    /**
+     * Gets whether the resized svg files should be written alongside the png images.
+     *
+     * @return true if resized svg files are written
+     */
+    public boolean isSvgAlso() {
+        return svgAlso;
+    }
+
+    public void setSvgAlso(boolean svgAlso) {
+        this.svgAlso = svgAlso;
+    }
+
+    /**
+     * Gets the number of worker threads that densities are transformed on.
+     *
+     * @return the number of threads, at least one
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets what the densities, and the inputs of a batch, are transformed on.
+     *
+     * @return the execution strategy, {@link ExecutionStrategy#POOL} unless another was chosen
+     */
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public void setExecutionStrategy(ExecutionStrategy executionStrategy) {
+        this.executionStrategy = executionStrategy;
+    }
+
+    /**
+     * Gets whether inputs whose outputs are recorded as up to date should be skipped.
+     *
+     * @return true if only changed inputs are converted
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Gets whether resized svg files are written by streaming the input through {@link me.nathan3882.svgtosizedpngconverter.svglogic.SvgRootRewriter},
+     * rather than by serializing the resized document.
+     *
+     * @return true if resized svg files are streamed
+     */
+    public boolean isStreamSvg() {
+        return streamSvg;
+    }
+
+    public void setStreamSvg(boolean streamSvg) {
+        this.streamSvg = streamSvg;
+    }
+
+    /**
+     * Gets the directory of the shared {@link RenderCache}, if renders should be cached.
+     *
+     * @return the cache directory, or empty if nothing is cached
+     */
+    public Optional<File> getCacheDirectory() {
+        return Optional.ofNullable(cacheDirectory);
+    }
+
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getCacheMaximumBytes() {
+        return cacheMaximumBytes;
+    }
+
+    public void setCacheMaximumBytes(long cacheMaximumBytes) {
+        this.cacheMaximumBytes = cacheMaximumBytes;
+    }
+
+    /**
+     * Gets the render cache to fetch and store png images with.
+     *
+     * @return the render cache, or empty if no cache directory was given
+     * @throws IOException if the cache directory could not be created
+     */
+    public Optional<RenderCache> getRenderCache() throws IOException {
+        if (cacheDirectory == null) {
+            return Optional.empty();
+        }
+        return Optional.of(RenderCache.forDirectory(cacheDirectory, cacheMaximumBytes));
+    }
+
+    /**
+     * Gets the file the {@link me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics} are written to at the
+     * end of a run.
+     *
+     * @return the metrics file, or empty if they aren't written
+     */
+    public Optional<File> getMetricsOutput() {
+        return Optional.ofNullable(metricsOutput);
+    }
+
+    public void setMetricsOutput(File metricsOutput) {
+        this.metricsOutput = metricsOutput;
+    }
+
+    /**
+     * Gets whether the smaller pngs of each {@link TransformerType} are downsampled from a render of its largest size,
+     * rather than each rendered from the svg.
+     *
+     * @return true if smaller pngs are downsampled
+     */
+    public boolean isDownsample() {
+        return downsample;
+    }
+
+    public void setDownsample(boolean downsample) {
+        this.downsample = downsample;
+    }
+
+    /**
+     * Gets the largest difference of any channel allowed between a downsampled png and a true render of the same size.
+     *
+     * @return the maximum difference from 0 to 255, or {@link #UNCHECKED_DOWNSAMPLE} if downsampled pngs aren't checked
+     */
+    public int getDownsampleMaximumDelta() {
+        return downsampleMaximumDelta;
+    }
+
+    public void setDownsampleMaximumDelta(int downsampleMaximumDelta) {
+        this.downsampleMaximumDelta = downsampleMaximumDelta;
+    }
+
+    /**
+     * Gets whether Android images are created as a single VectorDrawable where the svg can be expressed as one, rather
+     * than as a png per density.
+     *
+     * @return true if VectorDrawables are created
+     */
+    public boolean isVectorDrawable() {
+        return vectorDrawable;
+    }
+
+    public void setVectorDrawable(boolean vectorDrawable) {
+        this.vectorDrawable = vectorDrawable;
+    }
+
+    /**
+     * Gets the atlas the pngs are packed into instead of being written separately, with --atlas.
+     *
+     * @return the texture atlas, or empty if every png is written as its own file
+     */
+    public Optional<TextureAtlas> getTextureAtlas() {
+        return Optional.ofNullable(textureAtlas);
+    }
+
+    public void setTextureAtlas(TextureAtlas textureAtlas) {
+        this.textureAtlas = textureAtlas;
+    }
+
+    /**
+     * Gets the most memory the densities being transformed at once are estimated to need, see {@link MemoryBudget}.
+     *
+     * @return the budget in bytes, or 0 if densities are started as soon as there's a thread for them
+     */
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Gets the number of threads encoded outputs are handed to for writing, so that render threads don't wait on the
+     * disk.
+     *
+     * @return the number of writer threads, or 0 if outputs are written by the thread that rendered them
+     */
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Gets the most encoded outputs that can wait for a writer thread before render threads are held back.
+     *
+     * @return the capacity of the write queue, at least one
+     */
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    public void setWriteQueueCapacity(int writeQueueCapacity) {
+        this.writeQueueCapacity = writeQueueCapacity;
+    }
+
+    /**
+     * Gets the encoder the png images are written with, {@link BatikPngEncoder} unless a tuned or optimizing one was
+     * configured.
+     *
+     * @return the png encoder
+     */
+    public PngEncoder getPngEncoder() {
+        return pngEncoder;
+    }
+
+    public void setPngEncoder(PngEncoder pngEncoder) {
+        this.pngEncoder = pngEncoder;
+    }
+
+    /**
+     * Describes every setting that changes the bytes of an output, as opposed to which outputs are created or how
+     * quickly. An output created with a different description is out of date. --vector-drawable is included too,
+     * as the pngs it replaces would otherwise stay up to date and keep the vector output from ever being created.
+     *
+     * @return the description of the output settings
+     */
+    public String getOutputFingerprint() {
+        return (streamSvg ? "stream-svg" : "default") + (vectorDrawable ? "+vector-drawable" : "") + "+" + getPngFingerprint();
+    }
+
+    /**
+     * Describes only the settings that change the bytes of a png, such as how it's downsampled and encoded, so that
+     * pngs cached by runs that differ in anything else, such as how their svgs are written, are still shared.
+     *
+     * @return the description of the png settings
+     */
+    public String getPngFingerprint() {
+        final StringBuilder pngFingerprint = new StringBuilder("png");
+        if (downsample) {
+            pngFingerprint.append("+downsample");
+            if (downsampleMaximumDelta != UNCHECKED_DOWNSAMPLE) {
+                pngFingerprint.append('-').append(downsampleMaximumDelta);
+            }
+        }
+        //Pngs recorded before the png encoder could be configured were all written by Batik, so keep them valid.
+        if (pngEncoder != BatikPngEncoder.INSTANCE) {
+            pngFingerprint.append('+').append(pngEncoder.getFingerprint());
+        }
+        return pngFingerprint.toString();
+    }
+}
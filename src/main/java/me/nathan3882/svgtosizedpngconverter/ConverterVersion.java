@@ -0,0 +1,42 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.util.Optional;
+
+import org.apache.batik.Version;
+
+/**
+ * The version of this converter. Outputs recorded by an older version are treated as out of date, and renders cached by
+ * one are never reused.
+ */
+public final class ConverterVersion {
+
+    /**
+     * Used when the version can't be read from the jar's manifest, such as when running from the IDE.
+     */
+    private static final String FALLBACK_VERSION = "1.0-SNAPSHOT";
+
+    /**
+     * The version of the bytes this converter writes. The jar's version stays the same across every snapshot build, so
+     * this must be bumped by any change that can change an output image, such as to how svgs are resized, rasterized or
+     * encoded, so that images from before it are never taken to be up to date or served from the render cache.
+     */
+    private static final int RENDER_FORMAT = 2;
+
+    private ConverterVersion() {
+    }
+
+    /**
+     * Gets the version of this converter, its render format and the Batik it renders with, any of which changing can
+     * change the output images.
+     *
+     * @return the version, such as {@code 1.0-SNAPSHOT+render-2+batik-1.19}
+     */
+    public static String get() {
+        final String converterVersion = Optional.ofNullable(ConverterVersion.class.getPackage().getImplementationVersion()).orElse(FALLBACK_VERSION);
+        return converterVersion + "+render-" + RENDER_FORMAT + "+batik-" + getBatikVersion();
+    }
+
+    private static String getBatikVersion() {
+        return Optional.ofNullable(Version.getVersion()).orElse("unknown");
+    }
+}
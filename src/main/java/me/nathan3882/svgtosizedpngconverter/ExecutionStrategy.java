@@ -0,0 +1,128 @@
+package me.nathan3882.svgtosizedpngconverter;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The executors that densities, and the inputs of a batch, can be transformed on, chosen with --executor. Each suits
+ * a different build host, and which is quickest can be measured with the ExecutionStrategyBenchmark.
+ */
+public enum ExecutionStrategy {
+
+    /**
+     * A fixed pool of --threads threads, the default.
+     */
+    POOL {
+        @Override
+        public ExecutorService createExecutorService(int threads) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    },
+
+    /**
+     * A single thread that transforms one density, and one input, at a time. The slowest, but the simplest to follow,
+     * and the least memory.
+     */
+    SEQUENTIAL {
+        @Override
+        public ExecutorService createExecutorService(int threads) {
+            return Executors.newSingleThreadExecutor();
+        }
+
+        @Override
+        public int getParallelism(int threads) {
+            return 1;
+        }
+    },
+
+    /**
+     * A work stealing {@link ForkJoinPool} of --threads threads, for renders that are all CPU bound. Each thread takes
+     * from its own queue and steals from the others when it's idle, rather than every thread taking from one shared
+     * queue. Densities that block, such as on --writer-threads or the memory budget, hold their thread meanwhile.
+     */
+    FORK_JOIN {
+        @Override
+        public ExecutorService createExecutorService(int threads) {
+            return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    },
+
+    /**
+     * A new virtual thread for every density, for batches that mostly wait on slow or network storage, so that waiting
+     * densities don't hold a platform thread. Virtual threads need Java 21, on older JVMs this falls back to
+     * {@link #POOL}. Only as many densities as there are processors render and encode at once, by its
+     * {@link #createRenderPermits render permits}, and the memory budget still bounds how many are in memory.
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService createExecutorService(int threads) {
+            //Looked up reflectively, so the converter still builds for and runs on Java 8.
+            try {
+                final Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads need Java 21 or later, this is Java " + System.getProperty("java.version") + ", so a pool of " + threads + " threads is used instead.");
+                return POOL.createExecutorService(threads);
+            }
+        }
+
+        @Override
+        public Optional<Semaphore> createRenderPermits() {
+            //Every density has a thread of its own, so nothing else keeps more from rendering than there are processors.
+            return Optional.of(new Semaphore(Runtime.getRuntime().availableProcessors(), true));
+        }
+    };
+
+    /**
+     * Finds a strategy by its name, ignoring case and any dashes.
+     *
+     * @param name the name, such as "forkjoin" or "fork-join"
+     * @return the strategy, or empty if there is none with that name
+     */
+    public static Optional<ExecutionStrategy> fromName(String name) {
+        final String normalisedName = name.trim().replace("-", "").replace("_", "");
+        for (ExecutionStrategy executionStrategy : values()) {
+            if (executionStrategy.getName().equalsIgnoreCase(normalisedName)) {
+                return Optional.of(executionStrategy);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Creates an executor to transform densities on.
+     *
+     * @param threads the --threads to use, where the strategy has a number of threads
+     * @return the executor, which must be shut down once it's no longer needed
+     */
+    public abstract ExecutorService createExecutorService(int threads);
+
+    /**
+     * Creates the permits a density must hold while it renders and encodes, for strategies whose executor doesn't
+     * bound how many densities run at once itself.
+     *
+     * @return the permits, or empty if the executor's threads already bound it
+     */
+    public Optional<Semaphore> createRenderPermits() {
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the number of inputs of a batch that should be converted at once with this strategy.
+     *
+     * @param threads the --threads to use
+     * @return the number of inputs to convert at once, at least one
+     */
+    public int getParallelism(int threads) {
+        return threads;
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT).replace("_", "");
+    }
+}
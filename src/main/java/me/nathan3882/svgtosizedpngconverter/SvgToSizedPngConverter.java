@@ -12,18 +12,18 @@ import javax.xml.transform.TransformerException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
-import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FilenameUtils;
 
+import me.nathan3882.svgtosizedpngconverter.daemon.ConversionClient;
+import me.nathan3882.svgtosizedpngconverter.daemon.ConversionDaemon;
+import me.nathan3882.svgtosizedpngconverter.daemon.DaemonProtocol;
 import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
 import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
-import me.nathan3882.svgtosizedpngconverter.transformers.AndroidImageTransformer;
-import me.nathan3882.svgtosizedpngconverter.transformers.IOSImageTransformer;
-import me.nathan3882.svgtosizedpngconverter.transformers.SvgImageTransformer;
 import me.nathan3882.svgtosizedpngconverter.types.FileType;
+import me.nathan3882.svgtosizedpngconverter.watch.ConversionWatcher;
 
 public class SvgToSizedPngConverter {
 
@@ -34,27 +34,48 @@ public class SvgToSizedPngConverter {
 
     public static void main(String[] args) throws IOException, ParseException, TransformerException, DuplicateFileException, LackOfTransformationException {
 
-        String[] scannerArgs = queryForArgs();
+        //Arguments given on the command line are used as they are, so the converter can be scripted.
+        String[] scannerArgs = args.length > 0 ? args : queryForArgs();
 
-        final Options argumentOptions = new Options();
-
-        for (Option configuredArgumentOption : SvgToSizedPngConverter.getConfiguredArgumentOptions()) {
-            argumentOptions.addOption(configuredArgumentOption);
-        }
+        final Options argumentOptions = SvgToSizedPngConverter.getArgumentOptions();
 
         CommandLine commandLineOptionContainer = null;
 
         boolean providedOptions = false;
         while (!providedOptions) {
-            try {
-                commandLineOptionContainer = new DefaultParser().parse(argumentOptions, scannerArgs);
-            } catch (MissingOptionException e) {
+            if (scannerArgs.length == 0) {
+                //Nothing more can be read from the input, so there's nothing to convert.
+                return;
+            }
+            commandLineOptionContainer = new DefaultParser().parse(argumentOptions, scannerArgs);
+
+            //The daemon is given its inputs and outputs by each request, rather than up front, and isn't given any to stop it.
+            if (!Argument.DAEMON.isPresentIn(commandLineOptionContainer) && !isDaemonShutdown(commandLineOptionContainer)
+                    && !hasRequiredArguments(commandLineOptionContainer)) {
                 scannerArgs = queryForArgs();
                 continue;
             }
             providedOptions = true;
         }
 
+        final int port = ConversionDaemon.parsePort(commandLineOptionContainer);
+
+        if (Argument.DAEMON.isPresentIn(commandLineOptionContainer)) {
+            new ConversionDaemon(ConversionSettings.fromCommandLine(commandLineOptionContainer), port).run();
+            return;
+        }
+
+        if (Argument.CLIENT.isPresentIn(commandLineOptionContainer)) {
+            final ConversionClient conversionClient = new ConversionClient(port);
+            final boolean successful = isDaemonShutdown(commandLineOptionContainer)
+                    ? conversionClient.sendRequest(DaemonProtocol.SHUTDOWN)
+                    : conversionClient.send(commandLineOptionContainer);
+            if (!successful) {
+                System.exit(1);
+            }
+            return;
+        }
+
         final String outputDirectoryArgOptionString = OUTPUT_FILE_DIR_ARG.getArgumentString();
         final String inputSvgFileArgOptionString = INPUT_FILE_ARG.getArgumentString();
 
@@ -77,11 +98,7 @@ public class SvgToSizedPngConverter {
             System.out.print("Output Directory argument option found - (-" + outputDirectoryArgOptionString + ").  " +
                     "Now outputting the iOS Images and Android Images to " + specifiedOutputFileDirectory + System.getProperty("line.separator"));
             sendBlank();
-            if (specifiedOutputFileDirectory.equals("desktop")) {
-                imageOutputDirectory = new File("C:\\Users\\natha\\OneDrive\\Desktop");
-            } else {
-                imageOutputDirectory = new File(specifiedOutputFileDirectory);
-            }
+            imageOutputDirectory = resolveOutputDirectory(specifiedOutputFileDirectory);
         } else {
             sendBlank();
             System.out.println("Please specify an output directory using the option -o. For example append '-o desktop' or the full path.");
@@ -102,7 +119,25 @@ public class SvgToSizedPngConverter {
 
             String specifiedInputFilePathname = specifiedInputFilePathnameOptional.get();
 
-            SvgToSizedPngConverter.doTransformation(imageOutputDirectory, specifiedInputFilePathname);
+            final ConversionSettings settings = ConversionSettings.fromCommandLine(commandLineOptionContainer);
+
+            if (Argument.WATCH.isPresentIn(commandLineOptionContainer)) {
+                if (settings.getTextureAtlas().isPresent()) {
+                    sendBlank();
+                    System.out.println("--atlas can't be used with --watch, as the sheets are packed from every svg's pngs at once. Run the watch without --atlas, and pack the atlas in a normal run.");
+                    sendBlank();
+                    return;
+                }
+                new ConversionWatcher(settings, specifiedInputFilePathname, imageOutputDirectory).run();
+                return;
+            }
+
+            if (BatchConverter.isBatchInput(specifiedInputFilePathname)) {
+                SvgToSizedPngConverter.doBatchTransformation(imageOutputDirectory, specifiedInputFilePathname, settings);
+                return;
+            }
+
+            SvgToSizedPngConverter.doTransformation(imageOutputDirectory, specifiedInputFilePathname, settings);
 
         }
     }
@@ -118,16 +153,55 @@ public class SvgToSizedPngConverter {
 
         Scanner scanner = new Scanner(in);
         if (scanner.hasNext()) {
-            return Arrays.stream(disregardedSplit(scanner.nextLine())) //Stream the entered text
-                    .map(entry -> entry.replace("\"", "")) //strip it of it's " characters
-                    .toArray(String[]::new); //Collect to new array.
-
+            return splitArgumentLine(scanner.nextLine());
         }
         scanner.close();
         return EMPTY_ARRAY;
 
     }
 
+    /**
+     * Splits a line of arguments, as typed into the prompt or sent to the daemon, into the separate arguments.
+     *
+     * @param line the line of arguments
+     * @return the arguments, stripped of their " characters
+     */
+    public static String[] splitArgumentLine(String line) {
+        return Arrays.stream(disregardedSplit(line.trim())) //Split the entered text
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> entry.replace("\"", "")) //strip it of it's " characters
+                .toArray(String[]::new); //Collect to new array.
+    }
+
+    private static boolean isDaemonShutdown(CommandLine commandLineOptionContainer) {
+        return Argument.CLIENT.isPresentIn(commandLineOptionContainer) && Argument.SHUTDOWN.isPresentIn(commandLineOptionContainer);
+    }
+
+    /**
+     * Gets whether every {@link Argument#isRequired()} argument was provided.
+     *
+     * @param commandLineOptionContainer the parsed arguments
+     * @return true if a conversion can be attempted with these arguments
+     */
+    public static boolean hasRequiredArguments(CommandLine commandLineOptionContainer) {
+        return Arrays.stream(Argument.values())
+                .filter(Argument::isRequired)
+                .allMatch(argument -> argument.isPresentIn(commandLineOptionContainer));
+    }
+
+    /**
+     * Turns the output directory argument into a directory, where "desktop" is a shortcut to the desktop.
+     *
+     * @param specifiedOutputFileDirectory the value of the output directory argument
+     * @return the directory to output the images to
+     */
+    public static File resolveOutputDirectory(String specifiedOutputFileDirectory) {
+        if (specifiedOutputFileDirectory.equals("desktop")) {
+            return new File("C:\\Users\\natha\\OneDrive\\Desktop");
+        }
+        return new File(specifiedOutputFileDirectory);
+    }
+
     /**
      * This will split by a space. However, if this is inside double quotes then it will not be counted.
      *
@@ -148,7 +222,7 @@ public class SvgToSizedPngConverter {
         }
     }
 
-    private static void doTransformation(File imageOutputDirectory, String specifiedInputFilePathname) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+    private static void doTransformation(File imageOutputDirectory, String specifiedInputFilePathname, ConversionSettings settings) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
         final File inputFile = new File(specifiedInputFilePathname);
 
         final boolean exists = inputFile.exists();
@@ -166,50 +240,80 @@ public class SvgToSizedPngConverter {
         }
 
         //at this point we know that the file exists and it has a file extension of svg.
-        SvgImageTransformer iOSImageTransformer = new IOSImageTransformer(inputFile, imageOutputDirectory);
-
-        SvgImageTransformer androidImageTransformer = new AndroidImageTransformer(inputFile, imageOutputDirectory);
+        final ConversionEngine conversionEngine = new ConversionEngine(settings);
 
-        final boolean doPngAlso = true;
+        final ConversionResult conversionResult;
+        try {
+            conversionResult = conversionEngine.convert(inputFile, imageOutputDirectory);
+        } finally {
+            conversionEngine.shutdown();
+        }
 
-        final boolean iOSDoneSuccessfully = iOSImageTransformer.transform(doPngAlso);
-        final boolean isAndroidDoneSuccessfully = androidImageTransformer.transform(doPngAlso);
+        final boolean iOSDoneSuccessfully = conversionResult.isSuccessful(TransformerType.IOS);
+        final boolean isAndroidDoneSuccessfully = conversionResult.isSuccessful(TransformerType.ANDROID);
 
-        final String androidPretty = androidImageTransformer.getTransformerType().getPretty();
-        final String iosPretty = iOSImageTransformer.getTransformerType().getPretty();
+        final String androidPretty = TransformerType.ANDROID.getPretty();
+        final String iosPretty = TransformerType.IOS.getPretty();
 
         sendBlank();
         if (iOSDoneSuccessfully) {
-            System.out.println(iosPretty + " images have been created at " + iOSImageTransformer.getOutputDirectory());
+            System.out.println(iosPretty + " images have been created at " + conversionResult.getOutputDirectory(TransformerType.IOS));
         } else {
             System.out.println("Some unknown programmatic error meant that no " + iosPretty + " were created :(");
 
         }
 
         if (isAndroidDoneSuccessfully) {
-            System.out.println(androidPretty + " images have been created at " + androidImageTransformer.getOutputDirectory());
+            System.out.println(androidPretty + " images have been created at " + conversionResult.getOutputDirectory(TransformerType.ANDROID));
         } else {
             System.out.println("Some unknown programmatic error meant that no " + androidPretty + " + were created :(");
         }
     }
 
-    private static List<Option> getConfiguredArgumentOptions() {
-        Argument outputFileArgument = OUTPUT_FILE_DIR_ARG;
-        Argument inputFileArgument = INPUT_FILE_ARG;
+    private static void doBatchTransformation(File imageOutputDirectory, String specifiedInputPattern, ConversionSettings settings) throws IOException {
+        final List<BatchConverter.BatchInput> inputs = BatchConverter.findInputs(specifiedInputPattern, imageOutputDirectory);
+
+        sendBlank();
+        if (inputs.isEmpty()) {
+            System.out.println("We cant find any dot svg files @ " + specifiedInputPattern);
+            sendBlank();
+            return;
+        }
+        System.out.println("Found " + inputs.size() + " svg files @ " + specifiedInputPattern + ", converting them into " + imageOutputDirectory.getPath());
+        sendBlank();
+
+        final ConversionEngine conversionEngine = new ConversionEngine(settings);
+
+        final BatchConverter.BatchSummary batchSummary;
+        try {
+            batchSummary = new BatchConverter(conversionEngine).convertAll(inputs, imageOutputDirectory);
+        } finally {
+            conversionEngine.shutdown();
+        }
+
+        sendBlank();
+        System.out.println(batchSummary);
+    }
+
+    /**
+     * Gets the options of every {@link Argument}. None are marked required here, as which are needed depends on the
+     * mode being run, see {@link #hasRequiredArguments}.
+     *
+     * @return the options to parse the run arguments with
+     */
+    public static Options getArgumentOptions() {
+        final Options options = new Options();
 
-        Option builtOutputArgumentOption = Option.builder(outputFileArgument.getArgumentString())
-                .longOpt(outputFileArgument.getArgumentStringLong())
-                .desc(outputFileArgument.getDescription())
-                .required()
-                .build();
+        for (Argument argument : Argument.values()) {
+            final Option.Builder optionBuilder = Option.builder(argument.getArgumentString())
+                    .longOpt(argument.getArgumentStringLong())
+                    .desc(argument.getDescription())
+                    .hasArg(argument.takesValue());
 
-        Option builtInputArgumentOption = Option.builder(inputFileArgument.getArgumentString())
-                .longOpt(inputFileArgument.getArgumentStringLong())
-                .desc(inputFileArgument.getDescription())
-                .required()
-                .build();
+            options.addOption(optionBuilder.build());
+        }
 
-        return Arrays.asList(builtOutputArgumentOption, builtInputArgumentOption);
+        return options;
     }
 
 }
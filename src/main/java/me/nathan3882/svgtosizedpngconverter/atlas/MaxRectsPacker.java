@@ -0,0 +1,161 @@
+package me.nathan3882.svgtosizedpngconverter.atlas;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Packs rectangles into a single bin with the MaxRects algorithm. Every maximal free rectangle left in the bin is
+ * tracked, even where they overlap, and each rectangle is placed in whichever free one it fits most snugly along its
+ * shorter side. That wastes far less space than shelf or guillotine packing for sprites of mixed sizes.
+ * <p>
+ * Rectangles are never rotated, since a rotated icon would have to be drawn rotated back by whatever loads the sheet.
+ */
+public class MaxRectsPacker {
+
+    private final int binWidth;
+    private final int binHeight;
+    private final List<Rectangle> freeRectangles = new ArrayList<>();
+    private int usedWidth;
+    private int usedHeight;
+    private long usedArea;
+
+    /**
+     * @param binWidth  the width of the bin
+     * @param binHeight the height of the bin
+     */
+    public MaxRectsPacker(int binWidth, int binHeight) {
+        this.binWidth = binWidth;
+        this.binHeight = binHeight;
+        this.freeRectangles.add(new Rectangle(0, 0, binWidth, binHeight));
+    }
+
+    /**
+     * Places a rectangle in the bin, if there's room for it anywhere.
+     *
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @return where it was placed, or null if it doesn't fit
+     */
+    public Rectangle insert(int width, int height) {
+        final Rectangle placed = findBestShortSideFit(width, height);
+        if (placed == null) {
+            return null;
+        }
+
+        final List<Rectangle> splitRectangles = new ArrayList<>();
+        final Iterator<Rectangle> freeIterator = freeRectangles.iterator();
+        while (freeIterator.hasNext()) {
+            final Rectangle freeRectangle = freeIterator.next();
+            if (freeRectangle.intersects(placed)) {
+                freeIterator.remove();
+                split(freeRectangle, placed, splitRectangles);
+            }
+        }
+        freeRectangles.addAll(splitRectangles);
+        pruneContainedRectangles();
+
+        usedWidth = Math.max(usedWidth, placed.x + placed.width);
+        usedHeight = Math.max(usedHeight, placed.y + placed.height);
+        usedArea += (long) width * height;
+        return placed;
+    }
+
+    private Rectangle findBestShortSideFit(int width, int height) {
+        Rectangle best = null;
+        int bestShortSide = Integer.MAX_VALUE;
+        int bestLongSide = Integer.MAX_VALUE;
+
+        for (Rectangle freeRectangle : freeRectangles) {
+            if (freeRectangle.width < width || freeRectangle.height < height) {
+                continue;
+            }
+            final int leftoverWidth = freeRectangle.width - width;
+            final int leftoverHeight = freeRectangle.height - height;
+            final int shortSide = Math.min(leftoverWidth, leftoverHeight);
+            final int longSide = Math.max(leftoverWidth, leftoverHeight);
+
+            if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+                best = new Rectangle(freeRectangle.x, freeRectangle.y, width, height);
+                bestShortSide = shortSide;
+                bestLongSide = longSide;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the up to four maximal rectangles of a free rectangle that are left around the placed one.
+     */
+    private static void split(Rectangle freeRectangle, Rectangle placed, List<Rectangle> splitRectangles) {
+        if (placed.x > freeRectangle.x) {
+            splitRectangles.add(new Rectangle(freeRectangle.x, freeRectangle.y, placed.x - freeRectangle.x, freeRectangle.height));
+        }
+        if (placed.x + placed.width < freeRectangle.x + freeRectangle.width) {
+            final int x = placed.x + placed.width;
+            splitRectangles.add(new Rectangle(x, freeRectangle.y, freeRectangle.x + freeRectangle.width - x, freeRectangle.height));
+        }
+        if (placed.y > freeRectangle.y) {
+            splitRectangles.add(new Rectangle(freeRectangle.x, freeRectangle.y, freeRectangle.width, placed.y - freeRectangle.y));
+        }
+        if (placed.y + placed.height < freeRectangle.y + freeRectangle.height) {
+            final int y = placed.y + placed.height;
+            splitRectangles.add(new Rectangle(freeRectangle.x, y, freeRectangle.width, freeRectangle.y + freeRectangle.height - y));
+        }
+    }
+
+    /**
+     * Removes every free rectangle that lies entirely inside another, as anything placed in it fits in the other too.
+     */
+    private void pruneContainedRectangles() {
+        for (int index = 0; index < freeRectangles.size(); index++) {
+            final Rectangle freeRectangle = freeRectangles.get(index);
+            for (int otherIndex = index + 1; otherIndex < freeRectangles.size(); otherIndex++) {
+                final Rectangle otherRectangle = freeRectangles.get(otherIndex);
+                if (otherRectangle.contains(freeRectangle)) {
+                    freeRectangles.remove(index--);
+                    break;
+                }
+                if (freeRectangle.contains(otherRectangle)) {
+                    freeRectangles.remove(otherIndex--);
+                }
+            }
+        }
+    }
+
+    public int getBinWidth() {
+        return binWidth;
+    }
+
+    public int getBinHeight() {
+        return binHeight;
+    }
+
+    /**
+     * Gets the width of the bin that's actually used, up to the right edge of the furthest right rectangle.
+     *
+     * @return the used width
+     */
+    public int getUsedWidth() {
+        return usedWidth;
+    }
+
+    /**
+     * Gets the height of the bin that's actually used, down to the bottom edge of the lowest rectangle.
+     *
+     * @return the used height
+     */
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+
+    /**
+     * Gets the area of every rectangle placed, which never overlap.
+     *
+     * @return the total area placed
+     */
+    public long getUsedArea() {
+        return usedArea;
+    }
+}
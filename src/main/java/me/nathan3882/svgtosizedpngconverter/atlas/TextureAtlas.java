@@ -0,0 +1,312 @@
+package me.nathan3882.svgtosizedpngconverter.atlas;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.output.OutputFiles;
+import me.nathan3882.svgtosizedpngconverter.png.PngEncoder;
+import me.nathan3882.svgtosizedpngconverter.svglogic.RasterBufferPool;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+import me.nathan3882.svgtosizedpngconverter.transformers.MemoryBudget;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Collects the png of every input at each density, with --atlas, and once they've all been rendered packs each
+ * density's into as few sheets as it takes with a {@link MaxRectsPacker}. Every sheet can hold icons of any input, so
+ * none can be packed before the last input has been rendered. Until then each png's pixels are copied out of its
+ * render, which goes back to the {@link RasterBufferPool} straight away, and are held against the
+ * {@link MemoryBudget} of the engine, so that fewer densities are rendered at once as the atlas grows. Every sheet is written with a JSON index
+ * next to it, in the JSON hash format of TexturePacker that most game engines and web renderers load, giving where in
+ * the sheet each icon was placed under the name of its svg.
+ * <p>
+ * Sprites are sorted largest first, then by name, before they're packed, so the same icons always give the same sheets
+ * however the densities were scheduled, and sheets that haven't changed are left alone.
+ */
+public class TextureAtlas {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 2048;
+
+    /**
+     * The transparent pixels kept between sprites, so that filtering one when it's drawn scaled never samples another.
+     */
+    public static final int PADDING = 2;
+
+    private final int maximumSize;
+    private final Map<File, SpriteGroup> spriteGroups = new LinkedHashMap<>();
+
+    /**
+     * @param maximumSize the most pixels wide and high a sheet can be, unless a single sprite is larger still
+     */
+    public TextureAtlas(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Adds a rendered png to be packed into its density's sheets. This is safe to call from several threads at once.
+     *
+     * @param sheetFiles   gives the file of each sheet of the density by its index, the same for every sprite of it
+     * @param imageType    the density the png was rendered at
+     * @param name         the name of the sprite in the index, which is unique among the sprites of its sheets
+     * @param image        the png, whose pixels are copied, so it's still the caller's to hand back to the pool
+     * @param memoryBudget the budget to hold the copied pixels against until they're packed, or null
+     */
+    public void add(IntFunction<File> sheetFiles, FilenameAttachableImageType imageType, String name, BufferedImage image, MemoryBudget memoryBudget) {
+        //Copied outside of the lock, as every density of every input adds its png.
+        final Sprite sprite = new Sprite(name, image.getWidth(), image.getHeight(),
+                image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth()), memoryBudget);
+        if (memoryBudget != null) {
+            memoryBudget.hold(sprite.getBytes());
+        }
+
+        synchronized (this) {
+            spriteGroups.computeIfAbsent(sheetFiles.apply(0), firstSheetFile -> new SpriteGroup(sheetFiles, imageType))
+                    .sprites.add(sprite);
+        }
+    }
+
+    /**
+     * Packs and writes the sheets of every density that's had sprites added, deleting any further sheets left by an
+     * earlier run that needed more, then forgets them so that the atlas can be filled again.
+     *
+     * @param pngEncoder the encoder to write the sheets with
+     * @return a message about each sheet that was written
+     * @throws IOException if a sheet or its index could not be written
+     */
+    public synchronized List<String> write(PngEncoder pngEncoder) throws IOException {
+        final List<String> messages = new ArrayList<>();
+        try {
+            for (SpriteGroup spriteGroup : spriteGroups.values()) {
+                final long startNanos = System.nanoTime();
+                final List<Sheet> sheets = pack(spriteGroup.sprites);
+                for (int index = 0; index < sheets.size(); index++) {
+                    messages.add(writeSheet(sheets.get(index), spriteGroup.sheetFiles.apply(index), pngEncoder));
+                }
+                deleteStaleSheets(spriteGroup.sheetFiles, sheets.size(), messages);
+                ConversionMetrics.getShared().recordStage(Stage.ATLAS, spriteGroup.imageType, System.nanoTime() - startNanos);
+            }
+        } finally {
+            for (SpriteGroup spriteGroup : spriteGroups.values()) {
+                for (Sprite sprite : spriteGroup.sprites) {
+                    if (sprite.memoryBudget != null) {
+                        sprite.memoryBudget.releaseHeld(sprite.getBytes());
+                    }
+                }
+            }
+            spriteGroups.clear();
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the sheets, and their indexes, from the given index onwards, which were written by an earlier run whose
+     * icons didn't fit on as few sheets.
+     */
+    private static void deleteStaleSheets(IntFunction<File> sheetFiles, int firstStaleIndex, List<String> messages) throws IOException {
+        for (int index = firstStaleIndex; ; index++) {
+            final File sheetFile = sheetFiles.apply(index);
+            final File indexFile = getIndexFile(sheetFile);
+            final boolean sheetDeleted = Files.deleteIfExists(sheetFile.toPath());
+            final boolean indexDeleted = Files.deleteIfExists(indexFile.toPath());
+            if (!sheetDeleted && !indexDeleted) {
+                return;
+            }
+            messages.add("Atlas \"" + sheetFile.getName() + "\" is no longer needed, so it's been deleted @ \"" + sheetFile.getPath() + "\" along with its index \"" + indexFile.getName() + "\".");
+        }
+    }
+
+    private static File getIndexFile(File sheetFile) {
+        return new File(FilenameUtils.removeExtension(sheetFile.getPath()) + ".json");
+    }
+
+    private List<Sheet> pack(List<Sprite> sprites) {
+        sprites.sort(Comparator.<Sprite>comparingInt(sprite -> Math.max(sprite.width, sprite.height)).reversed()
+                .thenComparing(Comparator.<Sprite>comparingInt(sprite -> sprite.width * sprite.height).reversed())
+                .thenComparing(sprite -> sprite.name));
+
+        final List<Sheet> sheets = new ArrayList<>();
+        List<Sprite> remaining = sprites;
+        while (!remaining.isEmpty()) {
+            int widestSprite = 0;
+            int tallestSprite = 0;
+            long paddedArea = 0;
+            for (Sprite sprite : remaining) {
+                widestSprite = Math.max(widestSprite, sprite.width + PADDING);
+                tallestSprite = Math.max(tallestSprite, sprite.height + PADDING);
+                paddedArea += (long) (sprite.width + PADDING) * (sprite.height + PADDING);
+            }
+            //A single sprite larger than the maximum gets a sheet as large as it needs.
+            final int maximumWidth = Math.max(maximumSize + PADDING, widestSprite);
+            final int maximumHeight = Math.max(maximumSize + PADDING, tallestSprite);
+
+            //Start from the smallest square the sprites could possibly fit in, and grow it by an eighth until they do,
+            //so that a few icons don't end up scattered over a sheet of the maximum size.
+            final int smallestSide = (int) Math.ceil(Math.sqrt(paddedArea));
+            int binWidth = Math.min(maximumWidth, Math.max(widestSprite, smallestSide));
+            int binHeight = Math.min(maximumHeight, Math.max(tallestSprite, smallestSide));
+            while (true) {
+                final List<Sprite> leftOver = new ArrayList<>();
+                final Sheet sheet = fill(new MaxRectsPacker(binWidth, binHeight), remaining, leftOver);
+                if (leftOver.isEmpty() || (binWidth == maximumWidth && binHeight == maximumHeight)) {
+                    sheets.add(sheet);
+                    remaining = leftOver;
+                    break;
+                }
+                binWidth = Math.min(maximumWidth, binWidth + Math.max(PADDING, binWidth / 8));
+                binHeight = Math.min(maximumHeight, binHeight + Math.max(PADDING, binHeight / 8));
+            }
+        }
+        return sheets;
+    }
+
+    /**
+     * Places as many of the sprites as fit into a sheet, in order, adding those that don't to the left over sprites.
+     */
+    private static Sheet fill(MaxRectsPacker packer, List<Sprite> sprites, List<Sprite> leftOver) {
+        final Sheet sheet = new Sheet(packer);
+        for (Sprite sprite : sprites) {
+            //Each sprite is padded on its right and bottom, and the bins are padded to match, so sheets aren't.
+            final Rectangle placed = packer.insert(sprite.width + PADDING, sprite.height + PADDING);
+            if (placed == null) {
+                leftOver.add(sprite);
+            } else {
+                sheet.placements.put(sprite, placed);
+            }
+        }
+        return sheet;
+    }
+
+    private static String writeSheet(Sheet sheet, File sheetFile, PngEncoder pngEncoder) throws IOException {
+        final int width = sheet.packer.getUsedWidth() - PADDING;
+        final int height = sheet.packer.getUsedHeight() - PADDING;
+
+        final BufferedImage sheetImage = RasterBufferPool.getShared().acquire(width, height);
+        final byte[] pngBytes;
+        try {
+            for (Map.Entry<Sprite, Rectangle> placement : sheet.placements.entrySet()) {
+                final Sprite sprite = placement.getKey();
+                sheetImage.setRGB(placement.getValue().x, placement.getValue().y, sprite.width, sprite.height, sprite.pixels, 0, sprite.width);
+            }
+            pngBytes = SvgFile.encodePng(sheetImage, pngEncoder);
+        } finally {
+            RasterBufferPool.getShared().release(sheetImage);
+        }
+
+        final File indexFile = getIndexFile(sheetFile);
+        final OutputFiles.WriteOutcome sheetOutcome = OutputFiles.write(sheetFile.toPath(), pngBytes);
+        final OutputFiles.WriteOutcome indexOutcome = OutputFiles.write(indexFile.toPath(), createIndex(sheet, sheetFile.getName(), width, height));
+
+        final boolean unchanged = sheetOutcome == OutputFiles.WriteOutcome.UNCHANGED && indexOutcome == OutputFiles.WriteOutcome.UNCHANGED;
+        final long usedPercent = Math.round(100D * sheet.getSpriteArea() / ((long) width * height));
+        return "Atlas \"" + sheetFile.getName() + "\" packed " + sheet.placements.size() + (sheet.placements.size() == 1 ? " icon" : " icons") + " into \"" + width + "x" + height + "\", " + usedPercent + "% used, & " +
+                (unchanged ? "left unchanged" : "created, " + FileUtils.byteCountToDisplaySize(sheetFile.length())) + " @ \"" + sheetFile.getPath() + "\" with its index \"" + indexFile.getName() + "\".";
+    }
+
+    private static byte[] createIndex(Sheet sheet, String sheetFileName, int width, int height) {
+        final StringBuilder index = new StringBuilder("{\n  \"frames\": {");
+
+        String separator = "\n";
+        for (Map.Entry<Sprite, Rectangle> placement : sheet.placements.entrySet()) {
+            final int spriteWidth = placement.getKey().width;
+            final int spriteHeight = placement.getKey().height;
+
+            index.append(separator).append("    ").append(quote(placement.getKey().name)).append(": {")
+                    .append("\"frame\": {\"x\": ").append(placement.getValue().x).append(", \"y\": ").append(placement.getValue().y)
+                    .append(", \"w\": ").append(spriteWidth).append(", \"h\": ").append(spriteHeight).append("}, ")
+                    .append("\"rotated\": false, \"trimmed\": false, ")
+                    .append("\"spriteSourceSize\": {\"x\": 0, \"y\": 0, \"w\": ").append(spriteWidth).append(", \"h\": ").append(spriteHeight).append("}, ")
+                    .append("\"sourceSize\": {\"w\": ").append(spriteWidth).append(", \"h\": ").append(spriteHeight).append("}}");
+            separator = ",\n";
+        }
+
+        index.append("\n  },\n  \"meta\": {\"image\": ").append(quote(sheetFileName))
+                .append(", \"format\": \"RGBA8888\", \"size\": {\"w\": ").append(width).append(", \"h\": ").append(height).append("}}\n}\n");
+        return index.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String quote(String value) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (char character : value.toCharArray()) {
+            if (character == '"' || character == '\\') {
+                quoted.append('\\').append(character);
+            } else if (character < ' ') {
+                quoted.append(String.format("\\u%04x", (int) character));
+            } else {
+                quoted.append(character);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    private static final class SpriteGroup {
+
+        private final IntFunction<File> sheetFiles;
+        private final FilenameAttachableImageType imageType;
+        private final List<Sprite> sprites = new ArrayList<>();
+
+        private SpriteGroup(IntFunction<File> sheetFiles, FilenameAttachableImageType imageType) {
+            this.sheetFiles = sheetFiles;
+            this.imageType = imageType;
+        }
+    }
+
+    /**
+     * A png waiting to be packed, kept as the packed ARGB ints of its render rather than the render itself.
+     */
+    private static final class Sprite {
+
+        private final String name;
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+        private final MemoryBudget memoryBudget;
+
+        private Sprite(String name, int width, int height, int[] pixels, MemoryBudget memoryBudget) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.memoryBudget = memoryBudget;
+        }
+
+        private long getBytes() {
+            return (long) pixels.length * Integer.BYTES;
+        }
+    }
+
+    private static final class Sheet {
+
+        private final MaxRectsPacker packer;
+        private final Map<Sprite, Rectangle> placements = new LinkedHashMap<>();
+
+        private Sheet(MaxRectsPacker packer) {
+            this.packer = packer;
+        }
+
+        private long getSpriteArea() {
+            long spriteArea = 0;
+            for (Sprite sprite : placements.keySet()) {
+                spriteArea += (long) sprite.width * sprite.height;
+            }
+            return spriteArea;
+        }
+    }
+}
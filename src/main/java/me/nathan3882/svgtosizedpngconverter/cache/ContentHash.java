@@ -0,0 +1,69 @@
+package me.nathan3882.svgtosizedpngconverter.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates hex encoded SHA-256 hashes of file contents, used to tell whether an input has changed.
+ */
+public final class ContentHash {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char[] HEX_CHARACTERS = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    /**
+     * Hashes the contents of a file, reading it in chunks.
+     *
+     * @param file the file to hash
+     * @return the hex encoded hash
+     * @throws IOException if the file could not be read
+     */
+    public static String of(File file) throws IOException {
+        final MessageDigest messageDigest = newMessageDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Hashes the given bytes.
+     *
+     * @param bytes the bytes to hash
+     * @return the hex encoded hash
+     */
+    public static String of(byte[] bytes) {
+        return toHex(newMessageDigest().digest(bytes));
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int index = 0; index < bytes.length; index++) {
+            hex[index * 2] = HEX_CHARACTERS[(bytes[index] >> 4) & 0xF];
+            hex[index * 2 + 1] = HEX_CHARACTERS[bytes[index] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,138 @@
+package me.nathan3882.svgtosizedpngconverter.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * An on-disk record, kept in an output directory, of what each output in it was created from. An output is up to date
+ * when it still exists at its recorded length, and was created from an input with the same hash, at the same size,
+ * with the same render settings and by the same converter version.
+ * <p>
+ * Each line of the manifest file is the output's path relative to the directory, a tab, then the recorded state.
+ */
+public class OutputManifest {
+
+    public static final String FILE_NAME = ".svgtspc-manifest";
+
+    private static final char KEY_SEPARATOR = '\t';
+    private static final String VALUE_SEPARATOR = "|";
+
+    private final File directory;
+    private final File manifestFile;
+    private final Map<String, String> entries = new TreeMap<>();
+    private boolean changed;
+
+    private OutputManifest(File directory) {
+        this.directory = directory.getAbsoluteFile();
+        this.manifestFile = new File(this.directory, FILE_NAME);
+    }
+
+    /**
+     * Loads the manifest of a directory, or starts an empty one if it has none yet.
+     *
+     * @param directory the output directory
+     * @return the manifest of that directory
+     * @throws IOException if an existing manifest could not be read
+     */
+    public static OutputManifest load(File directory) throws IOException {
+        final OutputManifest outputManifest = new OutputManifest(directory);
+
+        if (!outputManifest.manifestFile.isFile()) {
+            return outputManifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(outputManifest.manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separatorIndex = line.indexOf(KEY_SEPARATOR);
+                if (separatorIndex > 0) {
+                    outputManifest.entries.put(line.substring(0, separatorIndex), line.substring(separatorIndex + 1));
+                }
+            }
+        }
+        return outputManifest;
+    }
+
+    /**
+     * Checks whether an output still matches what it would be created as now.
+     *
+     * @param output          the output file
+     * @param inputHash       the {@link ContentHash} of the input svg
+     * @param width           the width the output is created at
+     * @param height          the height the output is created at
+     * @param renderSettings  the settings that change the bytes of the output
+     * @param version         the converter version
+     * @return true if the output doesn't need creating again
+     */
+    public synchronized boolean isUpToDate(File output, String inputHash, int width, int height, String renderSettings, String version) {
+        final String recorded = entries.get(getKey(output));
+        if (recorded == null || !output.isFile()) {
+            return false;
+        }
+        return recorded.equals(createValue(inputHash, width, height, renderSettings, version, output.length()));
+    }
+
+    /**
+     * Records the state an output was just created with.
+     */
+    public synchronized void record(File output, String inputHash, int width, int height, String renderSettings, String version) {
+        entries.put(getKey(output), createValue(inputHash, width, height, renderSettings, version, output.length()));
+        changed = true;
+    }
+
+    /**
+     * Forgets an output, such as one that has been deleted.
+     *
+     * @param output the output file
+     */
+    public synchronized void remove(File output) {
+        if (entries.remove(getKey(output)) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Writes the manifest to its directory if anything was recorded or removed since it was loaded or last saved.
+     * It's written to a temporary file first, so a crash never leaves a half written manifest behind.
+     */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+
+        final Path temporaryFile = Files.createTempFile(directory.toPath(), FILE_NAME, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(KEY_SEPARATOR);
+                writer.write(entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        changed = false;
+    }
+
+    private String getKey(File output) {
+        final Path relativePath = directory.toPath().relativize(output.getAbsoluteFile().toPath());
+        return FilenameUtils.separatorsToUnix(relativePath.toString());
+    }
+
+    private static String createValue(String inputHash, int width, int height, String renderSettings, String version, long outputLength) {
+        return inputHash + VALUE_SEPARATOR + width + "x" + height + VALUE_SEPARATOR + renderSettings + VALUE_SEPARATOR + version + VALUE_SEPARATOR + outputLength;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
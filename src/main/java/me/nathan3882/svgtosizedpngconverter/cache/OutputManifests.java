@@ -0,0 +1,46 @@
+package me.nathan3882.svgtosizedpngconverter.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link OutputManifest} of every output directory used during a run, so that each is loaded once and
+ * saved once, however many inputs write into it.
+ */
+public class OutputManifests {
+
+    private final Map<File, OutputManifest> manifests = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the manifest of an output directory, loading it on first use.
+     *
+     * @param directory the output directory
+     * @return the manifest of that directory
+     * @throws IOException if its existing manifest could not be read
+     */
+    public OutputManifest get(File directory) throws IOException {
+        try {
+            return manifests.computeIfAbsent(directory.getAbsoluteFile(), absoluteDirectory -> {
+                try {
+                    return OutputManifest.load(absoluteDirectory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves every manifest that has changed.
+     */
+    public void saveAll() throws IOException {
+        for (OutputManifest manifest : manifests.values()) {
+            manifest.save();
+        }
+    }
+}
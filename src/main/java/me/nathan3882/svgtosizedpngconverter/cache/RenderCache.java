@@ -0,0 +1,427 @@
+package me.nathan3882.svgtosizedpngconverter.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import me.nathan3882.svgtosizedpngconverter.output.OutputFiles;
+
+/**
+ * A content addressed store of rendered png images, shared by every project and process that points at the same
+ * directory. A render is keyed by the hash of its normalized svg, its size, the render settings and the converter
+ * version, so identical icons are only ever rendered once.
+ * <p>
+ * Renders are written to a temporary file and then moved into place, so a reader never sees half of one, and the
+ * least recently used renders are evicted once the cache grows past its maximum size. Eviction is guarded by a lock
+ * file, so that only one process evicts at a time. A render evicted while another process is fetching it is simply
+ * treated as a miss.
+ * <p>
+ * Hits are hard linked to the output where the file system allows it, and copied otherwise. Outputs are always
+ * deleted before being written, so a hard linked render is never overwritten through its output. For the same
+ * reason a hit is marked as used on an empty marker file beside the render, rather than on the render itself, whose
+ * modified time is that of every output linked to it.
+ */
+public class RenderCache {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 512L * 1024 * 1024;
+
+    private static final String OBJECTS_DIRECTORY_NAME = "objects";
+    private static final String TEMPORARY_DIRECTORY_NAME = "tmp";
+    private static final String LOCK_FILE_NAME = ".lock";
+    private static final String RENDER_EXTENSION = ".png";
+    private static final String USED_MARKER_EXTENSION = ".used";
+
+    /**
+     * After storing this fraction of the maximum size, the cache is checked for renders to evict.
+     */
+    private static final int TRIM_CHECK_FRACTION = 8;
+
+    /**
+     * Eviction goes below the maximum size, so that the next few stores don't immediately evict again.
+     */
+    private static final double TRIM_TARGET_RATIO = 0.9;
+
+    private static final byte[] UTF_8_BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Matches a reference to anything outside of the document itself, such as an external image or stylesheet. The
+     * render of such a document depends on more than its own bytes, so it isn't cached.
+     */
+    private static final Pattern EXTERNAL_REFERENCE = Pattern.compile("(href\\s*+=\\s*+[\"']|url\\(\\s*+[\"']?+|@import)\\s*+(?!#|data:)");
+
+    private static final Map<File, RenderCache> RENDER_CACHES = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final Path objectsDirectory;
+    private final Path temporaryDirectory;
+    private final Path lockFile;
+    private volatile long maximumBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesStoredSinceTrim = new AtomicLong();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile boolean hardLinksSupported = true;
+
+    private RenderCache(File directory, long maximumBytes) throws IOException {
+        this.directory = directory;
+        this.objectsDirectory = directory.toPath().resolve(OBJECTS_DIRECTORY_NAME);
+        this.temporaryDirectory = directory.toPath().resolve(TEMPORARY_DIRECTORY_NAME);
+        this.lockFile = directory.toPath().resolve(LOCK_FILE_NAME);
+        this.maximumBytes = maximumBytes;
+
+        Files.createDirectories(objectsDirectory);
+        Files.createDirectories(temporaryDirectory);
+    }
+
+    /**
+     * Gets the render cache of a directory, creating the directory if it doesn't exist yet. Every caller in this
+     * process that asks for the same directory shares one instance, which is kept under the largest size any of them
+     * asked for, so a daemon request with a smaller --cache-size can't evict the renders of those with a larger one.
+     *
+     * @param directory    the cache directory
+     * @param maximumBytes the size the cache is trimmed back under
+     * @return the render cache of that directory
+     * @throws IOException if the cache directory could not be created
+     */
+    public static RenderCache forDirectory(File directory, long maximumBytes) throws IOException {
+        final File absoluteDirectory = directory.getAbsoluteFile();
+
+        final RenderCache existing = RENDER_CACHES.get(absoluteDirectory);
+        if (existing != null) {
+            existing.raiseMaximumBytes(maximumBytes);
+            return existing;
+        }
+
+        final RenderCache created = new RenderCache(absoluteDirectory, maximumBytes);
+        final RenderCache raced = RENDER_CACHES.putIfAbsent(absoluteDirectory, created);
+        if (raced != null) {
+            raced.raiseMaximumBytes(maximumBytes);
+            return raced;
+        }
+        return created;
+    }
+
+    /**
+     * Hashes an svg file the way the render cache keys it. A byte order mark, line endings and trailing white space
+     * don't change a render, so they don't change the hash either.
+     *
+     * @param svgFile the input svg
+     * @return the hash of its normalized content, or empty if the svg references other files and so can't be cached
+     * @throws IOException if the file could not be read
+     */
+    public static Optional<String> contentHashOf(File svgFile) throws IOException {
+        final String content = normalize(Files.readAllBytes(svgFile.toPath()));
+
+        if (EXTERNAL_REFERENCE.matcher(content).find()) {
+            return Optional.empty();
+        }
+        return Optional.of(ContentHash.of(content.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String normalize(byte[] bytes) {
+        int start = 0;
+        if (bytes.length >= UTF_8_BYTE_ORDER_MARK.length && bytes[0] == UTF_8_BYTE_ORDER_MARK[0]
+                && bytes[1] == UTF_8_BYTE_ORDER_MARK[1] && bytes[2] == UTF_8_BYTE_ORDER_MARK[2]) {
+            start = UTF_8_BYTE_ORDER_MARK.length;
+        }
+
+        //ISO-8859-1 maps every byte to one char, so the content survives the round trip whatever its real encoding.
+        final String content = new String(bytes, start, bytes.length - start, StandardCharsets.ISO_8859_1);
+        return content.replace("\r\n", "\n").replace('\r', '\n').trim();
+    }
+
+    /**
+     * Creates the key of one render.
+     *
+     * @param contentHash    the hash from {@link #contentHashOf(File)}
+     * @param width          the width of the render
+     * @param height         the height of the render
+     * @param renderSettings the settings that change the bytes of the render
+     * @param version        the converter version
+     * @return the key of the render
+     */
+    public static String createKey(String contentHash, int width, int height, String renderSettings, String version) {
+        final String description = contentHash + "|" + width + "x" + height + "|" + renderSettings + "|" + version;
+        return ContentHash.of(description.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Puts the cached render of a key at the output location, replacing anything already there unless it's the same
+     * render.
+     *
+     * @param key    the key of the render
+     * @param output where the render should be
+     * @return whether the output was written or was already the render, or empty if it must be rendered
+     */
+    public Optional<OutputFiles.WriteOutcome> fetch(String key, File output) {
+        final Path cachedRender = getRenderPath(key);
+        if (!Files.isRegularFile(cachedRender)) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        OutputFiles.WriteOutcome writeOutcome = OutputFiles.WriteOutcome.UNCHANGED;
+
+        try {
+            final Path outputPath = output.toPath().toAbsolutePath();
+            //An output that's already the same render, most likely linked to it, is left alone to keep its modified time.
+            if (!OutputFiles.haveSameContent(cachedRender, outputPath)) {
+                Files.createDirectories(outputPath.getParent());
+                final Path temporaryPath = OutputFiles.getTemporaryPath(outputPath);
+                try {
+                    if (!hardLinksSupported || !tryHardLink(temporaryPath, cachedRender)) {
+                        Files.copy(cachedRender, temporaryPath);
+                    }
+                    OutputFiles.moveIntoPlace(temporaryPath, outputPath);
+                    writeOutcome = OutputFiles.WriteOutcome.WRITTEN;
+                } finally {
+                    Files.deleteIfExists(temporaryPath);
+                }
+            }
+
+            //Renders are evicted least recently used first, so a hit marks the render as used.
+            markUsed(key);
+        } catch (IOException e) {
+            //Most likely evicted by another process since it was checked, so it's rendered as if it was never there.
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+        return Optional.of(writeOutcome);
+    }
+
+    /**
+     * Marks a render as used now on its marker file, creating the marker if it's the render's first hit.
+     */
+    private void markUsed(String key) {
+        final Path usedMarker = getUsedMarkerPath(key);
+        try {
+            Files.setLastModifiedTime(usedMarker, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            try {
+                Files.createFile(usedMarker);
+            } catch (IOException createException) {
+                //Created by another process meanwhile, or the render was evicted, either way it's been marked.
+            }
+        } catch (IOException e) {
+            //Not being marked only makes the render more likely to be evicted.
+        }
+    }
+
+    private boolean tryHardLink(Path outputPath, Path cachedRender) throws IOException {
+        try {
+            Files.createLink(outputPath, cachedRender);
+            return true;
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            //Such as the cache being on another drive, or a file system without hard links. Copy from now on.
+            hardLinksSupported = false;
+            return false;
+        }
+    }
+
+    /**
+     * Stores a freshly rendered output under its key. Failing to store is never fatal to the conversion, the
+     * output is already where it should be.
+     *
+     * @param key    the key of the render
+     * @param output the rendered output
+     */
+    public void store(String key, File output) {
+        final Path cachedRender = getRenderPath(key);
+        if (Files.isRegularFile(cachedRender)) {
+            return; //Another output or process rendered the same thing.
+        }
+
+        Path temporaryFile = null;
+        try {
+            Files.createDirectories(cachedRender.getParent());
+
+            temporaryFile = Files.createTempFile(temporaryDirectory, key, RENDER_EXTENSION);
+            Files.copy(output.toPath(), temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryFile, cachedRender, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("A render could not be stored in the render cache at " + directory + " - " + e);
+            deleteQuietly(temporaryFile);
+            return;
+        }
+
+        if (bytesStoredSinceTrim.addAndGet(output.length()) >= maximumBytes / TRIM_CHECK_FRACTION) {
+            trim();
+        }
+    }
+
+    /**
+     * Evicts the least recently used renders until the cache is back under its maximum size. If this or another
+     * process is already trimming the cache, this returns straight away.
+     */
+    public void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock fileLock = lockChannel.tryLock()) {
+
+            if (fileLock == null) {
+                return; //Another process is trimming.
+            }
+            bytesStoredSinceTrim.set(0);
+            final long maximumBytes = this.maximumBytes; //It may be raised by another request meanwhile.
+
+            final List<CachedRender> cachedRenders = listCachedRenders();
+            long totalBytes = 0;
+            for (CachedRender cachedRender : cachedRenders) {
+                totalBytes += cachedRender.size;
+            }
+            if (totalBytes <= maximumBytes) {
+                return;
+            }
+
+            final long targetBytes = (long) (maximumBytes * TRIM_TARGET_RATIO);
+            cachedRenders.sort(Comparator.comparingLong(cachedRender -> cachedRender.lastUsedMillis));
+
+            for (CachedRender cachedRender : cachedRenders) {
+                if (totalBytes <= targetBytes) {
+                    break;
+                }
+                if (Files.deleteIfExists(cachedRender.path)) {
+                    totalBytes -= cachedRender.size;
+                }
+                deleteQuietly(cachedRender.usedMarker);
+            }
+        } catch (IOException e) {
+            System.out.println("The render cache at " + directory + " could not be trimmed - " + e);
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private List<CachedRender> listCachedRenders() throws IOException {
+        final List<CachedRender> cachedRenders = new ArrayList<>();
+
+        try (Stream<Path> paths = Files.walk(objectsDirectory)) {
+            paths.forEach(path -> {
+                final String fileName = path.getFileName().toString();
+                if (fileName.endsWith(USED_MARKER_EXTENSION)) {
+                    //A marker whose render is gone, such as one evicted by a process killed halfway through.
+                    if (!Files.exists(getRenderPath(fileName.substring(0, fileName.length() - USED_MARKER_EXTENSION.length())))) {
+                        deleteQuietly(path);
+                    }
+                    return;
+                }
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        //A render that's never been hit was last used when it was stored.
+                        final Path usedMarker = path.resolveSibling(fileName.substring(0, fileName.length() - RENDER_EXTENSION.length()) + USED_MARKER_EXTENSION);
+                        long lastUsedMillis = attributes.lastModifiedTime().toMillis();
+                        try {
+                            lastUsedMillis = Math.max(lastUsedMillis, Files.getLastModifiedTime(usedMarker).toMillis());
+                        } catch (IOException e) {
+                            //Never hit.
+                        }
+                        cachedRenders.add(new CachedRender(path, usedMarker, attributes.size(), lastUsedMillis));
+                    }
+                } catch (IOException e) {
+                    //Evicted by another process while walking.
+                }
+            });
+        }
+        return cachedRenders;
+    }
+
+    private Path getRenderPath(String key) {
+        //Split by the first two characters of the key, so no one directory holds every render.
+        return objectsDirectory.resolve(key.substring(0, 2)).resolve(key + RENDER_EXTENSION);
+    }
+
+    private Path getUsedMarkerPath(String key) {
+        return objectsDirectory.resolve(key.substring(0, 2)).resolve(key + USED_MARKER_EXTENSION);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            //nothing more can be done
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Raises the size the cache is trimmed back under to the given size, from the next time it's trimmed, if it's
+     * larger than the current one.
+     *
+     * @param maximumBytes the size another caller asked for
+     */
+    private synchronized void raiseMaximumBytes(long maximumBytes) {
+        if (maximumBytes > this.maximumBytes) {
+            this.maximumBytes = maximumBytes;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Render cache at " + directory + ": " + hits.get() + " hits, " + misses.get() + " misses, capped at "
+                + FileUtils.byteCountToDisplaySize(maximumBytes) + ".";
+    }
+
+    private static final class CachedRender {
+
+        private final Path path;
+        private final Path usedMarker;
+        private final long size;
+        private final long lastUsedMillis;
+
+        private CachedRender(Path path, Path usedMarker, long size, long lastUsedMillis) {
+            this.path = path;
+            this.usedMarker = usedMarker;
+            this.size = size;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package me.nathan3882.svgtosizedpngconverter.daemon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+
+import me.nathan3882.svgtosizedpngconverter.Argument;
+
+/**
+ * Sends a conversion to a running {@link ConversionDaemon} rather than converting it in this process, printing
+ * what the daemon answers with.
+ */
+public class ConversionClient {
+
+    /**
+     * These only matter to the process they were given to, so they aren't passed on to the daemon.
+     */
+    private static final Set<Argument> LOCAL_ARGUMENTS = EnumSet.of(Argument.CLIENT, Argument.DAEMON, Argument.PORT, Argument.SHUTDOWN);
+
+    /**
+     * The daemon may have been started from any directory, so paths are made absolute before they're sent.
+     */
+    private static final Set<Argument> PATH_ARGUMENTS = EnumSet.of(Argument.OUTPUT_FILE_DIRECTORY, Argument.INPUT_FILE,
+            Argument.CACHE_DIRECTORY, Argument.METRICS_OUT);
+
+    private final int port;
+
+    public ConversionClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Sends the conversion described by the given arguments to the daemon, and waits for it to finish.
+     *
+     * @param commandLineOptionContainer the parsed run arguments of this process
+     * @return true if the daemon converted everything successfully
+     */
+    public boolean send(CommandLine commandLineOptionContainer) throws IOException {
+        return sendRequest(toRequestLine(commandLineOptionContainer));
+    }
+
+    /**
+     * Sends a single request line to the daemon, printing each line of its response.
+     *
+     * @param request the request, see {@link DaemonProtocol}
+     * @return true if the daemon reported no failures
+     */
+    public boolean sendRequest(String request) throws IOException {
+        final Optional<String> tokenOptional = DaemonToken.read(port);
+        if (!tokenOptional.isPresent()) {
+            System.out.println("No converter daemon has been started on port " + port + " by this user. Start one with --daemon first.");
+            return false;
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), DaemonProtocol.CHARSET));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), DaemonProtocol.CHARSET))) {
+
+            writer.write(DaemonProtocol.AUTH + " " + tokenOptional.get());
+            writer.write('\n');
+            writer.write(request);
+            writer.write('\n');
+            writer.flush();
+
+            String response;
+            while ((response = reader.readLine()) != null) {
+                System.out.println(response);
+                if (DaemonProtocol.isDone(response)) {
+                    return DaemonProtocol.getFailures(response) == 0;
+                }
+            }
+            System.out.println("The converter daemon closed the connection before finishing the request.");
+            return false;
+        } catch (ConnectException e) {
+            System.out.println("No converter daemon is listening on port " + port + ". Start one with --daemon first.");
+            return false;
+        }
+    }
+
+    private static String toRequestLine(CommandLine commandLineOptionContainer) {
+        final StringBuilder request = new StringBuilder();
+
+        for (Argument argument : Argument.values()) {
+            if (LOCAL_ARGUMENTS.contains(argument) || !argument.isPresentIn(commandLineOptionContainer)) {
+                continue;
+            }
+
+            request.append("--").append(argument.getArgumentStringLong()).append(' ');
+
+            if (argument.takesValue()) {
+                String value = argument.getValueFromContainer(commandLineOptionContainer).orElse("");
+                if (PATH_ARGUMENTS.contains(argument) && !value.equals("desktop")) {
+                    value = new File(value).getAbsolutePath();
+                }
+                request.append('"').append(value).append("\" ");
+            }
+        }
+        return request.toString().trim();
+    }
+}
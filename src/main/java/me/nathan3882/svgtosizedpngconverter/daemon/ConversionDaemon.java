@@ -0,0 +1,332 @@
+package me.nathan3882.svgtosizedpngconverter.daemon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import me.nathan3882.svgtosizedpngconverter.Argument;
+import me.nathan3882.svgtosizedpngconverter.BatchConverter;
+import me.nathan3882.svgtosizedpngconverter.ConversionEngine;
+import me.nathan3882.svgtosizedpngconverter.ConversionResult;
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
+import me.nathan3882.svgtosizedpngconverter.SvgToSizedPngConverter;
+import me.nathan3882.svgtosizedpngconverter.types.FileType;
+
+/**
+ * Keeps one {@link ConversionEngine} running, with Batik loaded and warmed up, and converts each request sent to it
+ * over a loopback socket. This saves every small conversion from starting a JVM and loading Batik from cold.
+ * See {@link DaemonProtocol} for what is sent and received.
+ */
+public class ConversionDaemon {
+
+    public static final int DEFAULT_PORT = 7865;
+
+    private static final String WARM_UP_SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"24\" height=\"24\" viewBox=\"0 0 24 24\">" +
+            "<circle cx=\"12\" cy=\"12\" r=\"10\" fill=\"#000\"/></svg>";
+
+    /**
+     * These set up the engine, which is created once as the daemon starts, or don't convert anything, so a request
+     * giving them is refused rather than converted without them.
+     */
+    private static final Set<Argument> DAEMON_ONLY_ARGUMENTS = Collections.unmodifiableSet(EnumSet.of(Argument.THREADS,
+            Argument.EXECUTOR, Argument.WRITER_THREADS, Argument.WRITE_QUEUE, Argument.MEMORY_BUDGET, Argument.WATCH));
+
+    private final ConversionSettings settings;
+    private final int port;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+    private String token;
+
+    public ConversionDaemon(ConversionSettings settings, int port) {
+        this.settings = settings;
+        this.port = port;
+    }
+
+    /**
+     * Reads the port argument, telling the user and using {@link #DEFAULT_PORT} if it's not valid.
+     *
+     * @param commandLineOptionContainer the parsed run arguments
+     * @return the port to listen on or connect to
+     */
+    public static int parsePort(CommandLine commandLineOptionContainer) {
+        final Optional<String> portOptional = Argument.PORT.getValueFromContainer(commandLineOptionContainer);
+        return portOptional.map(port -> ConversionSettings.parsePositiveInt(port, DEFAULT_PORT, "port")).orElse(DEFAULT_PORT);
+    }
+
+    /**
+     * Warms the engine up, then serves requests until a {@link DaemonProtocol#SHUTDOWN} request is received or the
+     * process is stopped, such as by Ctrl+C. Only clients that send the {@link DaemonToken} written as it starts are
+     * served. Requests already being converted when it's shut down are finished before the engine is, either way.
+     */
+    public void run() throws IOException {
+        final ConversionEngine conversionEngine = new ConversionEngine(settings);
+        final ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+
+        //Stopping the process shuts down like a request would, holding the process until it's done.
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final Thread shutdownHook = new Thread(() -> {
+            try {
+                shutdown();
+            } catch (IOException e) {
+                //The server socket is closed anyway.
+            }
+            awaitUninterruptibly(stopped);
+        }, "converter-daemon-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            warmUp(conversionEngine);
+
+            this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            this.token = DaemonToken.create(port);
+            System.out.println("Converter daemon is listening on " + serverSocket.getLocalSocketAddress() + ". Send it conversions with --client.");
+
+            while (running) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (!running) {
+                        break; //The server socket was closed by a shutdown request.
+                    }
+                    throw e;
+                }
+                connections.add(socket);
+                connectionExecutor.execute(() -> handleConnection(socket, conversionEngine));
+            }
+        } finally {
+            if (serverSocket != null) {
+                serverSocket.close();
+                DaemonToken.delete(port);
+            }
+            //Connections waiting for their next request are ended, those converting one end once it's answered.
+            for (Socket connection : connections) {
+                try {
+                    connection.shutdownInput();
+                } catch (IOException e) {
+                    //It's already closed.
+                }
+            }
+            connectionExecutor.shutdown();
+            awaitUninterruptibly(connectionExecutor);
+            try {
+                conversionEngine.shutdown();
+            } finally {
+                System.out.println("Converter daemon has shut down.");
+                stopped.countDown();
+                removeShutdownHook(shutdownHook);
+            }
+        }
+    }
+
+    private static void removeShutdownHook(Thread shutdownHook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            //The process is already stopping, which is what shut the daemon down.
+        }
+    }
+
+    /**
+     * Converts a tiny svg, so that Batik's classes are loaded before the first real request arrives.
+     */
+    private static void warmUp(ConversionEngine conversionEngine) throws IOException {
+        final Path warmUpDirectory = Files.createTempDirectory("svgtspc-warm-up");
+        try {
+            final File warmUpSvgFile = warmUpDirectory.resolve("warm-up" + FileType.SVG.getExtensionWithDot()).toFile();
+            FileUtils.writeStringToFile(warmUpSvgFile, WARM_UP_SVG, DaemonProtocol.CHARSET);
+
+            conversionEngine.convert(warmUpSvgFile, warmUpDirectory.toFile(), false);
+        } catch (Throwable throwable) {
+            System.out.println("The converter daemon could not be warmed up, the first request will be slower - " + throwable);
+        } finally {
+            FileUtils.deleteQuietly(warmUpDirectory.toFile());
+        }
+    }
+
+    private void handleConnection(Socket socket, ConversionEngine conversionEngine) {
+        try (Socket connection = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), DaemonProtocol.CHARSET));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), DaemonProtocol.CHARSET))) {
+
+            final String authentication = reader.readLine();
+            if (authentication == null || !isAuthenticated(authentication.trim())) {
+                writeLine(writer, DaemonProtocol.ERROR + " the request wasn't sent with the token of this daemon, so it's been refused");
+                writeLine(writer, DaemonProtocol.done(0, 1, 0, 0));
+                return;
+            }
+
+            String request;
+            while ((request = reader.readLine()) != null) {
+                handleRequest(request.trim(), writer, conversionEngine);
+                //The daemon may be stopped at any time, so don't wait until then to save what's been converted.
+                conversionEngine.saveManifests();
+                conversionEngine.writeMetrics(settings);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("A client connection to the converter daemon failed - " + e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private boolean isAuthenticated(String authentication) {
+        final String prefix = DaemonProtocol.AUTH + " ";
+        return authentication.startsWith(prefix) && DaemonToken.matches(token, authentication.substring(prefix.length()));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch countDownLatch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                countDownLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(ExecutorService executorService) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executorService.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleRequest(String request, Writer writer, ConversionEngine conversionEngine) throws IOException {
+        final long startMillis = System.currentTimeMillis();
+
+        if (request.equals(DaemonProtocol.PING)) {
+            writeLine(writer, DaemonProtocol.PONG);
+            writeLine(writer, DaemonProtocol.done(0, 0, 0, 0));
+            return;
+        }
+
+        if (request.equals(DaemonProtocol.SHUTDOWN)) {
+            writeLine(writer, DaemonProtocol.OK + " shutting down");
+            writeLine(writer, DaemonProtocol.done(0, 0, 0, 0));
+            shutdown();
+            return;
+        }
+
+        final CommandLine commandLineOptionContainer;
+        try {
+            commandLineOptionContainer = new DefaultParser().parse(SvgToSizedPngConverter.getArgumentOptions(), SvgToSizedPngConverter.splitArgumentLine(request));
+        } catch (ParseException e) {
+            writeLine(writer, DaemonProtocol.ERROR + " " + e.getMessage());
+            writeLine(writer, DaemonProtocol.done(0, 1, 0, System.currentTimeMillis() - startMillis));
+            return;
+        }
+
+        final List<String> daemonOnlyArguments = DAEMON_ONLY_ARGUMENTS.stream()
+                .filter(argument -> argument.isPresentIn(commandLineOptionContainer))
+                .map(argument -> "--" + argument.getArgumentStringLong())
+                .collect(Collectors.toList());
+        if (!daemonOnlyArguments.isEmpty()) {
+            writeLine(writer, DaemonProtocol.ERROR + " " + String.join(", ", daemonOnlyArguments) + " can't be given to a request, only to the daemon as it's started with --daemon");
+            writeLine(writer, DaemonProtocol.done(0, 1, 0, System.currentTimeMillis() - startMillis));
+            return;
+        }
+
+        if (!SvgToSizedPngConverter.hasRequiredArguments(commandLineOptionContainer)) {
+            writeLine(writer, DaemonProtocol.ERROR + " a request needs both an output directory (-o) and an input (-i)");
+            writeLine(writer, DaemonProtocol.done(0, 1, 0, System.currentTimeMillis() - startMillis));
+            return;
+        }
+
+        final ConversionSettings requestSettings = ConversionSettings.fromCommandLine(commandLineOptionContainer);
+        final File imageOutputDirectory = SvgToSizedPngConverter.resolveOutputDirectory(Argument.OUTPUT_FILE_DIRECTORY.getValueFromContainer(commandLineOptionContainer).get());
+        final String specifiedInput = Argument.INPUT_FILE.getValueFromContainer(commandLineOptionContainer).get();
+
+        if (BatchConverter.isBatchInput(specifiedInput)) {
+            final List<BatchConverter.BatchInput> inputs = BatchConverter.findInputs(specifiedInput, imageOutputDirectory);
+            final BatchConverter.BatchSummary batchSummary = new BatchConverter(conversionEngine, requestSettings).convertAll(inputs, imageOutputDirectory);
+
+            conversionEngine.writeAtlas(requestSettings);
+            conversionEngine.writeMetrics(requestSettings);
+            writeLine(writer, DaemonProtocol.OK + " " + batchSummary);
+            writeLine(writer, DaemonProtocol.done(batchSummary.getIcons(), batchSummary.getFailures(), batchSummary.getBytesWritten(), System.currentTimeMillis() - startMillis));
+            return;
+        }
+
+        final File inputSvgFile = new File(specifiedInput);
+        if (!inputSvgFile.isFile() || !FilenameUtils.getExtension(inputSvgFile.getName()).equals(FileType.SVG.getExtensionNoDot())) {
+            writeLine(writer, DaemonProtocol.ERROR + " there is no dot svg file @ " + specifiedInput);
+            writeLine(writer, DaemonProtocol.done(0, 1, 0, System.currentTimeMillis() - startMillis));
+            return;
+        }
+
+        boolean successful = false;
+        long bytesWritten = 0;
+        try {
+            final ConversionResult conversionResult = conversionEngine.convert(inputSvgFile, imageOutputDirectory, false, requestSettings);
+            successful = conversionResult.isSuccessful();
+            bytesWritten = conversionResult.getBytesWritten();
+
+            writeLine(writer, (successful ? DaemonProtocol.OK + " converted " : DaemonProtocol.ERROR + " not every image was created for ") + inputSvgFile.getPath());
+        } catch (Throwable throwable) {
+            writeLine(writer, DaemonProtocol.ERROR + " " + inputSvgFile.getPath() + " could not be converted - " + throwable);
+        }
+        conversionEngine.writeAtlas(requestSettings);
+        conversionEngine.writeMetrics(requestSettings);
+        writeLine(writer, DaemonProtocol.done(1, successful ? 0 : 1, bytesWritten, System.currentTimeMillis() - startMillis));
+    }
+
+    /**
+     * Stops accepting requests. Requests that are already being converted are finished, and answered, before the
+     * engine is shut down by {@link #run()}.
+     */
+    public void shutdown() throws IOException {
+        this.running = false;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    private static void writeLine(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,73 @@
+package me.nathan3882.svgtosizedpngconverter.daemon;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The line based protocol spoken between the {@link ConversionClient} and the {@link ConversionDaemon}.
+ * <p>
+ * A client first sends {@link #AUTH} and the {@link DaemonToken} of the daemon, on a line of its own, or nothing it
+ * sends is accepted. It then sends one request per line, which is either {@link #PING}, {@link #SHUTDOWN} or the same
+ * arguments the converter takes on the command line, such as {@code -o "out" -i "icon.svg"}. The daemon answers with any number of
+ * {@link #OK} or {@link #ERROR} lines, followed by a single {@link #DONE} line that ends the response.
+ */
+public final class DaemonProtocol {
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    public static final String AUTH = "AUTH";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+    public static final String SHUTDOWN = "SHUTDOWN";
+
+    public static final String OK = "OK";
+    public static final String ERROR = "ERROR";
+    public static final String DONE = "DONE";
+
+    private static final String FAILURES_KEY = "failures=";
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * Creates the line that ends a response.
+     *
+     * @param icons        the number of input svgs converted
+     * @param failures     the number of those that failed
+     * @param bytesWritten the number of bytes written for them
+     * @param millis       how long the request took
+     * @return the done line
+     */
+    public static String done(int icons, int failures, long bytesWritten, long millis) {
+        return DONE + " icons=" + icons + " " + FAILURES_KEY + failures + " bytes=" + bytesWritten + " millis=" + millis;
+    }
+
+    public static boolean isDone(String line) {
+        return line.startsWith(DONE);
+    }
+
+    /**
+     * Reads the number of failures from a done line.
+     *
+     * @param doneLine a line created by {@link #done}
+     * @return the number of failures, or -1 if the line doesn't hold it
+     */
+    public static int getFailures(String doneLine) {
+        final int keyIndex = doneLine.indexOf(FAILURES_KEY);
+        if (keyIndex < 0) {
+            return -1;
+        }
+
+        final int valueStart = keyIndex + FAILURES_KEY.length();
+        int valueEnd = doneLine.indexOf(' ', valueStart);
+        if (valueEnd < 0) {
+            valueEnd = doneLine.length();
+        }
+
+        try {
+            return Integer.parseInt(doneLine.substring(valueStart, valueEnd));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
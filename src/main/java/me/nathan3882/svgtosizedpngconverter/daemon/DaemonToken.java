@@ -0,0 +1,119 @@
+package me.nathan3882.svgtosizedpngconverter.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Optional;
+
+import me.nathan3882.svgtosizedpngconverter.cache.ContentHash;
+
+/**
+ * The secret a {@link ConversionClient} has to send before the {@link ConversionDaemon} accepts its requests, so that
+ * other users of the machine, who can reach its loopback port too, can't shut it down or have it write anywhere its
+ * own user can. The daemon writes a new token to a file in the user's home directory that only the user can read,
+ * one per port, and deletes it when it shuts down.
+ */
+public final class DaemonToken {
+
+    private static final String TOKEN_DIRECTORY_NAME = ".svgtspc";
+    private static final int TOKEN_BYTES = 32;
+
+    private DaemonToken() {
+    }
+
+    /**
+     * Creates a new token for a daemon, replacing that of any daemon that ran on the port before.
+     *
+     * @param port the port the daemon listens on
+     * @return the token the daemon's clients must send
+     */
+    public static String create(int port) throws IOException {
+        final byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        //Hashing the random bytes is just a convenient way to hex encode them.
+        final String token = ContentHash.of(tokenBytes);
+
+        final Path tokenFile = getTokenFile(port);
+        createPrivately(tokenFile.getParent(), true);
+        Files.deleteIfExists(tokenFile);
+        createPrivately(tokenFile, false);
+        Files.write(tokenFile, token.getBytes(DaemonProtocol.CHARSET));
+        return token;
+    }
+
+    /**
+     * Reads the token of the daemon running on a port.
+     *
+     * @param port the port the daemon listens on
+     * @return the token, or empty if no daemon has written one
+     */
+    public static Optional<String> read(int port) throws IOException {
+        final Path tokenFile = getTokenFile(port);
+        if (!Files.isRegularFile(tokenFile)) {
+            return Optional.empty();
+        }
+        return Optional.of(new String(Files.readAllBytes(tokenFile), DaemonProtocol.CHARSET).trim());
+    }
+
+    /**
+     * Deletes the token of a daemon that's shutting down.
+     *
+     * @param port the port the daemon listened on
+     */
+    public static void delete(int port) throws IOException {
+        Files.deleteIfExists(getTokenFile(port));
+    }
+
+    /**
+     * Compares a token sent by a client with the daemon's, taking the same time however much of it is right.
+     *
+     * @param expected the daemon's token
+     * @param given    the token the client sent
+     * @return true if they're the same
+     */
+    public static boolean matches(String expected, String given) {
+        return MessageDigest.isEqual(expected.getBytes(DaemonProtocol.CHARSET), given.getBytes(DaemonProtocol.CHARSET));
+    }
+
+    private static Path getTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), TOKEN_DIRECTORY_NAME, "daemon-" + port + ".token");
+    }
+
+    /**
+     * Creates a file or directory that only the user can read, whether or not the file system has POSIX permissions.
+     * A directory that already exists is left as it is.
+     */
+    private static void createPrivately(Path path, boolean directory) throws IOException {
+        if (directory && Files.isDirectory(path)) {
+            return;
+        }
+
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            final FileAttribute<?> permissions = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(directory ? "rwx------" : "rw-------"));
+            if (directory) {
+                Files.createDirectories(path, permissions);
+            } else {
+                Files.createFile(path, permissions);
+            }
+            return;
+        }
+
+        if (directory) {
+            Files.createDirectories(path);
+        } else {
+            Files.createFile(path);
+        }
+        //Without POSIX permissions, such as on Windows, take every other user's access away as far as java.io can.
+        final File file = path.toFile();
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(false, false);
+        file.setWritable(true, true);
+    }
+}
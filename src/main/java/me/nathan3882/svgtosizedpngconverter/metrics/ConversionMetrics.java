@@ -0,0 +1,338 @@
+package me.nathan3882.svgtosizedpngconverter.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Records how long each {@link Stage} takes, per {@link me.nathan3882.svgtosizedpngconverter.TransformerType} and
+ * density where the stage is done per density, along with counts of inputs, outputs, failures and bytes. Recording is
+ * always on, as it's far cheaper than any stage, and the metrics are only written out if a run asks for them.
+ */
+public class ConversionMetrics {
+
+    /**
+     * The label of stages that aren't done for a particular type or density.
+     */
+    static final String ALL_LABEL = "all";
+
+    /**
+     * How often the heap in use is sampled for {@link #getPeakHeapBytes()}.
+     */
+    static final long HEAP_SAMPLE_MILLIS = 50;
+
+    private static final MemoryMXBean MEMORY_BEAN = ManagementFactory.getMemoryMXBean();
+    private static final ConversionMetrics SHARED = new ConversionMetrics();
+
+    private final Map<String, StageSeries> stageSeries = new ConcurrentHashMap<>();
+    private final Map<String, DensityCounters> densityCounters = new ConcurrentHashMap<>();
+    private final LongAdder inputs = new LongAdder();
+    private final LongAdder inputFailures = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAccumulator peakWriteQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder rasterBufferHits = new LongAdder();
+    private final LongAdder rasterBufferMisses = new LongAdder();
+    private final LongAdder vectorDrawableFallbacks = new LongAdder();
+    private final LongAccumulator peakAdmittedBytes = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peakHeapBytes = new LongAccumulator(Math::max, 0);
+    private final long startMillis = System.currentTimeMillis();
+
+    private ConversionMetrics() {
+        final ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heapSampler.scheduleAtFixedRate(this::sampleHeap, 0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public static ConversionMetrics getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Records the time of a stage that's done once per input.
+     *
+     * @param stage the stage
+     * @param nanos the time it took in nanoseconds
+     */
+    public void recordStage(Stage stage, long nanos) {
+        getStageSeries(stage, ALL_LABEL, ALL_LABEL).histogram.record(nanos);
+    }
+
+    /**
+     * Records the time of a stage done for one density.
+     *
+     * @param stage     the stage
+     * @param imageType the density it was done for
+     * @param nanos     the time it took in nanoseconds
+     */
+    public void recordStage(Stage stage, FilenameAttachableImageType imageType, long nanos) {
+        getStageSeries(stage, getTypeLabel(imageType), getDensityLabel(imageType)).histogram.record(nanos);
+    }
+
+    /**
+     * Records an input being converted.
+     *
+     * @param bytes the size of the input svg
+     */
+    public void recordInput(long bytes) {
+        inputs.increment();
+        inputBytes.add(bytes);
+    }
+
+    /**
+     * Records an input that could not be parsed, so none of its densities were converted.
+     */
+    public void recordInputFailure() {
+        inputFailures.increment();
+    }
+
+    /**
+     * Records the outcome of one density.
+     *
+     * @param imageType    the density
+     * @param successful   whether all of its outputs were created
+     * @param bytesWritten the bytes of every output it wrote
+     */
+    public void recordDensity(FilenameAttachableImageType imageType, boolean successful, long bytesWritten) {
+        final DensityCounters counters = getDensityCounters(imageType);
+        counters.densities.increment();
+        if (!successful) {
+            counters.failures.increment();
+        }
+        counters.outputBytes.add(bytesWritten);
+    }
+
+    /**
+     * Records a density's png being taken from the render cache rather than rendered.
+     *
+     * @param imageType the density
+     */
+    public void recordRenderCacheHit(FilenameAttachableImageType imageType) {
+        getDensityCounters(imageType).renderCacheHits.increment();
+    }
+
+    /**
+     * Records an output that already held exactly what would have been written, so it was left alone.
+     *
+     * @param imageType the density
+     */
+    public void recordUnchangedOutput(FilenameAttachableImageType imageType) {
+        getDensityCounters(imageType).unchangedOutputs.increment();
+    }
+
+    /**
+     * Records how far a downsampled png differed from a true render of the same density.
+     *
+     * @param imageType the density
+     * @param delta     the largest difference of any channel, from 0 to 255
+     * @param rejected  whether the difference was too large, so that the true render was written instead
+     */
+    public void recordDownsampleDelta(FilenameAttachableImageType imageType, int delta, boolean rejected) {
+        final DensityCounters counters = getDensityCounters(imageType);
+        counters.downsampleMaximumDelta.accumulate(delta);
+        if (rejected) {
+            counters.downsampleRejections.increment();
+        }
+    }
+
+    /**
+     * Records how many outputs were waiting in the --writer-threads queue when one was added to it.
+     *
+     * @param depth the number of outputs waiting to be written
+     */
+    public void recordWriteQueueDepth(int depth) {
+        peakWriteQueueDepth.accumulate(depth);
+    }
+
+    /**
+     * Records an image being taken from the raster buffer pool to render into.
+     *
+     * @param hit whether an idle image was reused, rather than a new one created
+     */
+    public void recordRasterBufferAcquired(boolean hit) {
+        (hit ? rasterBufferHits : rasterBufferMisses).increment();
+    }
+
+    /**
+     * Records an input whose Android images had to be rendered as pngs, as it can't be expressed as a VectorDrawable.
+     */
+    public void recordVectorDrawableFallback() {
+        vectorDrawableFallbacks.increment();
+    }
+
+    /**
+     * Records the memory that every density admitted by the memory budget is estimated to need, when one is admitted.
+     *
+     * @param bytes the estimated bytes of every density admitted at that moment
+     */
+    public void recordAdmittedBytes(long bytes) {
+        peakAdmittedBytes.accumulate(bytes);
+    }
+
+    /**
+     * Writes every metric to a file, as Prometheus text if its name ends in {@code .prom} and as JSON otherwise. The
+     * file is replaced in one move, so anything reading it, such as a textfile collector, never sees half of it.
+     *
+     * @param outputFile the file to write
+     * @throws IOException if it could not be written
+     */
+    public void writeTo(File outputFile) throws IOException {
+        final Path outputPath = outputFile.getAbsoluteFile().toPath();
+        Files.createDirectories(outputPath.getParent());
+
+        final Path temporaryFile = Files.createTempFile(outputPath.getParent(), outputFile.getName(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            MetricsFormat.forFile(outputFile).write(this, writer);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, outputPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Gets the most heap that was in use at once, sampled every {@link #HEAP_SAMPLE_MILLIS} since the metrics were
+     * created, so a spike shorter than that may be missed. The peaks of the heap's pools can't be added up instead, as
+     * they're each reached at different times, such as the young generation's just before every collection.
+     *
+     * @return the peak heap use in bytes
+     */
+    public long getPeakHeapBytes() {
+        sampleHeap();
+        return peakHeapBytes.get();
+    }
+
+    private void sampleHeap() {
+        peakHeapBytes.accumulate(MEMORY_BEAN.getHeapMemoryUsage().getUsed());
+    }
+
+    public long getInputs() {
+        return inputs.sum();
+    }
+
+    public long getInputFailures() {
+        return inputFailures.sum();
+    }
+
+    public long getInputBytes() {
+        return inputBytes.sum();
+    }
+
+    public long getPeakWriteQueueDepth() {
+        return peakWriteQueueDepth.get();
+    }
+
+    public long getRasterBufferHits() {
+        return rasterBufferHits.sum();
+    }
+
+    public long getRasterBufferMisses() {
+        return rasterBufferMisses.sum();
+    }
+
+    public long getPeakAdmittedBytes() {
+        return peakAdmittedBytes.get();
+    }
+
+    public long getVectorDrawableFallbacks() {
+        return vectorDrawableFallbacks.sum();
+    }
+
+    public double getElapsedSeconds() {
+        return (System.currentTimeMillis() - startMillis) / 1000D;
+    }
+
+    /**
+     * Gets the timings of every stage, type and density recorded so far, in a stable order.
+     */
+    List<StageSeries> getStageSeries() {
+        return sorted(stageSeries.values(), Comparator.comparing((StageSeries series) -> series.stage)
+                .thenComparing(series -> series.typeLabel).thenComparing(series -> series.densityLabel));
+    }
+
+    /**
+     * Gets the counters of every type and density recorded so far, in a stable order.
+     */
+    List<DensityCounters> getDensityCounters() {
+        return sorted(densityCounters.values(), Comparator.comparing((DensityCounters counters) -> counters.typeLabel)
+                .thenComparing(counters -> counters.densityLabel));
+    }
+
+    private StageSeries getStageSeries(Stage stage, String typeLabel, String densityLabel) {
+        return stageSeries.computeIfAbsent(stage + "|" + typeLabel + "|" + densityLabel,
+                key -> new StageSeries(stage, typeLabel, densityLabel));
+    }
+
+    private DensityCounters getDensityCounters(FilenameAttachableImageType imageType) {
+        final String typeLabel = getTypeLabel(imageType);
+        final String densityLabel = getDensityLabel(imageType);
+        return densityCounters.computeIfAbsent(typeLabel + "|" + densityLabel, key -> new DensityCounters(typeLabel, densityLabel));
+    }
+
+    private static String getTypeLabel(FilenameAttachableImageType imageType) {
+        return imageType.getTransformerType().name().toLowerCase();
+    }
+
+    private static String getDensityLabel(FilenameAttachableImageType imageType) {
+        return imageType.toString().toLowerCase();
+    }
+
+    private static <T> List<T> sorted(Collection<T> values, Comparator<T> comparator) {
+        final List<T> sortedValues = new ArrayList<>(values);
+        sortedValues.sort(comparator);
+        return sortedValues;
+    }
+
+    static final class StageSeries {
+
+        final Stage stage;
+        final String typeLabel;
+        final String densityLabel;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        private StageSeries(Stage stage, String typeLabel, String densityLabel) {
+            this.stage = stage;
+            this.typeLabel = typeLabel;
+            this.densityLabel = densityLabel;
+        }
+    }
+
+    static final class DensityCounters {
+
+        final String typeLabel;
+        final String densityLabel;
+        final LongAdder densities = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder outputBytes = new LongAdder();
+        final LongAdder renderCacheHits = new LongAdder();
+        final LongAdder unchangedOutputs = new LongAdder();
+        final LongAccumulator downsampleMaximumDelta = new LongAccumulator(Math::max, 0);
+        final LongAdder downsampleRejections = new LongAdder();
+
+        private DensityCounters(String typeLabel, String densityLabel) {
+            this.typeLabel = typeLabel;
+            this.densityLabel = densityLabel;
+        }
+    }
+}
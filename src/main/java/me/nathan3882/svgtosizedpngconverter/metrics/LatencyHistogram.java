@@ -0,0 +1,64 @@
+package me.nathan3882.svgtosizedpngconverter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many timings fell into each of a fixed set of buckets, along with their count and sum, the way a
+ * Prometheus histogram does. Safe to record into from any number of threads.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bound of each bucket in milliseconds. Anything slower than the last is only in the implicit +Inf bucket.
+     */
+    private static final double[] BUCKET_BOUNDS_MILLIS = {1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Records one timing.
+     *
+     * @param nanos the time taken in nanoseconds
+     */
+    public void record(long nanos) {
+        final double millis = nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        for (int index = 0; index < BUCKET_BOUNDS_MILLIS.length; index++) {
+            if (millis <= BUCKET_BOUNDS_MILLIS[index]) {
+                bucketCounts.incrementAndGet(index);
+                break;
+            }
+        }
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public static double[] getBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Gets how many timings were at or below the bound of the given bucket, including those of every faster bucket.
+     *
+     * @param bucketIndex the index of the bucket in {@link #getBucketBoundsMillis()}
+     * @return the cumulative count
+     */
+    public long getCumulativeCount(int bucketIndex) {
+        long cumulativeCount = 0;
+        for (int index = 0; index <= bucketIndex; index++) {
+            cumulativeCount += bucketCounts.get(index);
+        }
+        return cumulativeCount;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumMillis() {
+        return sumNanos.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
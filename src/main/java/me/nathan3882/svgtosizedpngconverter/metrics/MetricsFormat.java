@@ -0,0 +1,189 @@
+package me.nathan3882.svgtosizedpngconverter.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * The formats {@link ConversionMetrics} can be written in. Every metric name starts with {@link #PREFIX}.
+ */
+public enum MetricsFormat {
+
+    /**
+     * The Prometheus text exposition format, as read by the node exporter's textfile collector.
+     */
+    PROMETHEUS("prom") {
+        @Override
+        public void write(ConversionMetrics metrics, Writer writer) throws IOException {
+            writeMetric(writer, "inputs_total", "counter", "Input svg files converted.", metrics.getInputs());
+            writeMetric(writer, "input_failures_total", "counter", "Input svg files that could not be parsed.", metrics.getInputFailures());
+            writeMetric(writer, "input_bytes_total", "counter", "Bytes of input svg files converted.", metrics.getInputBytes());
+            writeMetric(writer, "peak_heap_bytes", "gauge", "The most heap in use at once, sampled every " + ConversionMetrics.HEAP_SAMPLE_MILLIS + " ms.", metrics.getPeakHeapBytes());
+            writeMetric(writer, "raster_pool_hits_total", "counter", "Renders that reused a pooled image.", metrics.getRasterBufferHits());
+            writeMetric(writer, "raster_pool_misses_total", "counter", "Renders that had to allocate a new image.", metrics.getRasterBufferMisses());
+            writeMetric(writer, "vector_drawable_fallbacks_total", "counter", "Inputs rendered as Android pngs because they can't be a VectorDrawable.", metrics.getVectorDrawableFallbacks());
+            writeMetric(writer, "memory_budget_peak_bytes", "gauge", "The most memory the densities admitted at once were estimated to need.", metrics.getPeakAdmittedBytes());
+            writeMetric(writer, "write_queue_peak_depth", "gauge", "The most outputs waiting in the --writer-threads queue at once.", metrics.getPeakWriteQueueDepth());
+            writeMetric(writer, "elapsed_seconds", "gauge", "Seconds since the metrics started being recorded.", metrics.getElapsedSeconds());
+
+            final List<ConversionMetrics.DensityCounters> densityCounters = metrics.getDensityCounters();
+            writeHeader(writer, "densities_total", "counter", "Densities converted.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "densities_total", densityLabels(counters), counters.densities.sum());
+            }
+            writeHeader(writer, "density_failures_total", "counter", "Densities that not every output was created for.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "density_failures_total", densityLabels(counters), counters.failures.sum());
+            }
+            writeHeader(writer, "output_bytes_total", "counter", "Bytes of output images written.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "output_bytes_total", densityLabels(counters), counters.outputBytes.sum());
+            }
+            writeHeader(writer, "render_cache_hits_total", "counter", "Pngs taken from the render cache instead of rendered.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "render_cache_hits_total", densityLabels(counters), counters.renderCacheHits.sum());
+            }
+            writeHeader(writer, "unchanged_outputs_total", "counter", "Outputs that already held exactly what would have been written, so were left alone.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "unchanged_outputs_total", densityLabels(counters), counters.unchangedOutputs.sum());
+            }
+            writeHeader(writer, "downsample_max_delta", "gauge", "The largest channel difference between a downsampled png and its true render, with --downsample-max-delta.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "downsample_max_delta", densityLabels(counters), counters.downsampleMaximumDelta.get());
+            }
+            writeHeader(writer, "downsample_rejections_total", "counter", "Downsampled pngs that differed too much, so the true render was written instead.");
+            for (ConversionMetrics.DensityCounters counters : densityCounters) {
+                writeSample(writer, "downsample_rejections_total", densityLabels(counters), counters.downsampleRejections.sum());
+            }
+
+            final double[] bucketBoundsMillis = LatencyHistogram.getBucketBoundsMillis();
+            writeHeader(writer, "stage_duration_milliseconds", "histogram", "Time taken by each stage.");
+            for (ConversionMetrics.StageSeries series : metrics.getStageSeries()) {
+                final String labels = "stage=\"" + series.stage.getMetricName() + "\",type=\"" + series.typeLabel + "\",density=\"" + series.densityLabel + "\"";
+                for (int index = 0; index < bucketBoundsMillis.length; index++) {
+                    writeSample(writer, "stage_duration_milliseconds_bucket", labels + ",le=\"" + formatNumber(bucketBoundsMillis[index]) + "\"",
+                            series.histogram.getCumulativeCount(index));
+                }
+                writeSample(writer, "stage_duration_milliseconds_bucket", labels + ",le=\"+Inf\"", series.histogram.getCount());
+                writeSample(writer, "stage_duration_milliseconds_sum", labels, series.histogram.getSumMillis());
+                writeSample(writer, "stage_duration_milliseconds_count", labels, series.histogram.getCount());
+            }
+        }
+
+        private String densityLabels(ConversionMetrics.DensityCounters counters) {
+            return "type=\"" + counters.typeLabel + "\",density=\"" + counters.densityLabel + "\"";
+        }
+
+        private void writeMetric(Writer writer, String name, String type, String help, Number value) throws IOException {
+            writeHeader(writer, name, type, help);
+            writeSample(writer, name, null, value);
+        }
+
+        private void writeHeader(Writer writer, String name, String type, String help) throws IOException {
+            writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+            writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+        }
+
+        private void writeSample(Writer writer, String name, String labels, Number value) throws IOException {
+            writer.write(PREFIX + name + (labels == null ? "" : "{" + labels + "}") + " " + formatNumber(value) + "\n");
+        }
+    },
+
+    JSON("json") {
+        @Override
+        public void write(ConversionMetrics metrics, Writer writer) throws IOException {
+            writer.write("{\n");
+            writer.write("  \"inputs\": " + metrics.getInputs() + ",\n");
+            writer.write("  \"inputFailures\": " + metrics.getInputFailures() + ",\n");
+            writer.write("  \"inputBytes\": " + metrics.getInputBytes() + ",\n");
+            writer.write("  \"peakHeapBytes\": " + metrics.getPeakHeapBytes() + ",\n");
+            writer.write("  \"rasterPoolHits\": " + metrics.getRasterBufferHits() + ",\n");
+            writer.write("  \"rasterPoolMisses\": " + metrics.getRasterBufferMisses() + ",\n");
+            writer.write("  \"vectorDrawableFallbacks\": " + metrics.getVectorDrawableFallbacks() + ",\n");
+            writer.write("  \"memoryBudgetPeakBytes\": " + metrics.getPeakAdmittedBytes() + ",\n");
+            writer.write("  \"writeQueuePeakDepth\": " + metrics.getPeakWriteQueueDepth() + ",\n");
+            writer.write("  \"elapsedSeconds\": " + formatNumber(metrics.getElapsedSeconds()) + ",\n");
+
+            writer.write("  \"densities\": [");
+            final List<ConversionMetrics.DensityCounters> densityCounters = metrics.getDensityCounters();
+            for (int index = 0; index < densityCounters.size(); index++) {
+                final ConversionMetrics.DensityCounters counters = densityCounters.get(index);
+                writer.write(index == 0 ? "\n" : ",\n");
+                writer.write("    {\"type\": \"" + counters.typeLabel + "\", \"density\": \"" + counters.densityLabel + "\"" +
+                        ", \"count\": " + counters.densities.sum() +
+                        ", \"failures\": " + counters.failures.sum() +
+                        ", \"outputBytes\": " + counters.outputBytes.sum() +
+                        ", \"renderCacheHits\": " + counters.renderCacheHits.sum() +
+                        ", \"unchangedOutputs\": " + counters.unchangedOutputs.sum() +
+                        ", \"downsampleMaxDelta\": " + counters.downsampleMaximumDelta.get() +
+                        ", \"downsampleRejections\": " + counters.downsampleRejections.sum() + "}");
+            }
+            writer.write(densityCounters.isEmpty() ? "],\n" : "\n  ],\n");
+
+            final double[] bucketBoundsMillis = LatencyHistogram.getBucketBoundsMillis();
+            writer.write("  \"stages\": [");
+            final List<ConversionMetrics.StageSeries> stageSeries = metrics.getStageSeries();
+            for (int index = 0; index < stageSeries.size(); index++) {
+                final ConversionMetrics.StageSeries series = stageSeries.get(index);
+                final LatencyHistogram histogram = series.histogram;
+                writer.write(index == 0 ? "\n" : ",\n");
+                writer.write("    {\"stage\": \"" + series.stage.getMetricName() + "\", \"type\": \"" + series.typeLabel + "\"" +
+                        ", \"density\": \"" + series.densityLabel + "\"" +
+                        ", \"count\": " + histogram.getCount() +
+                        ", \"sumMillis\": " + formatNumber(histogram.getSumMillis()) +
+                        ", \"buckets\": {");
+                for (int bucketIndex = 0; bucketIndex < bucketBoundsMillis.length; bucketIndex++) {
+                    writer.write("\"" + formatNumber(bucketBoundsMillis[bucketIndex]) + "\": " + histogram.getCumulativeCount(bucketIndex) + ", ");
+                }
+                writer.write("\"+Inf\": " + histogram.getCount() + "}}");
+            }
+            writer.write(stageSeries.isEmpty() ? "]\n" : "\n  ]\n");
+            writer.write("}\n");
+        }
+    };
+
+    public static final String PREFIX = "svgtspc_";
+
+    private final String extension;
+
+    MetricsFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Picks the format of a metrics file from its extension, {@link #JSON} unless it's one of Prometheus text.
+     *
+     * @param outputFile the metrics file
+     * @return the format to write it in
+     */
+    public static MetricsFormat forFile(File outputFile) {
+        final String fileExtension = FilenameUtils.getExtension(outputFile.getName()).toLowerCase(Locale.ROOT);
+        return fileExtension.equals(PROMETHEUS.extension) || fileExtension.equals("txt") ? PROMETHEUS : JSON;
+    }
+
+    /**
+     * Writes the given metrics in this format.
+     *
+     * @param metrics the metrics to write
+     * @param writer  where to write them
+     */
+    public abstract void write(ConversionMetrics metrics, Writer writer) throws IOException;
+
+    private static String formatNumber(Number value) {
+        if (value instanceof Double) {
+            final double doubleValue = value.doubleValue();
+            return BigDecimal.valueOf(doubleValue).setScale(3, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(value);
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
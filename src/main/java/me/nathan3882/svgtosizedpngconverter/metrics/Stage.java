@@ -0,0 +1,33 @@
+package me.nathan3882.svgtosizedpngconverter.metrics;
+
+/**
+ * The stages an input passes through on its way to its images, each timed separately by {@link ConversionMetrics}.
+ * Stages done once per input, rather than per density, are recorded with a type and density of "all".
+ */
+public enum Stage {
+
+    PREFLIGHT("preflight"), //Streaming through the input svg to check it and estimate its cost, once per input of a batch.
+    PARSE("parse"), //Parsing the input svg into a document, once per input.
+    DOM_ENHANCE("dom_enhance"), //Building the CSS and SVG engine of the parsed document, once per input.
+    RESIZE("resize"), //Copying the parsed document and setting its root size.
+    SVG_SERIALIZE("svg_serialize"), //Writing the resized svg file.
+    RASTERIZE("rasterize"), //Painting the graphics tree into an image.
+    DOWNSAMPLE("downsample"), //Shrinking the render of the largest density, with --downsample.
+    PNG_ENCODE("png_encode"), //Encoding the image into the bytes of a png file.
+    ADMISSION_WAIT("admission_wait"), //Waiting for the memory budget to admit a density, as the ones already running need too much.
+    WRITE("write"), //Writing an encoded svg or png file to the disk.
+    WRITE_WAIT("write_wait"), //Waiting for room in the --writer-threads queue because the disk is behind.
+    VECTOR_DRAWABLE("vector_drawable"), //Converting the graphics tree into a VectorDrawable, with --vector-drawable.
+    ATLAS("atlas"), //Packing and writing the sheets of a density at the end of the run, with --atlas.
+    DENSITY("density"); //Everything that's done for one density, end to end.
+
+    private final String metricName;
+
+    Stage(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,237 @@
+package me.nathan3882.svgtosizedpngconverter.output;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Writes encoded outputs on dedicated threads, so that render threads can move on to their next density instead of
+ * waiting on the disk. Outputs are handed over through a bounded queue, and when the disk falls behind and the queue
+ * fills up, {@link #submit} blocks until there's room. That backpressure keeps the encoded bytes held in memory at
+ * most the queue's capacity, however far ahead the renders get.
+ * <p>
+ * Every output is written with {@link OutputFiles#write(Path, byte[])}, so it's still replaced in one move and left
+ * alone if it wouldn't change.
+ */
+public class AsyncOutputWriter {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    /**
+     * Taken from the queue by a writer thread to tell it to stop.
+     */
+    private static final PendingWrite STOP = new PendingWrite(null, null, null);
+
+    private final BlockingQueue<PendingWrite> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+    private final int queueCapacity;
+    private boolean shutdown;
+
+    /**
+     * Held to read while an output is submitted, and to write while shutting down, so that nothing can be queued
+     * behind the writer threads' {@link #STOP}s, where it would never be written.
+     */
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder queueDepthTotal = new LongAdder();
+    private final LongAccumulator peakQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+
+    /**
+     * Starts the writer threads.
+     *
+     * @param writerThreadCount the number of threads to write outputs on, at least one
+     * @param queueCapacity     the most outputs that can wait to be written before {@link #submit} blocks
+     */
+    public AsyncOutputWriter(int writerThreadCount, int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+
+        for (int index = 0; index < writerThreadCount; index++) {
+            final Thread writerThread = new Thread(this::runWriter, "svgtspc-writer-" + (index + 1));
+            writerThread.setDaemon(true);
+            writerThread.start();
+            writerThreads.add(writerThread);
+        }
+    }
+
+    /**
+     * Queues an output to be written, waiting for room in the queue if it's full. The time spent waiting is recorded
+     * as the {@link Stage#WRITE_WAIT} of the density.
+     *
+     * @param outputPath the file to write
+     * @param content    what it should hold, which mustn't be changed afterwards
+     * @param imageType  the density the output belongs to
+     * @return completed with whether the file was written or was already up to date once it has been, or
+     * exceptionally if it could not be written
+     * @throws InterruptedIOException if this thread is interrupted while waiting for room in the queue
+     */
+    public CompletableFuture<OutputFiles.WriteOutcome> submit(Path outputPath, byte[] content, FilenameAttachableImageType imageType) throws InterruptedIOException {
+        final PendingWrite pendingWrite = new PendingWrite(outputPath, content, imageType);
+        shutdownLock.readLock().lock();
+        try {
+            if (shutdown) {
+                throw new IllegalStateException("The output writer has been shut down, so " + outputPath + " can't be written.");
+            }
+
+            if (!queue.offer(pendingWrite)) {
+                //The queue is full, so the disk is behind. Hold this render thread until a writer catches up.
+                final long stallStartNanos = System.nanoTime();
+                try {
+                    queue.put(pendingWrite);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to queue " + outputPath + " to be written.");
+                }
+                final long stalledNanos = System.nanoTime() - stallStartNanos;
+                stalls.increment();
+                stallNanos.add(stalledNanos);
+                ConversionMetrics.getShared().recordStage(Stage.WRITE_WAIT, imageType, stalledNanos);
+            }
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+
+        final int queueDepth = queue.size();
+        submitted.increment();
+        queueDepthTotal.add(queueDepth);
+        peakQueueDepth.accumulate(queueDepth);
+        ConversionMetrics.getShared().recordWriteQueueDepth(queueDepth);
+        return pendingWrite.future;
+    }
+
+    private void runWriter() {
+        while (true) {
+            final PendingWrite pendingWrite;
+            try {
+                pendingWrite = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (pendingWrite == STOP) {
+                return;
+            }
+
+            try {
+                final long writeStartNanos = System.nanoTime();
+                final OutputFiles.WriteOutcome writeOutcome = OutputFiles.write(pendingWrite.outputPath, pendingWrite.content);
+                ConversionMetrics.getShared().recordStage(Stage.WRITE, pendingWrite.imageType, System.nanoTime() - writeStartNanos);
+
+                written.increment();
+                pendingWrite.future.complete(writeOutcome);
+            } catch (Throwable throwable) {
+                pendingWrite.future.completeExceptionally(throwable);
+            }
+        }
+    }
+
+    /**
+     * Writes everything that's already been queued, including by submissions still waiting for room in the queue, then
+     * stops the writer threads. Nothing can be submitted afterwards.
+     */
+    public void shutdown() {
+        //Waits for any submissions in progress to be queued, which the writer threads are still taking from the queue.
+        shutdownLock.writeLock().lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            this.shutdown = true;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+
+        boolean interrupted = false;
+        for (int index = 0; index < writerThreads.size(); index++) {
+            while (true) {
+                try {
+                    queue.put(STOP);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Thread writerThread : writerThreads) {
+            while (writerThread.isAlive()) {
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * Gets the average number of outputs that were waiting to be written, including the one just queued, each time
+     * one was submitted.
+     *
+     * @return the average queue depth, or 0 if nothing has been submitted
+     */
+    public double getAverageQueueDepth() {
+        final long submissions = submitted.sum();
+        return submissions == 0 ? 0 : (double) queueDepthTotal.sum() / submissions;
+    }
+
+    /**
+     * Gets the number of times a render thread had to wait for room in the queue.
+     *
+     * @return the number of stalled submissions
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    public long getStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Output writer: %d files written on %d threads, queue of %d averaged %.1f deep and peaked at %d, renders stalled %d times for %d ms.",
+                getWritten(), writerThreads.size(), queueCapacity, getAverageQueueDepth(), getPeakQueueDepth(), getStalls(), getStallMillis());
+    }
+
+    private static final class PendingWrite {
+
+        private final Path outputPath;
+        private final byte[] content;
+        private final FilenameAttachableImageType imageType;
+        private final CompletableFuture<OutputFiles.WriteOutcome> future = new CompletableFuture<>();
+
+        private PendingWrite(Path outputPath, byte[] content, FilenameAttachableImageType imageType) {
+            this.outputPath = outputPath;
+            this.content = content;
+            this.imageType = imageType;
+        }
+    }
+}
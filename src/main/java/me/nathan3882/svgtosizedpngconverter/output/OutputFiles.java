@@ -0,0 +1,225 @@
+package me.nathan3882.svgtosizedpngconverter.output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Writes output files so that they're never seen half written, and aren't touched at all if they wouldn't change.
+ * The content is written through a buffered {@link FileChannel} to a temporary file next to the output, which is then
+ * moved over it in one step. If the output already holds exactly the same bytes, the temporary file is thrown away
+ * instead, so the output keeps its modification time and build tools that watch it see nothing to redo.
+ * <p>
+ * Replacing rather than writing over an output also means one that's hard linked to a render cache is never changed
+ * through the link.
+ */
+public final class OutputFiles {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Writes bytes to an output file, unless it already holds exactly those bytes.
+     *
+     * @param outputPath the file to write
+     * @param content    what it should hold
+     * @return {@link WriteOutcome#WRITTEN} or {@link WriteOutcome#UNCHANGED}
+     * @throws IOException if the file could not be written, in which case any existing file is left as it was
+     */
+    public static WriteOutcome write(Path outputPath, byte[] content) throws IOException {
+        if (hasContent(outputPath, content)) {
+            return WriteOutcome.UNCHANGED;
+        }
+        return write(outputPath, outputStream -> {
+            outputStream.write(content);
+            return true;
+        });
+    }
+
+    /**
+     * Writes an output file from whatever the given writer streams, unless it already holds exactly those bytes.
+     *
+     * @param outputPath    the file to write
+     * @param contentWriter writes the content, and may give up on writing it
+     * @return whether the file was written, was already up to date, or the writer gave up
+     * @throws IOException if the file could not be written, in which case any existing file is left as it was
+     */
+    public static WriteOutcome write(Path outputPath, ContentWriter contentWriter) throws IOException {
+        final Path absoluteOutputPath = outputPath.toAbsolutePath();
+        final Path outputDirectory = absoluteOutputPath.getParent();
+        Files.createDirectories(outputDirectory);
+
+        final Path temporaryPath = getTemporaryPath(absoluteOutputPath);
+        try {
+            final boolean written;
+            try (FileChannel fileChannel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+                 OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE)) {
+
+                written = contentWriter.writeTo(outputStream);
+            }
+
+            if (!written) {
+                return WriteOutcome.ABANDONED;
+            }
+            if (haveSameContent(temporaryPath, absoluteOutputPath)) {
+                return WriteOutcome.UNCHANGED;
+            }
+            moveIntoPlace(temporaryPath, absoluteOutputPath);
+            return WriteOutcome.WRITTEN;
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Gets a unique path for a temporary file next to an output, hidden by a leading dot, which doesn't exist yet.
+     *
+     * @param outputPath the output the temporary file will be moved over
+     * @return the temporary path
+     */
+    public static Path getTemporaryPath(Path outputPath) {
+        final Path absoluteOutputPath = outputPath.toAbsolutePath();
+        return absoluteOutputPath.resolveSibling("." + absoluteOutputPath.getFileName() + "." + UUID.randomUUID() + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Moves a finished temporary file over an output in one step, where the file system can, so the output is only
+     * ever seen whole.
+     *
+     * @param temporaryPath the finished file, from {@link #getTemporaryPath}
+     * @param outputPath    the output to create or replace
+     */
+    public static void moveIntoPlace(Path temporaryPath, Path outputPath) throws IOException {
+        try {
+            Files.move(temporaryPath, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks whether a file exists and holds exactly the given bytes.
+     *
+     * @param path    the file to check
+     * @param content the bytes to compare it to
+     * @return true if the file holds those bytes
+     */
+    public static boolean hasContent(Path path, byte[] content) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) != content.length) {
+            return false;
+        }
+
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Math.min(BUFFER_SIZE, Math.max(1, content.length)));
+            int offset = 0;
+            while (offset < content.length) {
+                buffer.clear();
+                final int read = fileChannel.read(buffer);
+                if (read < 0) {
+                    return false;
+                }
+                buffer.flip();
+                if (!buffer.equals(ByteBuffer.wrap(content, offset, read))) {
+                    return false;
+                }
+                offset += read;
+            }
+            return fileChannel.read(ByteBuffer.allocate(1)) < 0;
+        }
+    }
+
+    /**
+     * Checks whether two files both exist and hold exactly the same bytes.
+     *
+     * @param first  one file
+     * @param second the other file
+     * @return true if the files hold the same bytes
+     */
+    public static boolean haveSameContent(Path first, Path second) throws IOException {
+        if (!Files.isRegularFile(first) || !Files.isRegularFile(second)) {
+            return false;
+        }
+        if (Files.isSameFile(first, second)) {
+            return true;
+        }
+        if (Files.size(first) != Files.size(second)) {
+            return false;
+        }
+
+        try (FileChannel firstChannel = FileChannel.open(first, StandardOpenOption.READ);
+             FileChannel secondChannel = FileChannel.open(second, StandardOpenOption.READ)) {
+
+            final ByteBuffer firstBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            final ByteBuffer secondBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (true) {
+                firstBuffer.clear();
+                secondBuffer.clear();
+                final int firstRead = readFully(firstChannel, firstBuffer);
+                final int secondRead = readFully(secondChannel, secondBuffer);
+                if (firstRead != secondRead) {
+                    return false;
+                }
+                if (firstRead <= 0) {
+                    return true;
+                }
+                firstBuffer.flip();
+                secondBuffer.flip();
+                if (!firstBuffer.equals(secondBuffer)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a buffer from a channel, unless the channel ends first.
+     *
+     * @return the number of bytes read, or -1 if the channel had already ended
+     */
+    private static int readFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int read = fileChannel.read(buffer);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Streams the content of an output file.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        /**
+         * @param outputStream the stream to write the content to, which must not be closed
+         * @return true to keep what was written, or false to give up and leave the output file as it was
+         * @throws IOException if the content could not be written
+         */
+        boolean writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * What happened to an output file when it was written.
+     */
+    public enum WriteOutcome {
+        WRITTEN, //The file was created or replaced.
+        UNCHANGED, //The file already held exactly the same bytes, so it wasn't touched.
+        ABANDONED //The content writer gave up, so the file wasn't touched.
+    }
+}
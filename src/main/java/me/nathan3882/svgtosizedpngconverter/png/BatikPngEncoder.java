@@ -0,0 +1,34 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.batik.ext.awt.image.spi.ImageWriter;
+import org.apache.batik.ext.awt.image.spi.ImageWriterParams;
+import org.apache.batik.ext.awt.image.spi.ImageWriterRegistry;
+
+/**
+ * Encodes pngs with Batik's own png writer, the same one its png transcoder uses. This is the default encoder.
+ */
+public class BatikPngEncoder implements PngEncoder {
+
+    public static final BatikPngEncoder INSTANCE = new BatikPngEncoder();
+
+    private static final String PNG_MIME_TYPE = "image/png";
+    private static final int PNG_RESOLUTION_DPI = 96;
+
+    @Override
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        final ImageWriter pngImageWriter = ImageWriterRegistry.getInstance().getWriterFor(PNG_MIME_TYPE);
+        final ImageWriterParams pngImageWriterParams = new ImageWriterParams();
+        pngImageWriterParams.setResolution(PNG_RESOLUTION_DPI);
+
+        pngImageWriter.writeImage(image, outputStream, pngImageWriterParams);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return "batik";
+    }
+}
@@ -0,0 +1,208 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes images of at most 256 colours as palette pngs, with a tRNS chunk holding the alpha of any translucent
+ * colours. Every fully transparent pixel shares one palette entry, as their colour can't be seen.
+ */
+final class IndexedPngEncoder {
+
+    static final int MAXIMUM_COLOURS = 256;
+
+    private static final int EMPTY_SLOT = -1;
+
+    private IndexedPngEncoder() {
+    }
+
+    /**
+     * Encodes an image as a palette png, if it has few enough colours.
+     *
+     * @param image the image to encode
+     * @return the encoded png, or empty if the image has more than {@value #MAXIMUM_COLOURS} colours
+     */
+    static Optional<byte[]> encode(BufferedImage image) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final int[] pixels = readPixels(image);
+        final Optional<int[]> paletteOptional = findPalette(pixels);
+        if (!paletteOptional.isPresent()) {
+            return Optional.empty();
+        }
+        final int[] palette = paletteOptional.get();
+        final ColourIndex colourIndex = new ColourIndex(palette);
+
+        final int bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        final int pixelsPerByte = 8 / bitDepth;
+        final int rowBytes = (width + pixelsPerByte - 1) / pixelsPerByte;
+
+        //Palette rows don't predict well, so they're left unfiltered, as the png specification recommends.
+        final byte[] rows = new byte[height * (rowBytes + 1)];
+        for (int y = 0; y < height; y++) {
+            final int rowStart = y * (rowBytes + 1) + 1;
+            for (int x = 0; x < width; x++) {
+                final int index = colourIndex.indexOf(normalize(pixels[y * width + x]));
+                final int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+                rows[rowStart + x / pixelsPerByte] |= (byte) (index << shift);
+            }
+        }
+
+        final ByteArrayOutputStream zlibStream = new ByteArrayOutputStream(rows.length / 4 + 64);
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(zlibStream, deflater)) {
+            deflaterOutputStream.write(rows);
+        } finally {
+            deflater.end();
+        }
+
+        final byte[] plte = new byte[palette.length * 3];
+        int translucentColours = 0;
+        for (int index = 0; index < palette.length; index++) {
+            plte[index * 3] = (byte) (palette[index] >> 16);
+            plte[index * 3 + 1] = (byte) (palette[index] >> 8);
+            plte[index * 3 + 2] = (byte) palette[index];
+            if (palette[index] >>> 24 != 0xFF) {
+                translucentColours = index + 1;
+            }
+        }
+        //Translucent colours are sorted first, so the opaque ones after them can be left out of tRNS.
+        final byte[] trns = new byte[translucentColours];
+        for (int index = 0; index < translucentColours; index++) {
+            trns[index] = (byte) (palette[index] >>> 24);
+        }
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream(zlibStream.size() + plte.length + trns.length + 64);
+        final DataOutputStream dataOutputStream = new DataOutputStream(png);
+        PngChunks.writeSignature(dataOutputStream);
+        PngChunks.writeChunk(dataOutputStream, "IHDR", PngChunks.createHeader(width, height, bitDepth, PngChunks.COLOUR_TYPE_INDEXED));
+        PngChunks.writeChunk(dataOutputStream, "PLTE", plte);
+        if (trns.length > 0) {
+            PngChunks.writeChunk(dataOutputStream, "tRNS", trns);
+        }
+        PngChunks.writeChunk(dataOutputStream, "IDAT", zlibStream.toByteArray());
+        PngChunks.writeChunk(dataOutputStream, "IEND", new byte[0]);
+        dataOutputStream.flush();
+        return Optional.of(png.toByteArray());
+    }
+
+    private static int[] readPixels(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = new int[width * height];
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+        } else {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+        return pixels;
+    }
+
+    /**
+     * Collects the distinct colours, giving up as soon as there are too many.
+     *
+     * @return the colours, translucent ones first, or empty if there are more than {@value #MAXIMUM_COLOURS}
+     */
+    private static Optional<int[]> findPalette(int[] pixels) {
+        final ColourIndex colourIndex = new ColourIndex();
+        int previousColour = 0;
+        boolean hasPrevious = false;
+
+        for (int pixel : pixels) {
+            final int colour = normalize(pixel);
+            if (hasPrevious && colour == previousColour) {
+                continue; //Runs of one colour are common, so skip the lookup.
+            }
+            previousColour = colour;
+            hasPrevious = true;
+
+            if (!colourIndex.add(colour)) {
+                return Optional.empty();
+            }
+        }
+
+        final int[] palette = colourIndex.getColours();
+        final Integer[] sortedPalette = new Integer[palette.length];
+        for (int index = 0; index < palette.length; index++) {
+            sortedPalette[index] = palette[index];
+        }
+        Arrays.sort(sortedPalette, (first, second) -> Boolean.compare(first >>> 24 == 0xFF, second >>> 24 == 0xFF));
+        for (int index = 0; index < palette.length; index++) {
+            palette[index] = sortedPalette[index];
+        }
+        return Optional.of(palette);
+    }
+
+    private static int normalize(int argb) {
+        return argb >>> 24 == 0 ? 0 : argb;
+    }
+
+    /**
+     * A small open addressed map of ARGB colours to their palette index.
+     */
+    private static final class ColourIndex {
+
+        private static final int SLOTS = 1024;
+
+        private final int[] colours = new int[SLOTS];
+        private final int[] indices = new int[SLOTS];
+        private int size;
+
+        private ColourIndex() {
+            Arrays.fill(indices, EMPTY_SLOT);
+        }
+
+        private ColourIndex(int[] palette) {
+            this();
+            for (int colour : palette) {
+                add(colour);
+            }
+        }
+
+        /**
+         * @return false if the colour is new and there's no room left in the palette
+         */
+        private boolean add(int colour) {
+            final int slot = findSlot(colour);
+            if (indices[slot] != EMPTY_SLOT) {
+                return true;
+            }
+            if (size == MAXIMUM_COLOURS) {
+                return false;
+            }
+            colours[slot] = colour;
+            indices[slot] = size++;
+            return true;
+        }
+
+        private int indexOf(int colour) {
+            return indices[findSlot(colour)];
+        }
+
+        private int findSlot(int colour) {
+            int slot = (colour * 0x9E3779B9) >>> 22; //The top 10 bits of a Fibonacci hash, one of the 1024 slots.
+            while (indices[slot] != EMPTY_SLOT && colours[slot] != colour) {
+                slot = (slot + 1) & (SLOTS - 1);
+            }
+            return slot;
+        }
+
+        private int[] getColours() {
+            final int[] palette = new int[size];
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (indices[slot] != EMPTY_SLOT) {
+                    palette[indices[slot]] = colours[slot];
+                }
+            }
+            return palette;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Losslessly shrinks the pngs of another encoder. Its output is stripped of ancillary chunks that don't change how it
+ * looks, and images of at most 256 colours are also encoded as palette pngs, whichever of the two is smaller being
+ * written. The pixels decoded from either are the same, apart from the colour of fully transparent pixels.
+ */
+public class OptimizingPngEncoder implements PngEncoder {
+
+    private final PngEncoder pngEncoder;
+
+    /**
+     * @param pngEncoder the encoder whose output is optimized
+     */
+    public OptimizingPngEncoder(PngEncoder pngEncoder) {
+        this.pngEncoder = pngEncoder;
+    }
+
+    @Override
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        final ByteArrayOutputStream encodedPng = new ByteArrayOutputStream(image.getWidth() * image.getHeight() + 1024);
+        pngEncoder.encode(image, encodedPng);
+
+        byte[] smallestPng = PngChunks.stripAncillaryChunks(encodedPng.toByteArray());
+
+        final Optional<byte[]> indexedPngOptional = IndexedPngEncoder.encode(image);
+        if (indexedPngOptional.isPresent() && indexedPngOptional.get().length < smallestPng.length) {
+            smallestPng = indexedPngOptional.get();
+        }
+        outputStream.write(smallestPng);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return pngEncoder.getFingerprint() + "+optimized";
+    }
+
+    public PngEncoder getPngEncoder() {
+        return pngEncoder;
+    }
+}
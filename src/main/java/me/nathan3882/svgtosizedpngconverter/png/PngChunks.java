@@ -0,0 +1,106 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the chunks a png file is made of, shared by the encoders in this package.
+ */
+final class PngChunks {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    static final int COLOUR_TYPE_INDEXED = 3;
+    static final int COLOUR_TYPE_RGBA = 6;
+
+    /**
+     * The ancillary chunks that change how a png looks, which are kept when the others are stripped.
+     */
+    private static final Set<String> VISIBLE_ANCILLARY_CHUNKS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "tRNS", "gAMA", "cHRM", "sRGB", "iCCP", "sBIT")));
+
+    private PngChunks() {
+    }
+
+    /**
+     * Creates the data of an IHDR chunk for a non interlaced image.
+     */
+    static byte[] createHeader(int width, int height, int bitDepth, int colourType) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        final DataOutputStream headerStream = new DataOutputStream(header);
+        headerStream.writeInt(width);
+        headerStream.writeInt(height);
+        headerStream.writeByte(bitDepth);
+        headerStream.writeByte(colourType);
+        headerStream.writeByte(0); //Compression method, deflate
+        headerStream.writeByte(0); //Filter method, adaptive
+        headerStream.writeByte(0); //Interlace method, none
+        return header.toByteArray();
+    }
+
+    static void writeChunk(DataOutputStream dataOutputStream, String type, byte[] data) throws IOException {
+        writeChunk(dataOutputStream, type, data, 0, data.length);
+    }
+
+    static void writeChunk(DataOutputStream dataOutputStream, String type, byte[] data, int offset, int length) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        final CRC32 crc32 = new CRC32();
+        crc32.update(typeBytes);
+        crc32.update(data, offset, length);
+
+        dataOutputStream.writeInt(length);
+        dataOutputStream.write(typeBytes);
+        dataOutputStream.write(data, offset, length);
+        dataOutputStream.writeInt((int) crc32.getValue());
+    }
+
+    /**
+     * Copies a png without its ancillary chunks, such as text, timestamps and physical dimensions, other than the ones
+     * that change how it looks. Critical chunks are copied byte for byte, so the pixels are untouched.
+     *
+     * @param png the encoded png
+     * @return the stripped png, or the same bytes if they aren't a well formed png
+     */
+    static byte[] stripAncillaryChunks(byte[] png) {
+        if (png.length < SIGNATURE.length || !Arrays.equals(Arrays.copyOf(png, SIGNATURE.length), SIGNATURE)) {
+            return png;
+        }
+
+        final ByteBuffer pngBuffer = ByteBuffer.wrap(png);
+        final ByteArrayOutputStream strippedPng = new ByteArrayOutputStream(png.length);
+        strippedPng.write(SIGNATURE, 0, SIGNATURE.length);
+
+        int offset = SIGNATURE.length;
+        while (offset + 12 <= png.length) {
+            final int length = pngBuffer.getInt(offset);
+            if (length < 0 || offset + 12L + length > png.length) {
+                return png;
+            }
+            final String type = new String(png, offset + 4, 4, StandardCharsets.US_ASCII);
+            final boolean isCritical = Character.isUpperCase(type.charAt(0));
+
+            if (isCritical || VISIBLE_ANCILLARY_CHUNKS.contains(type)) {
+                strippedPng.write(png, offset, 12 + length);
+            }
+            offset += 12 + length;
+            if (type.equals("IEND")) {
+                return strippedPng.toByteArray();
+            }
+        }
+        return png; //There was no IEND chunk.
+    }
+
+    static void writeSignature(OutputStream outputStream) throws IOException {
+        outputStream.write(SIGNATURE);
+    }
+}
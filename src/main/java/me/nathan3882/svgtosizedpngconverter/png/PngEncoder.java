@@ -0,0 +1,27 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a rendered image as a png.
+ */
+public interface PngEncoder {
+
+    /**
+     * Encodes an image as a png, written to the given stream. The stream is not closed.
+     *
+     * @param image        the image to encode
+     * @param outputStream where to write the png
+     * @throws IOException if the png could not be written
+     */
+    void encode(BufferedImage image, OutputStream outputStream) throws IOException;
+
+    /**
+     * Describes the settings of this encoder that change the bytes it writes.
+     *
+     * @return the description, used to tell apart outputs created with different encoders
+     */
+    String getFingerprint();
+}
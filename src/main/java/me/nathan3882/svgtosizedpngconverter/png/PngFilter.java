@@ -0,0 +1,53 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The row filter strategies of the {@link TunedPngEncoder}. A filter turns each row of pixels into differences that
+ * compress better, and {@link #ADAPTIVE} picks the best of the five png filters separately for every row.
+ */
+public enum PngFilter {
+
+    NONE(0),
+    SUB(1),
+    UP(2),
+    ADAPTIVE(-1);
+
+    static final int AVERAGE_TYPE = 3;
+    static final int PAETH_TYPE = 4;
+
+    private final int filterType;
+
+    PngFilter(int filterType) {
+        this.filterType = filterType;
+    }
+
+    /**
+     * Finds a filter by its name, ignoring case.
+     *
+     * @param name the name, such as "adaptive"
+     * @return the filter, or empty if there is none with that name
+     */
+    public static Optional<PngFilter> fromName(String name) {
+        for (PngFilter pngFilter : values()) {
+            if (pngFilter.name().equalsIgnoreCase(name.trim())) {
+                return Optional.of(pngFilter);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the filter type byte written before each row, or -1 for {@link #ADAPTIVE}, which varies per row.
+     *
+     * @return the png filter type
+     */
+    public int getFilterType() {
+        return filterType;
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
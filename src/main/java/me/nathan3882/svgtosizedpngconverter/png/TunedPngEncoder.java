@@ -0,0 +1,327 @@
+package me.nathan3882.svgtosizedpngconverter.png;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * A png encoder with a configurable zlib level and {@link PngFilter}, always writing 8 bit RGBA. Large images are
+ * deflated in chunks on several threads, each chunk primed with the end of the one before it, so the result is still a
+ * single valid zlib stream that compresses almost as well as deflating it in one go.
+ */
+public class TunedPngEncoder implements PngEncoder {
+
+    public static final int DEFAULT_LEVEL = 6;
+    public static final PngFilter DEFAULT_FILTER = PngFilter.NONE;
+
+    /**
+     * Images with at least this many bytes of filtered rows are deflated in parallel. 1 MiB is about 512x512 pixels.
+     */
+    public static final int PARALLEL_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final int PARALLEL_CHUNK_BYTES = 256 * 1024;
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+    private static final int IDAT_CHUNK_BYTES = 64 * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final int PIXELS_PER_METER_AT_96_DPI = 3780;
+
+    private final int level;
+    private final PngFilter pngFilter;
+    private final int parallelThresholdBytes;
+
+    public TunedPngEncoder(int level, PngFilter pngFilter) {
+        this(level, pngFilter, PARALLEL_THRESHOLD_BYTES);
+    }
+
+    /**
+     * @param level                  the zlib level from 0, storing only, to 9, smallest
+     * @param pngFilter              the row filter strategy
+     * @param parallelThresholdBytes the filtered size from which images are deflated on several threads
+     */
+    public TunedPngEncoder(int level, PngFilter pngFilter, int parallelThresholdBytes) {
+        this.level = level;
+        this.pngFilter = pngFilter;
+        this.parallelThresholdBytes = parallelThresholdBytes;
+    }
+
+    @Override
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final byte[] filteredRows = filterRows(image);
+        final byte[] zlibStream = filteredRows.length >= parallelThresholdBytes ? deflateInParallel(filteredRows) : deflate(filteredRows);
+
+        final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        PngChunks.writeSignature(dataOutputStream);
+        PngChunks.writeChunk(dataOutputStream, "IHDR", PngChunks.createHeader(width, height, 8, PngChunks.COLOUR_TYPE_RGBA));
+
+        final ByteArrayOutputStream physicalDimensions = new ByteArrayOutputStream(9);
+        final DataOutputStream physicalDimensionsStream = new DataOutputStream(physicalDimensions);
+        physicalDimensionsStream.writeInt(PIXELS_PER_METER_AT_96_DPI);
+        physicalDimensionsStream.writeInt(PIXELS_PER_METER_AT_96_DPI);
+        physicalDimensionsStream.writeByte(1); //The unit is the meter
+        PngChunks.writeChunk(dataOutputStream, "pHYs", physicalDimensions.toByteArray());
+
+        for (int offset = 0; offset < zlibStream.length; offset += IDAT_CHUNK_BYTES) {
+            PngChunks.writeChunk(dataOutputStream, "IDAT", zlibStream, offset, Math.min(IDAT_CHUNK_BYTES, zlibStream.length - offset));
+        }
+        PngChunks.writeChunk(dataOutputStream, "IEND", new byte[0]);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Converts the image into png rows of non premultiplied RGBA, each preceded by the type of filter applied to it.
+     */
+    private byte[] filterRows(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int rowBytes = width * BYTES_PER_PIXEL;
+
+        final byte[] filteredRows = new byte[height * (rowBytes + 1)];
+        final int[] pixelRow = new int[width];
+        byte[] previousRow = new byte[rowBytes];
+        byte[] currentRow = new byte[rowBytes];
+        final byte[][] candidates = pngFilter == PngFilter.ADAPTIVE ? new byte[5][rowBytes] : null;
+
+        for (int y = 0; y < height; y++) {
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+                image.getRaster().getDataElements(0, y, width, 1, pixelRow);
+            } else {
+                image.getRGB(0, y, width, 1, pixelRow, 0, width);
+            }
+
+            for (int x = 0; x < width; x++) {
+                final int argb = pixelRow[x];
+                final int index = x * BYTES_PER_PIXEL;
+                currentRow[index] = (byte) (argb >> 16);
+                currentRow[index + 1] = (byte) (argb >> 8);
+                currentRow[index + 2] = (byte) argb;
+                currentRow[index + 3] = (byte) (argb >> 24);
+            }
+
+            final int rowStart = y * (rowBytes + 1);
+            if (pngFilter == PngFilter.ADAPTIVE) {
+                int bestFilterType = 0;
+                long bestScore = Long.MAX_VALUE;
+                for (int filterType = 0; filterType < candidates.length; filterType++) {
+                    applyFilter(filterType, currentRow, previousRow, candidates[filterType], 0);
+                    final long score = scoreOf(candidates[filterType]);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestFilterType = filterType;
+                    }
+                }
+                filteredRows[rowStart] = (byte) bestFilterType;
+                System.arraycopy(candidates[bestFilterType], 0, filteredRows, rowStart + 1, rowBytes);
+            } else {
+                filteredRows[rowStart] = (byte) pngFilter.getFilterType();
+                applyFilter(pngFilter.getFilterType(), currentRow, previousRow, filteredRows, rowStart + 1);
+            }
+
+            final byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+        return filteredRows;
+    }
+
+    /**
+     * Writes a filtered row. The first pixel has no left neighbour, and each filter has its own loop so that choosing
+     * between them isn't repeated for every byte.
+     */
+    private static void applyFilter(int filterType, byte[] row, byte[] previousRow, byte[] output, int outputOffset) {
+        final int length = row.length;
+        final int firstPixelBytes = Math.min(BYTES_PER_PIXEL, length);
+
+        if (filterType == PngFilter.SUB.getFilterType()) {
+            System.arraycopy(row, 0, output, outputOffset, firstPixelBytes);
+            for (int index = BYTES_PER_PIXEL; index < length; index++) {
+                output[outputOffset + index] = (byte) (row[index] - row[index - BYTES_PER_PIXEL]);
+            }
+        } else if (filterType == PngFilter.UP.getFilterType()) {
+            for (int index = 0; index < length; index++) {
+                output[outputOffset + index] = (byte) (row[index] - previousRow[index]);
+            }
+        } else if (filterType == PngFilter.AVERAGE_TYPE) {
+            for (int index = 0; index < firstPixelBytes; index++) {
+                output[outputOffset + index] = (byte) (row[index] - ((previousRow[index] & 0xFF) >> 1));
+            }
+            for (int index = BYTES_PER_PIXEL; index < length; index++) {
+                output[outputOffset + index] = (byte) (row[index] - (((row[index - BYTES_PER_PIXEL] & 0xFF) + (previousRow[index] & 0xFF)) >> 1));
+            }
+        } else if (filterType == PngFilter.PAETH_TYPE) {
+            for (int index = 0; index < firstPixelBytes; index++) {
+                output[outputOffset + index] = (byte) (row[index] - previousRow[index]); //Paeth predicts up when there's no left.
+            }
+            for (int index = BYTES_PER_PIXEL; index < length; index++) {
+                final int predicted = paethPredictor(row[index - BYTES_PER_PIXEL] & 0xFF, previousRow[index] & 0xFF, previousRow[index - BYTES_PER_PIXEL] & 0xFF);
+                output[outputOffset + index] = (byte) (row[index] - predicted);
+            }
+        } else {
+            System.arraycopy(row, 0, output, outputOffset, length);
+        }
+    }
+
+    private static int paethPredictor(int left, int up, int upLeft) {
+        final int estimate = left + up - upLeft;
+        final int leftDistance = Math.abs(estimate - left);
+        final int upDistance = Math.abs(estimate - up);
+        final int upLeftDistance = Math.abs(estimate - upLeft);
+
+        if (leftDistance <= upDistance && leftDistance <= upLeftDistance) {
+            return left;
+        }
+        return upDistance <= upLeftDistance ? up : upLeft;
+    }
+
+    /**
+     * Scores a filtered row by the sum of its bytes read as signed, the heuristic the png specification suggests. Rows
+     * of small differences compress best.
+     */
+    private static long scoreOf(byte[] filteredRow) {
+        long score = 0;
+        for (byte value : filteredRow) {
+            score += Math.abs(value);
+        }
+        return score;
+    }
+
+    private byte[] deflate(byte[] filteredRows) {
+        final Deflater deflater = createDeflater(false);
+        try {
+            deflater.setInput(filteredRows);
+            deflater.finish();
+
+            final ByteArrayOutputStream zlibStream = new ByteArrayOutputStream(filteredRows.length / 4 + 64);
+            final byte[] buffer = new byte[IDAT_CHUNK_BYTES];
+            while (!deflater.finished()) {
+                zlibStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return zlibStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflates fixed size chunks of the rows on the common fork join pool, rather than the density worker pool, so a
+     * density waiting on its chunks never holds up the workers that would deflate them. The raw deflate streams are
+     * joined behind a zlib header, then the Adler-32 of all of the rows is appended.
+     */
+    private byte[] deflateInParallel(byte[] filteredRows) throws IOException {
+        final List<Future<byte[]>> chunkFutures = new ArrayList<>();
+        for (int start = 0; start < filteredRows.length; start += PARALLEL_CHUNK_BYTES) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + PARALLEL_CHUNK_BYTES, filteredRows.length);
+            chunkFutures.add(ForkJoinPool.commonPool().submit(() -> deflateChunk(filteredRows, chunkStart, chunkEnd)));
+        }
+
+        final ByteArrayOutputStream zlibStream = new ByteArrayOutputStream(filteredRows.length / 4 + 64);
+        zlibStream.write(0x78); //Deflate with a 32K window
+        zlibStream.write(getZlibFlags());
+
+        try {
+            for (Future<byte[]> chunkFuture : chunkFutures) {
+                zlibStream.write(chunkFuture.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deflating a png");
+        } catch (ExecutionException e) {
+            throw new IOException("A png could not be deflated", e.getCause());
+        }
+
+        final Adler32 adler32 = new Adler32();
+        adler32.update(filteredRows, 0, filteredRows.length);
+        final long checksum = adler32.getValue();
+        zlibStream.write((int) (checksum >>> 24));
+        zlibStream.write((int) (checksum >>> 16));
+        zlibStream.write((int) (checksum >>> 8));
+        zlibStream.write((int) checksum);
+        return zlibStream.toByteArray();
+    }
+
+    private byte[] deflateChunk(byte[] filteredRows, int start, int end) {
+        final boolean isLastChunk = end == filteredRows.length;
+        final Deflater deflater = createDeflater(true);
+        try {
+            if (start > 0) {
+                //Back references can reach into the previous chunk, as if it had all been deflated in one go.
+                final int dictionaryStart = Math.max(0, start - DICTIONARY_BYTES);
+                deflater.setDictionary(filteredRows, dictionaryStart, start - dictionaryStart);
+            }
+            deflater.setInput(filteredRows, start, end - start);
+
+            final ByteArrayOutputStream chunk = new ByteArrayOutputStream((end - start) / 4 + 64);
+            final byte[] buffer = new byte[IDAT_CHUNK_BYTES];
+            if (isLastChunk) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    chunk.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                //A sync flush ends the chunk on a byte boundary without ending the stream, so the next chunk can follow it.
+                //The first call may only apply the strategy, so keep going until the input is used up and flushed.
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    chunk.write(buffer, 0, count);
+                } while (count == buffer.length || !deflater.needsInput());
+            }
+            return chunk.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Deflater createDeflater(boolean nowrap) {
+        final Deflater deflater = new Deflater(level, nowrap);
+        if (pngFilter != PngFilter.NONE) {
+            deflater.setStrategy(Deflater.FILTERED);
+        }
+        return deflater;
+    }
+
+    /**
+     * Creates the second byte of a zlib header, the level hint plus a check so that both bytes are a multiple of 31.
+     */
+    private int getZlibFlags() {
+        final int levelHint;
+        if (level == 0 || level == 1) {
+            levelHint = 0;
+        } else if (level >= 2 && level <= 5) {
+            levelHint = 1;
+        } else if (level == 6) {
+            levelHint = 2;
+        } else {
+            levelHint = 3;
+        }
+        final int flags = levelHint << 6;
+        return flags + (31 - ((0x78 << 8) + flags) % 31);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return "tuned-" + level + "-" + pngFilter.getName();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public PngFilter getPngFilter() {
+        return pngFilter;
+    }
+}
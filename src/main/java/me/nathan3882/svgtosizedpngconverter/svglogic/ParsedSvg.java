@@ -0,0 +1,147 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+
+import me.nathan3882.svgtosizedpngconverter.cache.RenderCache;
+
+/**
+ * A parsed input svg document held by the {@link SvgDocumentCache}, along with the file state it was parsed from.
+ */
+public class ParsedSvg {
+
+    /**
+     * The most idle rasterizers kept between densities. Each holds a copy of the document and its graphics tree, so any
+     * more built by threads borrowing at once are dropped when they're done, and the memory budget holds this many.
+     */
+    public static final int MAXIMUM_IDLE_RASTERIZERS = 2;
+
+    private final SVGOMDocument document;
+    private final long lastModified;
+    private final long length;
+    private final Deque<SvgRasterizer> idleRasterizers = new ArrayDeque<>();
+    private final File sourceFile;
+    private Optional<String> renderCacheContentHash;
+    private SvgComplexity complexity;
+
+    public ParsedSvg(File sourceFile, SVGOMDocument document, long lastModified, long length) {
+        this.sourceFile = sourceFile;
+        this.document = document;
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    /**
+     * Checks whether this parse still represents the file on disk.
+     *
+     * @param lastModified the current last modified time of the input file
+     * @param length       the current length of the input file
+     * @return true if the file has not changed since it was parsed
+     */
+    public boolean isCurrent(long lastModified, long length) {
+        return this.lastModified == lastModified && this.length == length;
+    }
+
+    /**
+     * Creates a deep copy of the parsed document, so that it can be resized without touching the cached original.
+     *
+     * @return a new, independent {@link SVGOMDocument}
+     */
+    public SVGOMDocument createCopy() {
+        synchronized (document) {
+            return (SVGOMDocument) document.cloneNode(true);
+        }
+    }
+
+    /**
+     * Takes an idle rasterizer of this document, building a new graphics tree only if every existing one is in use.
+     * A graphics tree is not safe to paint from several threads at once, so each thread borrows its own.
+     *
+     * @return a {@link SvgRasterizer} that must be handed back with {@link #releaseRasterizer}
+     */
+    public SvgRasterizer borrowRasterizer() {
+        synchronized (idleRasterizers) {
+            final SvgRasterizer idleRasterizer = idleRasterizers.pollFirst();
+            if (idleRasterizer != null) {
+                return idleRasterizer;
+            }
+        }
+        return new SvgRasterizer(createCopy());
+    }
+
+    /**
+     * Hands back a rasterizer taken with {@link #borrowRasterizer}, keeping it for the next density unless there are
+     * already {@link #MAXIMUM_IDLE_RASTERIZERS} idle.
+     *
+     * @param rasterizer the rasterizer that's no longer in use
+     */
+    public void releaseRasterizer(SvgRasterizer rasterizer) {
+        synchronized (idleRasterizers) {
+            if (idleRasterizers.size() < MAXIMUM_IDLE_RASTERIZERS) {
+                idleRasterizers.offerFirst(rasterizer);
+            }
+        }
+    }
+
+    /**
+     * Drops every idle rasterizer once the densities of the input are done, so that their graphics trees don't stay
+     * in memory for as long as the parse is cached. A later conversion of the input builds them again.
+     */
+    public void dropIdleRasterizers() {
+        synchronized (idleRasterizers) {
+            idleRasterizers.clear();
+        }
+    }
+
+    /**
+     * Gets the hash the {@link RenderCache} knows this document by, hashing the source file the first time it's asked.
+     *
+     * @return the content hash, or empty if renders of this document can't be cached
+     * @throws IOException if the source file could not be read
+     */
+    public synchronized Optional<String> getRenderCacheContentHash() throws IOException {
+        if (renderCacheContentHash == null) {
+            renderCacheContentHash = RenderCache.contentHashOf(sourceFile);
+        }
+        return renderCacheContentHash;
+    }
+
+    /**
+     * Gets how much the document costs to render beyond its size, counting it the first time it's asked.
+     *
+     * @return the complexity of the document
+     */
+    public SvgComplexity getComplexity() {
+        synchronized (document) {
+            if (complexity == null) {
+                complexity = SvgComplexity.of(document.getDocumentElement());
+            }
+            return complexity;
+        }
+    }
+
+    /**
+     * Gets whether the document's root has a viewBox, without which it's painted at its own scale at every size,
+     * rather than scaled to fit, see {@link SvgRasterizer#getViewingTransform}.
+     *
+     * @return true if the document is scaled to each size it's rendered at
+     */
+    public boolean hasViewBox() {
+        synchronized (document) {
+            return SvgRasterizer.hasViewBox(document.getDocumentElement());
+        }
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,146 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+
+/**
+ * Keeps the ARGB images that pngs are rendered into once they've been encoded, so the next render of the same size
+ * paints into one of them rather than allocating a new image and pixel array. Every icon is rendered at the same
+ * handful of iOS and Android sizes, so across a large batch nearly every render reuses an image, instead of
+ * churning the young generation with arrays of up to several megabytes each.
+ * <p>
+ * An image is cleared to transparent black when it's taken out of the pool. It must only be handed back once
+ * nothing holds on to it any more, and images that aren't handed back are simply collected as usual. At most
+ * {@link #DEFAULT_MAXIMUM_BYTES} of idle images are kept, anything handed back beyond that is let go.
+ */
+public class RasterBufferPool {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 64 * 1024 * 1024;
+
+    private static final RasterBufferPool SHARED = new RasterBufferPool(DEFAULT_MAXIMUM_BYTES);
+
+    private final Map<Long, Deque<BufferedImage>> idleImages = new ConcurrentHashMap<>();
+    private final long maximumBytes;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+
+    public RasterBufferPool(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    public static RasterBufferPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a cleared ARGB image of the given size out of the pool, or creates one if there's none idle.
+     *
+     * @param width  the width in pixels
+     * @param height the height in pixels
+     * @return a fully transparent {@link BufferedImage#TYPE_INT_ARGB} image, only used by the caller
+     */
+    public BufferedImage acquire(int width, int height) {
+        final Deque<BufferedImage> idleOfSize = idleImages.get(getKey(width, height));
+        final BufferedImage idleImage = idleOfSize == null ? null : idleOfSize.pollFirst();
+
+        final boolean hit = idleImage != null;
+        ConversionMetrics.getShared().recordRasterBufferAcquired(hit);
+        if (!hit) {
+            misses.incrementAndGet();
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        hits.incrementAndGet();
+        idleBytes.addAndGet(-getBytes(idleImage));
+        Arrays.fill(((DataBufferInt) idleImage.getRaster().getDataBuffer()).getData(), 0);
+        return idleImage;
+    }
+
+    /**
+     * Hands an image back to be reused once it's no longer needed. Images the pool couldn't have created, such as
+     * those of another type, are ignored.
+     *
+     * @param image the image, which mustn't be used by the caller afterwards
+     */
+    public void release(BufferedImage image) {
+        if (image == null || !isPoolable(image)) {
+            return;
+        }
+
+        final long bytes = getBytes(image);
+        if (idleBytes.addAndGet(bytes) > maximumBytes) {
+            idleBytes.addAndGet(-bytes);
+            discards.incrementAndGet();
+            return;
+        }
+        idleImages.computeIfAbsent(getKey(image.getWidth(), image.getHeight()), key -> new ConcurrentLinkedDeque<>()).offerFirst(image);
+    }
+
+    /**
+     * Lets go of every idle image.
+     */
+    public void clear() {
+        for (Deque<BufferedImage> idleOfSize : idleImages.values()) {
+            BufferedImage idleImage;
+            while ((idleImage = idleOfSize.pollFirst()) != null) {
+                idleBytes.addAndGet(-getBytes(idleImage));
+            }
+        }
+    }
+
+    private static boolean isPoolable(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB || image.getRaster().getParent() != null) {
+            return false; //Another type, or a sub image that shares its pixels with a larger one.
+        }
+        final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1 && dataBuffer.getSize() == image.getWidth() * image.getHeight();
+    }
+
+    private static long getKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    private static long getBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of images that were handed back when the pool was already full, so were let go.
+     *
+     * @return the number of discarded images
+     */
+    public long getDiscards() {
+        return discards.get();
+    }
+
+    public long getIdleBytes() {
+        return idleBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Raster buffer pool: " + hits.get() + " hits, " + misses.get() + " misses, " + discards.get() + " discarded, "
+                + FileUtils.byteCountToDisplaySize(idleBytes.get()) + " idle of " + FileUtils.byteCountToDisplaySize(maximumBytes) + ".";
+    }
+}
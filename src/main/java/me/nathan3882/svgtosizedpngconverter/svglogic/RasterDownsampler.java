@@ -0,0 +1,178 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Shrinks rendered images by area averaging: every output pixel is the average of the input area it covers, weighted
+ * by how much of each input pixel falls inside it. Colours are averaged premultiplied by their alpha, so transparent
+ * pixels don't darken the edges they're blended with.
+ */
+public final class RasterDownsampler {
+
+    private static final int CHANNELS = 4;
+
+    private RasterDownsampler() {
+    }
+
+    /**
+     * Shrinks an image to a size no larger than it in either dimension.
+     *
+     * @param source the image to shrink
+     * @param width  the width to shrink to
+     * @param height the height to shrink to
+     * @return an ARGB image of the given size, taken from the {@link RasterBufferPool}
+     */
+    public static BufferedImage downsample(BufferedImage source, int width, int height) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        if (width > sourceWidth || height > sourceHeight) {
+            throw new IllegalArgumentException("A " + sourceWidth + "x" + sourceHeight + " image can't be downsampled to " + width + "x" + height);
+        }
+
+        final float[] premultiplied = readPremultiplied(source);
+
+        //Shrink each row across, then each of the shrunk columns down.
+        final float[] shrunkRows = new float[sourceHeight * width * CHANNELS];
+        final Contributions columnContributions = new Contributions(sourceWidth, width);
+        for (int y = 0; y < sourceHeight; y++) {
+            columnContributions.apply(premultiplied, y * sourceWidth * CHANNELS, CHANNELS, shrunkRows, y * width * CHANNELS, CHANNELS);
+        }
+
+        final float[] shrunk = new float[height * width * CHANNELS];
+        final Contributions rowContributions = new Contributions(sourceHeight, height);
+        for (int x = 0; x < width; x++) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                final int offset = x * CHANNELS + channel;
+                rowContributions.apply(shrunkRows, offset, width * CHANNELS, shrunk, offset, width * CHANNELS, 1);
+            }
+        }
+
+        final int[] pixels = new int[width * height];
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = unpremultiply(shrunk, index * CHANNELS);
+        }
+
+        final BufferedImage downsampled = RasterBufferPool.getShared().acquire(width, height);
+        downsampled.getRaster().setDataElements(0, 0, width, height, pixels);
+        return downsampled;
+    }
+
+    /**
+     * Measures the largest difference of any channel of any pixel between two images of the same size. Colours are
+     * compared premultiplied by their alpha, as a difference in the colour of a nearly transparent pixel can't be seen.
+     *
+     * @param first  one image
+     * @param second the other image
+     * @return the difference from 0, identical, to 255
+     */
+    public static int maximumChannelDelta(BufferedImage first, BufferedImage second) {
+        if (first.getWidth() != second.getWidth() || first.getHeight() != second.getHeight()) {
+            throw new IllegalArgumentException("Only images of the same size can be compared");
+        }
+
+        final float[] firstPremultiplied = readPremultiplied(first);
+        final float[] secondPremultiplied = readPremultiplied(second);
+
+        float maximumDelta = 0;
+        for (int index = 0; index < firstPremultiplied.length; index++) {
+            maximumDelta = Math.max(maximumDelta, Math.abs(firstPremultiplied[index] - secondPremultiplied[index]));
+        }
+        return Math.round(maximumDelta);
+    }
+
+    private static float[] readPremultiplied(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = new int[width * height];
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+        } else {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+
+        final float[] premultiplied = new float[pixels.length * CHANNELS];
+        for (int index = 0; index < pixels.length; index++) {
+            final int argb = pixels[index];
+            final float alpha = argb >>> 24;
+            final float scale = alpha / 255f;
+            final int offset = index * CHANNELS;
+            premultiplied[offset] = alpha;
+            premultiplied[offset + 1] = ((argb >> 16) & 0xFF) * scale;
+            premultiplied[offset + 2] = ((argb >> 8) & 0xFF) * scale;
+            premultiplied[offset + 3] = (argb & 0xFF) * scale;
+        }
+        return premultiplied;
+    }
+
+    private static int unpremultiply(float[] premultiplied, int offset) {
+        final int alpha = clamp(premultiplied[offset]);
+        if (alpha == 0) {
+            return 0;
+        }
+        final float scale = 255f / premultiplied[offset];
+        final int red = clamp(premultiplied[offset + 1] * scale);
+        final int green = clamp(premultiplied[offset + 2] * scale);
+        final int blue = clamp(premultiplied[offset + 3] * scale);
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * The weights of the input pixels that each output pixel along one dimension covers, worked out once and then
+     * applied to every row or column.
+     */
+    private static final class Contributions {
+
+        private final int[] firstSourceIndices;
+        private final float[][] weights;
+
+        private Contributions(int sourceLength, int length) {
+            this.firstSourceIndices = new int[length];
+            this.weights = new float[length][];
+
+            final double scale = (double) sourceLength / length;
+            for (int index = 0; index < length; index++) {
+                final double start = index * scale;
+                final double end = Math.min(sourceLength, (index + 1) * scale);
+                final int firstSourceIndex = (int) Math.floor(start);
+                final int lastSourceIndex = Math.min(sourceLength - 1, (int) Math.ceil(end) - 1);
+
+                final float[] pixelWeights = new float[lastSourceIndex - firstSourceIndex + 1];
+                for (int sourceIndex = firstSourceIndex; sourceIndex <= lastSourceIndex; sourceIndex++) {
+                    final double covered = Math.min(end, sourceIndex + 1) - Math.max(start, sourceIndex);
+                    pixelWeights[sourceIndex - firstSourceIndex] = (float) (covered / scale);
+                }
+                firstSourceIndices[index] = firstSourceIndex;
+                weights[index] = pixelWeights;
+            }
+        }
+
+        private void apply(float[] source, int sourceOffset, int sourceStride, float[] output, int outputOffset, int outputStride) {
+            apply(source, sourceOffset, sourceStride, output, outputOffset, outputStride, CHANNELS);
+        }
+
+        /**
+         * Averages {@code channels} interleaved values at a time from one line of the source into one line of the
+         * output, where consecutive pixels are a stride apart.
+         */
+        private void apply(float[] source, int sourceOffset, int sourceStride, float[] output, int outputOffset, int outputStride, int channels) {
+            for (int index = 0; index < weights.length; index++) {
+                final float[] pixelWeights = weights[index];
+                final int outputIndex = outputOffset + index * outputStride;
+                for (int channel = 0; channel < channels; channel++) {
+                    float sum = 0;
+                    int sourceIndex = sourceOffset + firstSourceIndices[index] * sourceStride + channel;
+                    for (float weight : pixelWeights) {
+                        sum += source[sourceIndex] * weight;
+                        sourceIndex += sourceStride;
+                    }
+                    output[outputIndex + channel] = sum;
+                }
+            }
+        }
+    }
+}
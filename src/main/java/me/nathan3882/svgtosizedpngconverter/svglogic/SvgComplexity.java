@@ -0,0 +1,78 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * How much an input svg costs to render beyond its size: the number of elements its documents and graphics trees are
+ * built from, and the number of offscreen images Batik paints into on top of the output image itself. Every filter
+ * primitive, mask and pattern, and every group drawn with an opacity, is painted into an image of its own before it's
+ * composited, and those images are as large as the area they cover at the size being rendered.
+ */
+public final class SvgComplexity {
+
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    private static final String FILTER_PRIMITIVE_PREFIX = "fe";
+
+    private final int elements;
+    private final int offscreenLayers;
+
+    private SvgComplexity(int elements, int offscreenLayers) {
+        this.elements = elements;
+        this.offscreenLayers = offscreenLayers;
+    }
+
+    /**
+     * Counts the elements and offscreen layers of a document.
+     *
+     * @param root the root element of the document
+     * @return the complexity of the document
+     */
+    public static SvgComplexity of(Element root) {
+        final int[] counts = new int[2];
+        count(root, counts);
+        return new SvgComplexity(counts[0], counts[1]);
+    }
+
+    private static void count(Element element, int[] counts) {
+        counts[0]++;
+        if (isOffscreenLayer(element)) {
+            counts[1]++;
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                count((Element) child, counts);
+            }
+        }
+    }
+
+    private static boolean isOffscreenLayer(Element element) {
+        if (!SVG_NAMESPACE.equals(element.getNamespaceURI())) {
+            return false;
+        }
+        final String localName = element.getLocalName();
+        if (localName.startsWith(FILTER_PRIMITIVE_PREFIX) || localName.equals("mask") || localName.equals("pattern")) {
+            return true;
+        }
+        //Only a group's opacity needs an image of its own, a single shape's is applied to its paint.
+        return localName.equals("g") && (element.hasAttribute("opacity") || element.getAttribute("style").contains("opacity"));
+    }
+
+    /**
+     * Gets the number of elements in the document, which the documents and graphics trees built from it grow with.
+     *
+     * @return the number of elements
+     */
+    public int getElements() {
+        return elements;
+    }
+
+    /**
+     * Gets the number of images Batik may paint into besides the output image when rendering the document.
+     *
+     * @return the number of filter primitives, masks, patterns and translucent groups
+     */
+    public int getOffscreenLayers() {
+        return offscreenLayers;
+    }
+}
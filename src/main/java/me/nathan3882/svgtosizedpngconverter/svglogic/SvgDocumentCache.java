@@ -0,0 +1,122 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+
+/**
+ * Keeps recently parsed input svg documents in memory, so that an input is parsed once per run rather than once
+ * per output. Entries are keyed by the absolute path of the input and are re-parsed when its last modified time or
+ * length changes. When several threads ask for the same input at once, only one of them parses it.
+ */
+public class SvgDocumentCache {
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 64;
+    private static final SvgDocumentCache SHARED = new SvgDocumentCache(DEFAULT_MAXIMUM_ENTRIES);
+
+    private final Map<String, CacheEntry> entries;
+
+    public SvgDocumentCache(int maximumEntries) {
+        //Access ordered, so the least recently used parse is the one evicted.
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    public static SvgDocumentCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets the parsed document for the given input, parsing it only if it's not cached or has changed on disk.
+     *
+     * @param inputSvgFile the svg file to fetch the parsed document of
+     * @return the cached {@link ParsedSvg}
+     * @throws IOException if the svg file could not be read or parsed
+     */
+    public ParsedSvg get(File inputSvgFile) throws IOException {
+        final String key = inputSvgFile.getAbsolutePath();
+        final long lastModified = inputSvgFile.lastModified();
+        final long length = inputSvgFile.length();
+
+        final CacheEntry entry;
+        boolean isParsingThread = false;
+
+        synchronized (entries) {
+            final CacheEntry cached = entries.get(key);
+            if (cached != null && cached.isCurrent(lastModified, length)) {
+                entry = cached;
+            } else {
+                entry = new CacheEntry(lastModified, length, new FutureTask<>(() -> parse(inputSvgFile, lastModified, length)));
+                entries.put(key, entry);
+                isParsingThread = true;
+            }
+        }
+
+        //The parse happens outside of the lock, so other inputs aren't held up by it.
+        if (isParsingThread) {
+            entry.parse.run();
+        }
+
+        try {
+            return entry.parse.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key + " to be parsed");
+        } catch (ExecutionException e) {
+            synchronized (entries) {
+                //Don't keep the failure around, the next request should try again.
+                entries.remove(key, entry);
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not parse " + key, cause);
+        }
+    }
+
+    /**
+     * Forgets the parsed document of the given input, if there is one.
+     *
+     * @param inputSvgFile the svg file to forget
+     */
+    public void invalidate(File inputSvgFile) {
+        synchronized (entries) {
+            entries.remove(inputSvgFile.getAbsolutePath());
+        }
+    }
+
+    private static ParsedSvg parse(File inputSvgFile, long lastModified, long length) throws IOException {
+        //Nothing done with the cached document needs the SVG DOM enhancements, unless CSS could size it.
+        final SvgMetaPost svgMetaPost = new SvgMetaPost(inputSvgFile.toURI().toString(), true);
+        return new ParsedSvg(inputSvgFile, (SVGOMDocument) svgMetaPost.getSVGDocument(), lastModified, length);
+    }
+
+    private static final class CacheEntry {
+
+        private final long lastModified;
+        private final long length;
+        private final FutureTask<ParsedSvg> parse;
+
+        private CacheEntry(long lastModified, long length, FutureTask<ParsedSvg> parse) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.parse = parse;
+        }
+
+        private boolean isCurrent(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+}
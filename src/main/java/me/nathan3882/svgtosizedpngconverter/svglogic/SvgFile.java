@@ -1,12 +1,9 @@
 package me.nathan3882.svgtosizedpngconverter.svglogic;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Optional;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -17,29 +14,28 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
 import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.output.OutputFiles;
+import me.nathan3882.svgtosizedpngconverter.png.BatikPngEncoder;
+import me.nathan3882.svgtosizedpngconverter.png.PngEncoder;
 import me.nathan3882.svgtosizedpngconverter.types.FileType;
 import org.apache.batik.anim.dom.SVGOMDocument;
 import org.apache.batik.anim.dom.SVGOMSVGElement;
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.apache.commons.io.FilenameUtils;
 
 public class SvgFile extends File implements TwoDimentional {
 
-    private static Transformer transformer;
-    private static PNGTranscoder pngTranscoder;
-
-
-    static {
-        pngTranscoder = new PNGTranscoder();
+    /**
+     * Neither {@link Transformer} nor the transformer factory are thread safe, so every thread gets its own.
+     */
+    private static final ThreadLocal<Transformer> TRANSFORMER = ThreadLocal.withInitial(() -> {
         try {
-            transformer = TransformerFactory.newInstance().newTransformer();
+            return TransformerFactory.newInstance().newTransformer();
         } catch (TransformerConfigurationException e) {
-            e.printStackTrace();
+            throw new IllegalStateException("A transformer to save svg files with could not be created", e);
         }
-    }
+    });
+
+    private ParsedSvg parsedSvg;
     private SVGOMDocument resizedDocument;
     private SvgFile resizedSvgFile;
     private Integer height;
@@ -78,24 +74,16 @@ public class SvgFile extends File implements TwoDimentional {
         this.height = newHeight;
         this.width = newWidth;
 
-        final String uri = super.toURI().toString();
-
-        final SvgMetaPost svgMetaPost;
-
         try {
-            svgMetaPost = new SvgMetaPost(uri);
+            //Only the first resize of this file parses it, every other one works on the cached parse.
+            this.parsedSvg = SvgDocumentCache.getShared().get(this);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
 
-        final SVGOMDocument svgDocument = (SVGOMDocument) svgMetaPost.getSVGDocument();
-        final SVGOMSVGElement documentElement = (SVGOMSVGElement) svgDocument.getDocumentElement();
-
-        documentElement.setAttribute(AttributeName.WIDTH.getPretty(), String.valueOf(newWidth));
-        documentElement.setAttribute(AttributeName.HEIGHT.getPretty(), String.valueOf(newHeight));
-
-        this.resizedDocument = svgDocument;
+        //The resized copy of the document is only made if it's asked for, a png alone does not need one.
+        this.resizedDocument = null;
         return true;
     }
 
@@ -106,58 +94,63 @@ public class SvgFile extends File implements TwoDimentional {
      * @throws DuplicateFileException
      */
     public String saveTo(File specifiedOutputFile, boolean pngToo) throws DuplicateFileException, LackOfTransformationException, TransformerException, IOException {
-        final Optional<SVGOMDocument> resizedDocumentOptional = getResizedDocument();
-
-        if (!resizedDocumentOptional.isPresent()) {
-            throw new LackOfTransformationException("An SvgFile instance is in memory, and a save operation was attempted. However, it's not been resized to anything yet. Call SvgFile resizeTo to do so.");
-        }
-
-        final String specifiedOutputFileAbsolutePath = specifiedOutputFile.getAbsolutePath();
+        final String path = FilenameUtils.getFullPath(specifiedOutputFile.getAbsolutePath());
+        final SvgFile outputFile = new SvgFile(path, specifiedOutputFile.getName(), this);
 
-        if (specifiedOutputFile.exists()) {
-            final boolean deleteSuccess = specifiedOutputFile.delete();
-            if (!deleteSuccess) {
-                throw new DuplicateFileException("A file exists at " + specifiedOutputFileAbsolutePath + " already! Please delete and try again!");
-            }
-        }
+        writeResizedSvg(outputFile);
 
-        final String path = FilenameUtils.getFullPath(specifiedOutputFileAbsolutePath);
+        this.resizedSvgFile = outputFile;
+        return outputFile.getPath();
+    }
 
-        final SvgFile outputFile = new SvgFile(path, specifiedOutputFile.getName(), this);
+    /**
+     * Writes the resized document to an svg file, unless the file already holds exactly the same svg.
+     *
+     * @param outputSvgFile the svg file to create or replace
+     * @return whether the file was written or was already up to date
+     */
+    public OutputFiles.WriteOutcome writeResizedSvg(File outputSvgFile) throws LackOfTransformationException, TransformerException, IOException {
+        return OutputFiles.write(outputSvgFile.toPath(), serializeResizedDocument());
+    }
 
-        final String parent = outputFile.getParent();
-        final Path outputFileParentPath = new File(parent).toPath();
+    /**
+     * Serializes the resized document into the bytes of an svg file.
+     *
+     * @return the serialized svg
+     */
+    public byte[] serializeResizedDocument() throws LackOfTransformationException, TransformerException {
+        final Optional<SVGOMDocument> resizedDocumentOptional = getResizedDocument();
 
-        try {
-            Files.createDirectory(outputFileParentPath);
-        } catch (FileAlreadyExistsException e) {
-            // file already exists...... we just deleted it.... wut
+        if (!resizedDocumentOptional.isPresent()) {
+            throw new LackOfTransformationException("An SvgFile instance is in memory, and a save operation was attempted. However, it's not been resized to anything yet. Call SvgFile resizeTo to do so.");
         }
 
-        final StreamResult outputFileStreamResult = new StreamResult(outputFile.getPath());
-
-        final Source inputDomSource = new DOMSource(resizedDocumentOptional.get());
+        return serialize(resizedDocumentOptional.get());
+    }
 
-        getTransformer().transform(inputDomSource, outputFileStreamResult);
+    /**
+     * Serializes a document with this thread's {@link Transformer}.
+     *
+     * @param document the document, such as one from {@link #getResizedDocument()}
+     * @return the encoded svg
+     */
+    public static byte[] serialize(SVGOMDocument document) throws TransformerException {
+        final ByteArrayOutputStream svgOutputStream = new ByteArrayOutputStream(8 * 1024);
+        final Source inputDomSource = new DOMSource(document);
 
-        this.resizedSvgFile = outputFile;
-        return outputFile.getPath();
+        getTransformer().transform(inputDomSource, new StreamResult(svgOutputStream));
+        return svgOutputStream.toByteArray();
     }
 
     /**
      * This function creates a png file in the same location that the scaled svg file will be located.
      */
-    public void createPngAlternative() throws IOException, TranscoderException {
-
-        //Step -1: We read the input SVG document into Transcoder Input
-        //We use Java NIO for this purpose
+    public void createPngAlternative() throws IOException, LackOfTransformationException {
         final SvgFile resizedSvgFile = getResizedSvgFile();
 
-
-        /*{@link SvgFile#toURL()} is deprecated below*/
-        final String newPngPathURL = resizedSvgFile.toURI().toURL().toString();
-
-        final TranscoderInput svgTranscoderInput = new TranscoderInput(newPngPathURL);
+        if (resizedSvgFile == null) {
+            throw new LackOfTransformationException("A png alternative was requested next to the resized svg file, but it's not been saved yet. Call SvgFile saveTo to do so.");
+        }
 
         //Strip the svg extension, then append a ".png"'
         final String outputPngFileName = FilenameUtils.removeExtension(resizedSvgFile.getName()) + FileType.PNG.getExtensionWithDot();
@@ -165,16 +158,86 @@ public class SvgFile extends File implements TwoDimentional {
         final String parent = resizedSvgFile.getParent();
         final String pathToOutputPng = parent + File.separatorChar + outputPngFileName;
 
-        final File outputPngFile = new File(pathToOutputPng);
+        createPngAlternative(new File(pathToOutputPng));
+    }
 
-        OutputStream pngOutputStream = new FileOutputStream(outputPngFile);
+    /**
+     * This function rasterizes the parsed document straight into a png file at the resized dimensions, so the resized svg
+     * does not need to be written to, then re-read from, the disk first.
+     *
+     * @param outputPngFile the png file to create
+     */
+    public void createPngAlternative(File outputPngFile) throws IOException, LackOfTransformationException {
+        final BufferedImage pngImage = rasterize();
+        try {
+            writePng(pngImage, outputPngFile);
+        } finally {
+            RasterBufferPool.getShared().release(pngImage);
+        }
+    }
 
-        TranscoderOutput pngOutputTranscoder = new TranscoderOutput(pngOutputStream);
+    /**
+     * Paints the parsed document into an image at the resized dimensions.
+     *
+     * @return the painted image, which can be handed back to the {@link RasterBufferPool} once it's been encoded
+     */
+    public BufferedImage rasterize() throws LackOfTransformationException {
+        if (parsedSvg == null) {
+            throw new LackOfTransformationException("An SvgFile instance is in memory, and a png was requested. However, it's not been resized to anything yet. Call SvgFile resizeTo to do so.");
+        }
 
-        pngTranscoder.transcode(svgTranscoderInput, pngOutputTranscoder);
+        final SvgRasterizer rasterizer = parsedSvg.borrowRasterizer();
+        try {
+            return rasterizer.rasterize(width, height);
+        } finally {
+            parsedSvg.releaseRasterizer(rasterizer);
+        }
+    }
 
-        pngOutputStream.flush();
-        pngOutputStream.close();
+    /**
+     * Encodes an image painted by {@link #rasterize()} into a png file with Batik's png writer.
+     *
+     * @param pngImage      the image to encode
+     * @param outputPngFile the png file to create
+     * @return whether the file was written or was already up to date
+     */
+    public OutputFiles.WriteOutcome writePng(BufferedImage pngImage, File outputPngFile) throws IOException {
+        return writePng(pngImage, outputPngFile, BatikPngEncoder.INSTANCE);
+    }
+
+    /**
+     * Encodes an image painted by {@link #rasterize()} into a png file, unless the file already holds exactly the same
+     * png.
+     *
+     * @param pngImage      the image to encode
+     * @param outputPngFile the png file to create
+     * @param pngEncoder    the encoder to write the png with
+     * @return whether the file was written or was already up to date
+     */
+    public OutputFiles.WriteOutcome writePng(BufferedImage pngImage, File outputPngFile, PngEncoder pngEncoder) throws IOException {
+        return OutputFiles.write(outputPngFile.toPath(), encodePng(pngImage, pngEncoder));
+    }
+
+    /**
+     * Encodes an image into the bytes of a png file.
+     *
+     * @param pngImage   the image to encode
+     * @param pngEncoder the encoder to use
+     * @return the encoded png
+     */
+    public static byte[] encodePng(BufferedImage pngImage, PngEncoder pngEncoder) throws IOException {
+        final ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream(pngImage.getWidth() * pngImage.getHeight() + 1024);
+        pngEncoder.encode(pngImage, pngOutputStream);
+        return pngOutputStream.toByteArray();
+    }
+
+    /**
+     * Gets the parsed input this was resized from.
+     *
+     * @return the parsed input, or null if it's not been resized yet
+     */
+    public ParsedSvg getParsedSvg() {
+        return parsedSvg;
     }
 
     @Override
@@ -204,11 +267,25 @@ public class SvgFile extends File implements TwoDimentional {
      * @return the resized nonnull SVGOMDocument wrapped inside an {@link Optional}, or empty optional
      */
     public Optional<SVGOMDocument> getResizedDocument() {
+        if (resizedDocument == null && parsedSvg != null) {
+            final SVGOMDocument svgDocument = parsedSvg.createCopy();
+            final SVGOMSVGElement documentElement = (SVGOMSVGElement) svgDocument.getDocumentElement();
+
+            documentElement.setAttribute(AttributeName.WIDTH.getPretty(), String.valueOf(width));
+            documentElement.setAttribute(AttributeName.HEIGHT.getPretty(), String.valueOf(height));
+
+            this.resizedDocument = svgDocument;
+        }
         return Optional.ofNullable(resizedDocument);
     }
 
+    /**
+     * Gets the {@link Transformer} confined to the calling thread.
+     *
+     * @return this thread's transformer
+     */
     public static Transformer getTransformer() {
-        return SvgFile.transformer;
+        return TRANSFORMER.get();
     }
 
 }
@@ -1,9 +1,15 @@
 package me.nathan3882.svgtosizedpngconverter.svglogic;
 
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
 import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
 import org.apache.batik.bridge.*;
+import org.apache.batik.util.SVGConstants;
 import org.apache.batik.util.XMLResourceDescriptor;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
 
 import java.io.IOException;
 
@@ -22,7 +28,54 @@ public class SvgMetaPost {
      * @throws IOException Something went wrong parsing the SVG file.
      */
     public SvgMetaPost(String uri) throws IOException {
-        setSVGDocument(createSVGDocument(uri));
+        this(uri, false);
+    }
+
+    /**
+     * Creates an SVG Document given a URI, optionally without the SVG DOM enhancements. Resizing and serializing only
+     * touch the attributes of the root element, and rendering builds its own graphics tree, so the enhancements are
+     * only worth their cost when the document is styled with CSS, which can size the root element.
+     *
+     * @param uri         Path to the file.
+     * @param lightweight whether the enhancements are skipped for documents that don't need them
+     * @throws IOException Something went wrong parsing the SVG file.
+     */
+    public SvgMetaPost(String uri, boolean lightweight) throws IOException {
+        final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+
+        long startNanos = System.nanoTime();
+        final Document document = createSVGDocument(uri);
+        conversionMetrics.recordStage(Stage.PARSE, System.nanoTime() - startNanos);
+
+        if (lightweight && !isStyledWithCss(document)) {
+            this.svgDocument = document;
+            return;
+        }
+
+        startNanos = System.nanoTime();
+        setSVGDocument(document);
+        conversionMetrics.recordStage(Stage.DOM_ENHANCE, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Checks whether any CSS applies to the document, through a style sheet or the style of the root element.
+     *
+     * @param document the parsed document
+     * @return true if the document needs its CSS engine
+     */
+    private static boolean isStyledWithCss(Document document) {
+        if (document.getElementsByTagNameNS(SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_STYLE_TAG).getLength() > 0) {
+            return true;
+        }
+
+        for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof ProcessingInstruction && ((ProcessingInstruction) child).getTarget().equals("xml-stylesheet")) {
+                return true;
+            }
+        }
+
+        final Element rootElement = document.getDocumentElement();
+        return rootElement != null && !rootElement.getAttribute(SVGConstants.SVG_STYLE_ATTRIBUTE).trim().isEmpty();
     }
 
 
@@ -0,0 +1,219 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Optional;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * A quick look over an input svg before it's converted, streaming it through a SAX parser rather than building the
+ * document and graphics tree that {@link SvgMetaPost} does. It finds inputs that aren't well formed svgs, so they can
+ * be rejected before any of them is parsed properly, and estimates how costly each of the rest is to convert, so that
+ * the costliest can be started first.
+ */
+public final class SvgPreflight {
+
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    private static final String LOAD_EXTERNAL_DTD_FEATURE = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    /**
+     * Roughly how many pixels' worth of rendering each element and each character of path data costs, per size.
+     */
+    private static final long ELEMENT_COST = 200;
+    private static final long PATH_CHARACTER_COST = 20;
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY;
+
+    static {
+        SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+        SAX_PARSER_FACTORY.setValidating(false);
+        try {
+            SAX_PARSER_FACTORY.setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+        } catch (ParserConfigurationException | SAXException e) {
+            //Not every parser knows the feature, the entity resolver below still keeps the DTD from being fetched.
+        }
+    }
+
+    private final int elements;
+    private final long pathCharacters;
+    private final int filterPrimitives;
+    private final int gradients;
+    private final int offscreenLayers;
+    private final long cost;
+    private final String problem;
+
+    private SvgPreflight(PreflightHandler handler, long cost, String problem) {
+        this.elements = handler.elements;
+        this.pathCharacters = handler.pathCharacters;
+        this.filterPrimitives = handler.filterPrimitives;
+        this.gradients = handler.gradients;
+        this.offscreenLayers = handler.offscreenLayers;
+        this.cost = cost;
+        this.problem = problem;
+    }
+
+    /**
+     * Streams through an input svg, checking it's well formed and scoring how costly it is to convert.
+     *
+     * @param svgFile    the svg file
+     * @param imageTypes every size it will be rendered at
+     * @return the preflight of the file, which has a problem if it can't be converted
+     */
+    public static SvgPreflight of(File svgFile, List<? extends FilenameAttachableImageType> imageTypes) {
+        final PreflightHandler handler = new PreflightHandler();
+        try {
+            final SAXParser saxParser = SAX_PARSER_FACTORY.newSAXParser();
+            saxParser.parse(svgFile, handler);
+        } catch (SAXParseException e) {
+            return new SvgPreflight(handler, 0, "line " + e.getLineNumber() + ", column " + e.getColumnNumber() + ": " + e.getMessage());
+        } catch (SAXException | ParserConfigurationException e) {
+            return new SvgPreflight(handler, 0, e.getMessage());
+        } catch (IOException e) {
+            return new SvgPreflight(handler, 0, "it could not be read - " + e);
+        }
+
+        if (handler.rootName == null) {
+            return new SvgPreflight(handler, 0, "it has no root element");
+        }
+        if (!handler.rootName.equals("svg") || !SVG_NAMESPACE.equals(handler.rootNamespace)) {
+            return new SvgPreflight(handler, 0, "its root element is <" + handler.rootName + ">, not an svg namespaced <svg>");
+        }
+        return new SvgPreflight(handler, estimateCost(handler, imageTypes), null);
+    }
+
+    /**
+     * Every pixel of every size is painted at least once, and again for each filter primitive and offscreen layer,
+     * which each paint into an image of their own. Gradients cost more per pixel than flat fills. On top of that, the geometry
+     * of every element is built and flattened again for every size.
+     */
+    private static long estimateCost(PreflightHandler handler, List<? extends FilenameAttachableImageType> imageTypes) {
+        long pixels = 0;
+        for (FilenameAttachableImageType imageType : imageTypes) {
+            pixels += (long) imageType.getWidth() * imageType.getHeight();
+        }
+
+        final long paintsPerPixel = 1 + 4L * handler.filterPrimitives + 2L * handler.offscreenLayers + handler.gradients;
+        final long geometry = (handler.elements * ELEMENT_COST + handler.pathCharacters * PATH_CHARACTER_COST) * imageTypes.size();
+        return pixels * paintsPerPixel + geometry;
+    }
+
+    /**
+     * Gets why the input can't be converted.
+     *
+     * @return the problem, or empty if it's a well formed svg
+     */
+    public Optional<String> getProblem() {
+        return Optional.ofNullable(problem);
+    }
+
+    /**
+     * Gets the estimated cost of converting the input at every size, only meaningful compared to that of others.
+     *
+     * @return the cost, or 0 if the input has a problem
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    public int getElements() {
+        return elements;
+    }
+
+    public long getPathCharacters() {
+        return pathCharacters;
+    }
+
+    public int getFilterPrimitives() {
+        return filterPrimitives;
+    }
+
+    public int getGradients() {
+        return gradients;
+    }
+
+    /**
+     * Gets the number of images, besides the output image, that Batik paints into, as {@link SvgComplexity} counts
+     * them apart from filter primitives, which are counted on their own.
+     *
+     * @return the number of masks, patterns and translucent groups
+     */
+    public int getOffscreenLayers() {
+        return offscreenLayers;
+    }
+
+    private static final class PreflightHandler extends DefaultHandler {
+
+        private String rootName;
+        private String rootNamespace;
+        private int elements;
+        private long pathCharacters;
+        private int filterPrimitives;
+        private int gradients;
+        private int offscreenLayers;
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            //Never fetch the DTD an svg declares, which is often on the network, it isn't needed to count elements.
+            return new InputSource(new StringReader(""));
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (rootName == null) {
+                rootName = localName;
+                rootNamespace = uri;
+            }
+            elements++;
+            if (!SVG_NAMESPACE.equals(uri)) {
+                return;
+            }
+
+            switch (localName) {
+                case "path":
+                    pathCharacters += length(attributes.getValue("d"));
+                    break;
+                case "polygon":
+                case "polyline":
+                    pathCharacters += length(attributes.getValue("points"));
+                    break;
+                case "linearGradient":
+                case "radialGradient":
+                    gradients++;
+                    break;
+                case "mask":
+                case "pattern":
+                    offscreenLayers++;
+                    break;
+                case "g":
+                    final String style = attributes.getValue("style");
+                    if (attributes.getValue("opacity") != null || (style != null && style.contains("opacity"))) {
+                        offscreenLayers++;
+                    }
+                    break;
+                default:
+                    if (localName.startsWith("fe")) {
+                        filterPrimitives++;
+                    }
+                    break;
+            }
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.CanvasGraphicsNode;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Element;
+
+/**
+ * Builds the graphics tree of an svg document once, and then paints it into an image of any requested size using
+ * only a scale transform. This replaces a full transcode, and so a bridge build, for every size of the same input.
+ */
+public class SvgRasterizer {
+
+    private final BridgeContext bridgeContext;
+    private final GraphicsNode rootGraphicsNode;
+    private final Element rootElement;
+    private final float documentWidth;
+    private final float documentHeight;
+
+    /**
+     * Creates a rasterizer, building the graphics tree of the given document. The document should not be used
+     * elsewhere afterwards, as the bridge keeps a hold of it.
+     *
+     * @param document the document to build the graphics tree of
+     */
+    public SvgRasterizer(SVGOMDocument document) {
+        final UserAgent userAgent = new UserAgentAdapter();
+        final DocumentLoader loader = new DocumentLoader(userAgent);
+
+        this.bridgeContext = new BridgeContext(userAgent, loader);
+        this.bridgeContext.setDynamicState(BridgeContext.STATIC);
+
+        this.rootGraphicsNode = new GVTBuilder().build(bridgeContext, document);
+        this.rootElement = document.getRootElement();
+
+        final Dimension2D documentSize = bridgeContext.getDocumentSize();
+        this.documentWidth = (float) documentSize.getWidth();
+        this.documentHeight = (float) documentSize.getHeight();
+
+        //The viewing transform maps onto the document's own size, we apply our own per size instead.
+        clearViewingTransform(rootGraphicsNode);
+    }
+
+    /**
+     * Paints the graphics tree into an image of the given size, taken from the {@link RasterBufferPool}.
+     *
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the rendered image, which can be handed back to the pool once it's been encoded
+     */
+    public BufferedImage rasterize(int width, int height) {
+        final BufferedImage image = RasterBufferPool.getShared().acquire(width, height);
+
+        final RenderingHints renderingHints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        renderingHints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        final Graphics2D graphics = GraphicsUtil.createGraphics(image, renderingHints);
+        try {
+            graphics.transform(getTransformFor(width, height));
+            rootGraphicsNode.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Works out the transform that maps the document onto the given size, the same way the Batik transcoders do.
+     *
+     * @param width  the target width
+     * @param height the target height
+     * @return the transform to paint with
+     */
+    private AffineTransform getTransformFor(int width, int height) {
+        return getViewingTransform(bridgeContext, rootElement, width, height);
+    }
+
+    /**
+     * Works out the transform that maps a document, whose graphics tree was built with its own viewing transform
+     * cleared, onto the given size.
+     *
+     * @param bridgeContext the context the graphics tree was built with
+     * @param rootElement   the root svg element of the document
+     * @param width         the target width
+     * @param height        the target height
+     * @return the transform to paint with
+     */
+    static AffineTransform getViewingTransform(BridgeContext bridgeContext, Element rootElement, float width, float height) {
+        if (hasViewBox(rootElement)) {
+            final String viewBox = rootElement.getAttributeNS(null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE);
+            final String preserveAspectRatio = rootElement.getAttributeNS(null, SVGConstants.SVG_PRESERVE_ASPECT_RATIO_ATTRIBUTE);
+            return ViewBox.getPreserveAspectRatioTransform(rootElement, viewBox, preserveAspectRatio, width, height, bridgeContext);
+        }
+
+        //Without a viewBox, the new width and height only grow or crop the viewport, and nothing is scaled, as when
+        //the resized document is transcoded.
+        return new AffineTransform();
+    }
+
+    /**
+     * Gets whether a root svg element has a viewBox, which is what maps its document onto any other size.
+     *
+     * @param rootElement the root svg element of the document
+     * @return true if the document is scaled to the size it's rendered at
+     */
+    static boolean hasViewBox(Element rootElement) {
+        return !rootElement.getAttributeNS(null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE).isEmpty();
+    }
+
+    /**
+     * Clears the viewing transform of a graphics tree's canvas, which maps onto the document's own size, so that
+     * {@link #getViewingTransform} can be applied for any size instead.
+     *
+     * @param rootGraphicsNode the root of the graphics tree
+     */
+    static void clearViewingTransform(GraphicsNode rootGraphicsNode) {
+        final CanvasGraphicsNode canvasGraphicsNode = getCanvasGraphicsNode(rootGraphicsNode);
+        if (canvasGraphicsNode != null) {
+            canvasGraphicsNode.setViewingTransform(new AffineTransform());
+        }
+    }
+
+    private static CanvasGraphicsNode getCanvasGraphicsNode(GraphicsNode graphicsNode) {
+        if (!(graphicsNode instanceof CompositeGraphicsNode)) {
+            return null;
+        }
+
+        final List<?> children = ((CompositeGraphicsNode) graphicsNode).getChildren();
+        if (children.isEmpty() || !(children.get(0) instanceof CanvasGraphicsNode)) {
+            return null;
+        }
+        return (CanvasGraphicsNode) children.get(0);
+    }
+
+    public float getDocumentWidth() {
+        return documentWidth;
+    }
+
+    public float getDocumentHeight() {
+        return documentHeight;
+    }
+}
@@ -0,0 +1,266 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import me.nathan3882.svgtosizedpngconverter.output.OutputFiles;
+
+/**
+ * Writes a resized copy of an svg file by streaming its bytes straight through, only rewriting the width and height
+ * attributes of the root element. Everything else in the file, including the prolog, white space, comments and
+ * attribute quoting, is copied unchanged, and only the root start tag is ever held in memory.
+ * <p>
+ * Only encodings where markup is plain ASCII, such as UTF-8 and ISO-8859-1, can be streamed. For anything else, or a
+ * file whose root element can't be found, {@link #rewrite} gives up without writing anything and the caller should
+ * serialize the DOM instead.
+ */
+public final class SvgRootRewriter {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * A root start tag larger than this is treated as something that can't be streamed, so memory use stays bounded.
+     */
+    private static final int MAXIMUM_ROOT_TAG_BYTES = 1024 * 1024;
+
+    private static final Pattern ENCODING_DECLARATION = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+    private static final Pattern ASCII_COMPATIBLE_ENCODING = Pattern.compile("utf-?8|us-ascii|ascii|iso-8859-\\d+|latin-?1|windows-125\\d|cp125\\d");
+    private static final Pattern ATTRIBUTE = Pattern.compile("(\\s+)([^\\s=/>]+)(\\s*=\\s*)(\"[^\"]*\"|'[^']*')");
+    private static final Pattern ELEMENT_NAME = Pattern.compile("<[^\\s/>]+");
+
+    private SvgRootRewriter() {
+    }
+
+    /**
+     * Copies an svg file, setting the width and height of its root element, unless the output already holds exactly
+     * that copy.
+     *
+     * @param inputSvgFile the svg file to copy
+     * @param outputFile   the file to write, replaced if it exists
+     * @param width        the new width
+     * @param height       the new height
+     * @return whether the file was written or was already up to date, or {@link OutputFiles.WriteOutcome#ABANDONED}
+     * if the input can't be streamed and nothing was written
+     * @throws IOException if the input could not be read or the output could not be written
+     */
+    public static OutputFiles.WriteOutcome rewrite(File inputSvgFile, File outputFile, int width, int height) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(inputSvgFile.toPath()), BUFFER_SIZE)) {
+            return OutputFiles.write(outputFile.toPath(), outputStream -> copyResized(inputStream, outputStream, width, height));
+        }
+    }
+
+    private static boolean copyResized(InputStream inputStream, OutputStream outputStream, int width, int height) throws IOException {
+        inputStream.mark(4);
+        final int first = inputStream.read();
+        final int second = inputStream.read();
+        final int third = inputStream.read();
+        inputStream.reset();
+
+        if (first == 0xEF && second == 0xBB && third == 0xBF) {
+            copyBytes(inputStream, outputStream, 3); //The UTF-8 byte order mark.
+        } else if (first != '<' && !isWhitespace(first)) {
+            return false; //A UTF-16 or UTF-32 byte order mark, or markup that isn't ASCII.
+        } else if (second == 0) {
+            return false; //UTF-16 without a byte order mark.
+        }
+
+        //Copy the prolog through, until the start of the root element.
+        int read;
+        while ((read = inputStream.read()) != -1) {
+            if (read != '<') {
+                outputStream.write(read);
+                continue;
+            }
+
+            inputStream.mark(2);
+            final int next = inputStream.read();
+            inputStream.reset();
+
+            if (next == '?') {
+                final String declaration = copyUntil(inputStream, outputStream, "?>", '<');
+                if (declaration.startsWith("<?xml ") && !isAsciiCompatible(declaration)) {
+                    return false;
+                }
+            } else if (next == '!') {
+                copyMarkupDeclaration(inputStream, outputStream);
+            } else {
+                final ByteArrayOutputStream rootTag = readStartTag(inputStream);
+                if (rootTag == null) {
+                    return false;
+                }
+                final String resizedRootTag = resizeRootTag(rootTag.toString(StandardCharsets.ISO_8859_1.name()), width, height);
+                outputStream.write(resizedRootTag.getBytes(StandardCharsets.ISO_8859_1));
+
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+                return true;
+            }
+        }
+        return false; //There was no root element.
+    }
+
+    /**
+     * Sets the width and height attributes of a root start tag, adding them after the element name if it has none.
+     * ISO-8859-1 maps every byte to one char, so the tag's bytes are kept exactly as they were.
+     */
+    static String resizeRootTag(String rootTag, int width, int height) {
+        final StringBuffer resizedRootTag = new StringBuffer(rootTag.length() + 32);
+        boolean hasWidth = false;
+        boolean hasHeight = false;
+
+        final Matcher attributeMatcher = ATTRIBUTE.matcher(rootTag);
+        while (attributeMatcher.find()) {
+            final String name = attributeMatcher.group(2);
+            final String value = attributeMatcher.group(4);
+            final char quote = value.charAt(0);
+
+            String newValue = null;
+            if (name.equals(AttributeName.WIDTH.getPretty())) {
+                newValue = String.valueOf(width);
+                hasWidth = true;
+            } else if (name.equals(AttributeName.HEIGHT.getPretty())) {
+                newValue = String.valueOf(height);
+                hasHeight = true;
+            }
+
+            if (newValue != null) {
+                final String replacement = attributeMatcher.group(1) + name + attributeMatcher.group(3) + quote + newValue + quote;
+                attributeMatcher.appendReplacement(resizedRootTag, Matcher.quoteReplacement(replacement));
+            }
+        }
+        attributeMatcher.appendTail(resizedRootTag);
+
+        if (!hasWidth || !hasHeight) {
+            final Matcher elementNameMatcher = ELEMENT_NAME.matcher(resizedRootTag);
+            if (elementNameMatcher.lookingAt()) {
+                final String missingAttributes = (hasWidth ? "" : " " + AttributeName.WIDTH.getPretty() + "=\"" + width + "\"") +
+                        (hasHeight ? "" : " " + AttributeName.HEIGHT.getPretty() + "=\"" + height + "\"");
+                resizedRootTag.insert(elementNameMatcher.end(), missingAttributes);
+            }
+        }
+        return resizedRootTag.toString();
+    }
+
+    private static boolean isAsciiCompatible(String xmlDeclaration) {
+        final Matcher encodingMatcher = ENCODING_DECLARATION.matcher(xmlDeclaration);
+        return !encodingMatcher.find() || ASCII_COMPATIBLE_ENCODING.matcher(encodingMatcher.group(1).toLowerCase(Locale.ROOT)).matches();
+    }
+
+    /**
+     * Reads a start tag whose opening '<' has already been read, up to and including its closing '>'.
+     *
+     * @return the bytes of the tag, or null if it's unterminated or too large to hold
+     */
+    private static ByteArrayOutputStream readStartTag(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream startTag = new ByteArrayOutputStream(256);
+        startTag.write('<');
+
+        int quote = 0;
+        int read;
+        while ((read = inputStream.read()) != -1) {
+            startTag.write(read);
+            if (startTag.size() > MAXIMUM_ROOT_TAG_BYTES) {
+                return null;
+            }
+
+            if (quote != 0) {
+                if (read == quote) {
+                    quote = 0;
+                }
+            } else if (read == '"' || read == '\'') {
+                quote = read;
+            } else if (read == '>') {
+                return startTag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies a comment, CDATA section or document type declaration whose opening '<' has already been read. A document
+     * type declaration can hold an internal subset in square brackets, which may itself contain '>'s.
+     */
+    private static void copyMarkupDeclaration(InputStream inputStream, OutputStream outputStream) throws IOException {
+        inputStream.mark(3);
+        final boolean isComment = inputStream.read() == '!' && inputStream.read() == '-' && inputStream.read() == '-';
+        inputStream.reset();
+
+        if (isComment) {
+            copyUntil(inputStream, outputStream, "-->", '<');
+            return;
+        }
+
+        outputStream.write('<');
+        int bracketDepth = 0;
+        int quote = 0;
+        int read;
+        while ((read = inputStream.read()) != -1) {
+            outputStream.write(read);
+            if (quote != 0) {
+                if (read == quote) {
+                    quote = 0;
+                }
+            } else if (read == '"' || read == '\'') {
+                quote = read;
+            } else if (read == '[') {
+                bracketDepth++;
+            } else if (read == ']') {
+                bracketDepth--;
+            } else if (read == '>' && bracketDepth <= 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies bytes up to and including the given terminator, writing the already read first byte before them.
+     *
+     * @return what was copied, as long as it's short, so that an xml declaration can be inspected
+     */
+    private static String copyUntil(InputStream inputStream, OutputStream outputStream, String terminator, int firstByte) throws IOException {
+        final StringBuilder copied = new StringBuilder();
+        outputStream.write(firstByte);
+        copied.append((char) firstByte);
+
+        int matched = 0;
+        int read;
+        while ((read = inputStream.read()) != -1) {
+            outputStream.write(read);
+            if (copied.length() < 256) {
+                copied.append((char) read);
+            }
+
+            if (read == terminator.charAt(matched)) {
+                matched++;
+                if (matched == terminator.length()) {
+                    break;
+                }
+            } else {
+                matched = read == terminator.charAt(0) ? 1 : 0;
+            }
+        }
+        return copied.toString();
+    }
+
+    private static void copyBytes(InputStream inputStream, OutputStream outputStream, int count) throws IOException {
+        for (int index = 0; index < count; index++) {
+            outputStream.write(inputStream.read());
+        }
+    }
+
+    private static boolean isWhitespace(int read) {
+        return read == ' ' || read == '\t' || read == '\r' || read == '\n';
+    }
+}
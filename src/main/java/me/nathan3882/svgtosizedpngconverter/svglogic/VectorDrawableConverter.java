@@ -0,0 +1,469 @@
+package me.nathan3882.svgtosizedpngconverter.svglogic;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Dimension2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.TextNode;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.ext.awt.MultipleGradientPaint;
+import org.apache.batik.ext.awt.image.renderable.ClipRable;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.CompositeShapePainter;
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.ImageNode;
+import org.apache.batik.gvt.RasterImageNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.ShapePainter;
+import org.apache.batik.gvt.StrokeShapePainter;
+import org.w3c.dom.Element;
+
+/**
+ * Converts a parsed svg into an Android VectorDrawable. The graphics tree Batik builds for rendering is walked, rather
+ * than the document itself, so styles, {@code <use>} references, units and inheritance have already been resolved.
+ * Every shape, with its transforms applied, becomes a {@code <path>}, and clip paths become {@code <clip-path>}s in a
+ * {@code <group>}.
+ * <p>
+ * Anything a VectorDrawable can't draw, such as text, images, filters, masks, gradients and dashed strokes, is
+ * recorded against the element that uses it instead, and no drawable is created.
+ */
+public final class VectorDrawableConverter {
+
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final String INDENT = "    ";
+
+    /**
+     * The most unsupported features listed, an svg full of text would otherwise list every glyph run.
+     */
+    private static final int MAXIMUM_LISTED_FEATURES = 8;
+
+    private final BridgeContext bridgeContext;
+    private final Rectangle2D viewport;
+    private final StringBuilder body = new StringBuilder();
+    private final Set<String> unsupportedFeatures = new LinkedHashSet<>();
+    private int pathCount;
+
+    private VectorDrawableConverter(BridgeContext bridgeContext, float viewportSize) {
+        this.bridgeContext = bridgeContext;
+        this.viewport = new Rectangle2D.Float(0, 0, viewportSize, viewportSize);
+    }
+
+    /**
+     * Converts a parsed svg into the xml of a VectorDrawable.
+     *
+     * @param parsedSvg the svg to convert
+     * @param widthDp   the width of the drawable in density independent pixels
+     * @param heightDp  the height of the drawable in density independent pixels
+     * @return the drawable, or the features that stopped one being created
+     */
+    public static Conversion convert(ParsedSvg parsedSvg, int widthDp, int heightDp) {
+        final UserAgent userAgent = new UserAgentAdapter();
+        final BridgeContext bridgeContext = new BridgeContext(userAgent, new DocumentLoader(userAgent));
+        //Interactive, so that every graphics node stays bound to its element, to name any that can't be converted.
+        bridgeContext.setDynamicState(BridgeContext.INTERACTIVE);
+
+        try {
+            if (!parsedSvg.hasViewBox()) {
+                //Its pngs are painted at its own scale rather than fit to each density, which a drawable can't match.
+                return new Conversion(null, Collections.singletonList("the root svg element has no viewBox"), 0);
+            }
+
+            final SVGOMDocument document = parsedSvg.createCopy();
+            final GraphicsNode rootGraphicsNode = new GVTBuilder().build(bridgeContext, document);
+            SvgRasterizer.clearViewingTransform(rootGraphicsNode);
+
+            //Drawables are stretched to fit, so the viewport is kept square and the document fit into it, like the pngs.
+            final Dimension2D documentSize = bridgeContext.getDocumentSize();
+            final float viewportSize = (float) Math.max(documentSize.getWidth(), documentSize.getHeight());
+            if (!(viewportSize > 0)) {
+                return new Conversion(null, Collections.singletonList("the document has no size"), 0);
+            }
+            final AffineTransform viewingTransform = SvgRasterizer.getViewingTransform(bridgeContext, document.getRootElement(), viewportSize, viewportSize);
+
+            final VectorDrawableConverter converter = new VectorDrawableConverter(bridgeContext, viewportSize);
+            converter.convertNode(rootGraphicsNode, viewingTransform, 1, INDENT);
+            if (!converter.unsupportedFeatures.isEmpty()) {
+                return new Conversion(null, new ArrayList<>(converter.unsupportedFeatures), converter.pathCount);
+            }
+
+            final String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                    "<vector xmlns:android=\"" + ANDROID_NAMESPACE + "\"\n" +
+                    INDENT + "android:width=\"" + widthDp + "dp\"\n" +
+                    INDENT + "android:height=\"" + heightDp + "dp\"\n" +
+                    INDENT + "android:viewportWidth=\"" + formatNumber(viewportSize) + "\"\n" +
+                    INDENT + "android:viewportHeight=\"" + formatNumber(viewportSize) + "\">\n" +
+                    converter.body +
+                    "</vector>\n";
+            return new Conversion(xml.getBytes(StandardCharsets.UTF_8), Collections.emptyList(), converter.pathCount);
+        } finally {
+            bridgeContext.dispose();
+        }
+    }
+
+    private void convertNode(GraphicsNode node, AffineTransform parentTransform, float parentOpacity, String indent) {
+        if (!node.isVisible()) {
+            return;
+        }
+
+        final AffineTransform transform = new AffineTransform(parentTransform);
+        if (node.getTransform() != null) {
+            transform.concatenate(node.getTransform());
+        }
+
+        if (node.getFilter() != null) {
+            addUnsupported(node, "a filter");
+            return;
+        }
+        if (node.getMask() != null) {
+            addUnsupported(node, "a mask");
+            return;
+        }
+
+        float opacity = parentOpacity;
+        final Composite composite = node.getComposite();
+        if (composite != null) {
+            if (!(composite instanceof AlphaComposite) || ((AlphaComposite) composite).getRule() != AlphaComposite.SRC_OVER) {
+                addUnsupported(node, "a blend mode");
+                return;
+            }
+            final float alpha = ((AlphaComposite) composite).getAlpha();
+            //A drawable has no group opacity, it can only be pushed down into a path's colours when nothing overlaps.
+            if (alpha < 1 && countPaints(node) > 1) {
+                addUnsupported(node, "opacity over more than one fill or stroke");
+                return;
+            }
+            opacity *= alpha;
+        }
+
+        String childIndent = indent;
+        final ClipRable clip = node.getClip();
+        //The root svg element clips to its own viewport, which a drawable does anyway.
+        final Shape clipPath = clip == null ? null : transform.createTransformedShape(clip.getClipPath());
+        final boolean isClipped = clipPath != null && !clipPath.contains(viewport);
+        if (isClipped) {
+            body.append(indent).append("<group>\n");
+            childIndent = indent + INDENT;
+            body.append(childIndent).append("<clip-path android:pathData=\"").append(toPathData(clipPath.getPathIterator(null))).append("\"/>\n");
+        }
+
+        if (node instanceof CompositeGraphicsNode) {
+            for (Object child : ((CompositeGraphicsNode) node).getChildren()) {
+                convertNode((GraphicsNode) child, transform, opacity, childIndent);
+            }
+        } else if (node instanceof ShapeNode) {
+            convertShape((ShapeNode) node, transform, opacity, childIndent);
+        } else if (node instanceof TextNode) {
+            addUnsupported(node, "text");
+        } else if (node instanceof ImageNode || node instanceof RasterImageNode) {
+            addUnsupported(node, "an image");
+        } else {
+            addUnsupported(node, "a " + node.getClass().getSimpleName());
+        }
+
+        if (isClipped) {
+            body.append(indent).append("</group>\n");
+        }
+    }
+
+    private void convertShape(ShapeNode shapeNode, AffineTransform transform, float opacity, String indent) {
+        final Shape shape = shapeNode.getShape();
+        final ShapePainter shapePainter = shapeNode.getShapePainter();
+        if (shape == null || shapePainter == null) {
+            return;
+        }
+
+        final List<ShapePainter> painters = new ArrayList<>();
+        if (!addPainters(shapeNode, shapePainter, painters)) {
+            return;
+        }
+
+        final StringBuilder attributes = new StringBuilder();
+        for (ShapePainter painter : painters) {
+            if (painter instanceof FillShapePainter) {
+                final Optional<String> fillColour = toColour(shapeNode, ((FillShapePainter) painter).getPaint(), opacity);
+                if (fillColour == null) {
+                    return;
+                }
+                fillColour.ifPresent(colour -> appendAttribute(attributes, indent, "fillColor", colour));
+            } else {
+                final StrokeShapePainter strokePainter = (StrokeShapePainter) painter;
+                final Optional<String> strokeColour = toColour(shapeNode, strokePainter.getPaint(), opacity);
+                if (strokeColour == null || !appendStroke(attributes, indent, shapeNode, strokePainter.getStroke(), transform, strokeColour)) {
+                    return;
+                }
+            }
+        }
+        if (attributes.length() == 0) {
+            return; //Neither filled nor stroked.
+        }
+
+        final PathIterator pathIterator = shape.getPathIterator(transform);
+        if (pathIterator.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+            appendAttribute(attributes, indent, "fillType", "evenOdd");
+        }
+
+        body.append(indent).append("<path");
+        body.append(attributes);
+        body.append('\n').append(indent).append(INDENT).append("android:pathData=\"").append(toPathData(pathIterator)).append("\"/>\n");
+        pathCount++;
+    }
+
+    /**
+     * Flattens a shape's painters into its fills and strokes, in the order they're painted.
+     *
+     * @return false if it's painted with something that can't be converted
+     */
+    private boolean addPainters(ShapeNode shapeNode, ShapePainter shapePainter, List<ShapePainter> painters) {
+        if (shapePainter instanceof FillShapePainter || shapePainter instanceof StrokeShapePainter) {
+            painters.add(shapePainter);
+            return true;
+        }
+        if (shapePainter instanceof CompositeShapePainter) {
+            final CompositeShapePainter compositeShapePainter = (CompositeShapePainter) shapePainter;
+            for (int index = 0; index < compositeShapePainter.getShapePainterCount(); index++) {
+                if (!addPainters(shapeNode, compositeShapePainter.getShapePainter(index), painters)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        addUnsupported(shapeNode, "markers");
+        return false;
+    }
+
+    /**
+     * Converts a fill or stroke paint into a colour, with the opacity of the shape multiplied into it.
+     *
+     * @return the colour, empty if nothing is painted, or null if the paint can't be converted
+     */
+    private Optional<String> toColour(ShapeNode shapeNode, Paint paint, float opacity) {
+        if (paint == null) {
+            return Optional.empty();
+        }
+        if (!(paint instanceof Color)) {
+            addUnsupported(shapeNode, paint instanceof MultipleGradientPaint ? "a gradient" : "a pattern");
+            return null;
+        }
+
+        final Color colour = (Color) paint;
+        final int alpha = Math.round(colour.getAlpha() * opacity);
+        final int rgb = colour.getRGB() & 0xFFFFFF;
+        return Optional.of(alpha == 255 ? String.format(Locale.ROOT, "#%06X", rgb) : String.format(Locale.ROOT, "#%02X%06X", alpha, rgb));
+    }
+
+    /**
+     * Adds the attributes of a stroke. A drawable's stroke width is in viewport units, so it can only be scaled along
+     * with the path by a transform that scales evenly in every direction.
+     *
+     * @return false if the stroke can't be converted
+     */
+    private boolean appendStroke(StringBuilder attributes, String indent, ShapeNode shapeNode, Stroke stroke, AffineTransform transform, Optional<String> strokeColour) {
+        if (!strokeColour.isPresent()) {
+            return true;
+        }
+        if (!(stroke instanceof BasicStroke)) {
+            addUnsupported(shapeNode, "a " + stroke.getClass().getSimpleName() + " stroke");
+            return false;
+        }
+
+        final BasicStroke basicStroke = (BasicStroke) stroke;
+        if (basicStroke.getDashArray() != null) {
+            addUnsupported(shapeNode, "a dashed stroke");
+            return false;
+        }
+
+        final double xScaleSquared = transform.getScaleX() * transform.getScaleX() + transform.getShearY() * transform.getShearY();
+        final double yScaleSquared = transform.getShearX() * transform.getShearX() + transform.getScaleY() * transform.getScaleY();
+        final double skew = transform.getScaleX() * transform.getShearX() + transform.getShearY() * transform.getScaleY();
+        final double tolerance = 1e-6 * Math.max(xScaleSquared, yScaleSquared);
+        if (Math.abs(xScaleSquared - yScaleSquared) > tolerance || Math.abs(skew) > tolerance) {
+            addUnsupported(shapeNode, "a stroke that's scaled unevenly or skewed");
+            return false;
+        }
+
+        appendAttribute(attributes, indent, "strokeColor", strokeColour.get());
+        appendAttribute(attributes, indent, "strokeWidth", formatNumber(basicStroke.getLineWidth() * Math.sqrt(xScaleSquared)));
+        if (basicStroke.getEndCap() != BasicStroke.CAP_BUTT) {
+            appendAttribute(attributes, indent, "strokeLineCap", basicStroke.getEndCap() == BasicStroke.CAP_ROUND ? "round" : "square");
+        }
+        if (basicStroke.getLineJoin() != BasicStroke.JOIN_MITER) {
+            appendAttribute(attributes, indent, "strokeLineJoin", basicStroke.getLineJoin() == BasicStroke.JOIN_ROUND ? "round" : "bevel");
+        } else if (basicStroke.getMiterLimit() != 4) {
+            appendAttribute(attributes, indent, "strokeMiterLimit", formatNumber(basicStroke.getMiterLimit()));
+        }
+        return true;
+    }
+
+    /**
+     * Counts the fills and strokes painted by a node and everything under it, stopping once there's more than one.
+     */
+    private static int countPaints(GraphicsNode node) {
+        if (node instanceof ShapeNode) {
+            return countPaints(((ShapeNode) node).getShapePainter());
+        }
+        if (!(node instanceof CompositeGraphicsNode)) {
+            return 1;
+        }
+
+        int paints = 0;
+        for (Object child : ((CompositeGraphicsNode) node).getChildren()) {
+            paints += countPaints((GraphicsNode) child);
+            if (paints > 1) {
+                break;
+            }
+        }
+        return paints;
+    }
+
+    private static int countPaints(ShapePainter shapePainter) {
+        if (shapePainter instanceof FillShapePainter) {
+            return ((FillShapePainter) shapePainter).getPaint() == null ? 0 : 1;
+        }
+        if (shapePainter instanceof StrokeShapePainter) {
+            return ((StrokeShapePainter) shapePainter).getPaint() == null ? 0 : 1;
+        }
+        if (shapePainter instanceof CompositeShapePainter) {
+            final CompositeShapePainter compositeShapePainter = (CompositeShapePainter) shapePainter;
+            int paints = 0;
+            for (int index = 0; index < compositeShapePainter.getShapePainterCount(); index++) {
+                paints += countPaints(compositeShapePainter.getShapePainter(index));
+            }
+            return paints;
+        }
+        return shapePainter == null ? 0 : 1;
+    }
+
+    private void addUnsupported(GraphicsNode node, String feature) {
+        final Element element = bridgeContext.getElement(node);
+        if (element == null) {
+            unsupportedFeatures.add("the document uses " + feature);
+            return;
+        }
+
+        final String id = element.getAttributeNS(null, "id");
+        unsupportedFeatures.add("<" + element.getLocalName() + (id.isEmpty() ? "" : " id=\"" + id + "\"") + "> uses " + feature);
+    }
+
+    private static void appendAttribute(StringBuilder attributes, String indent, String name, String value) {
+        attributes.append('\n').append(indent).append(INDENT).append("android:").append(name).append("=\"").append(value).append('"');
+    }
+
+    private static String toPathData(PathIterator pathIterator) {
+        final StringBuilder pathData = new StringBuilder();
+        final double[] coordinates = new double[6];
+        for (; !pathIterator.isDone(); pathIterator.next()) {
+            final int segmentType = pathIterator.currentSegment(coordinates);
+            switch (segmentType) {
+                case PathIterator.SEG_MOVETO:
+                    appendSegment(pathData, 'M', coordinates, 2);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    appendSegment(pathData, 'L', coordinates, 2);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    appendSegment(pathData, 'Q', coordinates, 4);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    appendSegment(pathData, 'C', coordinates, 6);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    pathData.append('Z');
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown path segment type " + segmentType);
+            }
+        }
+        return pathData.toString();
+    }
+
+    private static void appendSegment(StringBuilder pathData, char command, double[] coordinates, int count) {
+        pathData.append(command);
+        for (int index = 0; index < count; index++) {
+            if (index > 0) {
+                pathData.append(index % 2 == 0 ? ' ' : ',');
+            }
+            pathData.append(formatNumber(coordinates[index]));
+        }
+    }
+
+    /**
+     * Formats a number with at most three decimal places, which is far finer than a pixel at any density.
+     */
+    private static String formatNumber(double value) {
+        final BigDecimal rounded = BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP).stripTrailingZeros();
+        return rounded.signum() == 0 ? "0" : rounded.toPlainString();
+    }
+
+    /**
+     * The outcome of converting an svg, either the drawable or why there isn't one.
+     */
+    public static final class Conversion {
+
+        private final byte[] xml;
+        private final List<String> unsupportedFeatures;
+        private final int pathCount;
+
+        private Conversion(byte[] xml, List<String> unsupportedFeatures, int pathCount) {
+            this.xml = xml;
+            this.unsupportedFeatures = unsupportedFeatures;
+            this.pathCount = pathCount;
+        }
+
+        /**
+         * Gets the xml of the drawable.
+         *
+         * @return the xml, or empty if the svg uses something a drawable can't draw
+         */
+        public Optional<byte[]> getXml() {
+            return Optional.ofNullable(xml);
+        }
+
+        /**
+         * Gets each element that uses something a drawable can't draw, and what that is.
+         *
+         * @return the unsupported features, empty if the drawable was created
+         */
+        public List<String> getUnsupportedFeatures() {
+            return Collections.unmodifiableList(unsupportedFeatures);
+        }
+
+        /**
+         * Describes the unsupported features in one line, listing only the first few of them.
+         *
+         * @return the description
+         */
+        public String describeUnsupportedFeatures() {
+            final List<String> listed = unsupportedFeatures.subList(0, Math.min(unsupportedFeatures.size(), MAXIMUM_LISTED_FEATURES));
+            final int unlisted = unsupportedFeatures.size() - listed.size();
+            return String.join(", ", listed) + (unlisted > 0 ? " and " + unlisted + " more" : "");
+        }
+
+        public int getPathCount() {
+            return pathCount;
+        }
+    }
+}
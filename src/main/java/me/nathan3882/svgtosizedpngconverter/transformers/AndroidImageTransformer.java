@@ -2,13 +2,36 @@ package me.nathan3882.svgtosizedpngconverter.transformers;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FilenameUtils;
+
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
 import me.nathan3882.svgtosizedpngconverter.TransformerType;
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.output.AsyncOutputWriter;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+import me.nathan3882.svgtosizedpngconverter.svglogic.VectorDrawableConverter;
+import me.nathan3882.svgtosizedpngconverter.types.FileType;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+import me.nathan3882.svgtosizedpngconverter.types.VectorDrawableImageType;
 
 public class AndroidImageTransformer extends SvgImageTransformer {
+
+    private volatile boolean vectorOutputCreated;
+    private volatile String vectorFallback;
+
     public AndroidImageTransformer(File inputSvgFile, File outputDirectory) throws IOException {
         super(inputSvgFile, outputDirectory);
     }
 
+    public AndroidImageTransformer(File inputSvgFile, File outputDirectory, ConversionSettings settings) throws IOException {
+        super(inputSvgFile, outputDirectory, settings);
+    }
+
     /**
      * This gets the output directory for this specific {@link TransformerType}.
      * It Prepends {@link TransformerType#getPretty()}
@@ -22,6 +45,90 @@ public class AndroidImageTransformer extends SvgImageTransformer {
         return new File(outputDirectoryPath + File.separatorChar + pretty + File.separatorChar);
     }
 
+    /**
+     * Converts the input into a VectorDrawable with --vector-drawable, unless it uses something a VectorDrawable
+     * can't draw, in which case the reason is kept and every density is rendered instead.
+     */
+    @Override
+    protected Optional<DensityResult> createVectorOutput(AsyncOutputWriter asyncOutputWriter) {
+        this.vectorOutputCreated = false;
+        this.vectorFallback = null;
+
+        final Optional<File> vectorOutputFileOptional = getVectorOutputFile();
+        if (!vectorOutputFileOptional.isPresent()) {
+            return Optional.empty();
+        }
+        final File vectorOutputFile = vectorOutputFileOptional.get();
+        final VectorDrawableImageType imageType = VectorDrawableImageType.VECTOR;
+
+        final long startNanos = System.nanoTime();
+        final VectorDrawableConverter.Conversion conversion;
+        try {
+            conversion = VectorDrawableConverter.convert(SvgDocumentCache.getShared().get(new File(getInputSvgPath())), imageType.getWidth(), imageType.getHeight());
+        } catch (IOException | RuntimeException e) {
+            return fallBack("it could not be converted - " + e);
+        }
+        ConversionMetrics.getShared().recordStage(Stage.VECTOR_DRAWABLE, imageType, System.nanoTime() - startNanos);
+
+        final Optional<byte[]> xmlOptional = conversion.getXml();
+        if (!xmlOptional.isPresent()) {
+            return fallBack(conversion.describeUnsupportedFeatures());
+        }
+
+        this.vectorOutputCreated = true;
+        return Optional.of(writeVectorOutput(vectorOutputFile, xmlOptional.get(), imageType, writeDescription ->
+                getTransformerType().getPretty() + " vector drawable \"" + vectorOutputFile.getName() + "\" converted from " + conversion.getPathCount() +
+                        " paths & " + writeDescription + " @ \"" + vectorOutputFile.getPath() + "\".", asyncOutputWriter));
+    }
+
+    private Optional<DensityResult> fallBack(String reason) {
+        ConversionMetrics.getShared().recordVectorDrawableFallback();
+        this.vectorFallback = getTransformerType().getPretty() + " of \"" + getInputSvgFileName() + "\" can't be a vector drawable, so its pngs are rendered instead: " + reason + ".";
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the VectorDrawable file in drawable, named like the pngs so that it's the same resource.
+     */
+    @Override
+    public Optional<File> getVectorOutputFile() {
+        return getSettings().isVectorDrawable() ? Optional.of(getVectorDrawableFile()) : Optional.empty();
+    }
+
+    /**
+     * Gets the densities' svgs and pngs if a VectorDrawable was created, or the VectorDrawable if the densities were,
+     * including when --vector-drawable has been turned off since.
+     */
+    @Override
+    public List<File> getSupersededOutputFiles() {
+        final List<File> supersededFiles = new ArrayList<>();
+        if (!vectorOutputCreated) {
+            supersededFiles.add(getVectorDrawableFile());
+            return supersededFiles;
+        }
+
+        for (FilenameAttachableImageType imageType : getImageTypes()) {
+            final String savePath = getSavePath(getOutputDirectory().getPath() + File.separatorChar, getInputSvgFileName(), imageType);
+            supersededFiles.add(new File(savePath));
+            supersededFiles.add(new File(FilenameUtils.removeExtension(savePath) + FileType.PNG.getExtensionWithDot()));
+        }
+        return supersededFiles;
+    }
+
+    private File getVectorDrawableFile() {
+        final String savePath = getSavePath(getOutputDirectory().getPath() + File.separatorChar, getInputSvgFileName(), VectorDrawableImageType.VECTOR);
+        return new File(FilenameUtils.removeExtension(savePath) + FileType.XML.getExtensionWithDot());
+    }
+
+    @Override
+    public boolean hasVectorOutput() {
+        return vectorOutputCreated;
+    }
+
+    @Override
+    public Optional<String> getVectorFallback() {
+        return Optional.ofNullable(vectorFallback);
+    }
 
     @Override
     public TransformerType getTransformerType() {
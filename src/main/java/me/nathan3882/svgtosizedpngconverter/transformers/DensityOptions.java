@@ -0,0 +1,47 @@
+package me.nathan3882.svgtosizedpngconverter.transformers;
+
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+import me.nathan3882.svgtosizedpngconverter.output.AsyncOutputWriter;
+
+/**
+ * How the densities submitted by {@link SvgImageTransformer#submitDensities} are run, shared by every transformer of
+ * a {@link me.nathan3882.svgtosizedpngconverter.ConversionEngine}: where their outputs are written, the budget that
+ * admits them and the permits that bound how many render at once.
+ */
+public final class DensityOptions {
+
+    /**
+     * Writes each output on the thread that transformed it, and starts every density straight away.
+     */
+    public static final DensityOptions NONE = new DensityOptions(null, null, null);
+
+    private final AsyncOutputWriter asyncOutputWriter;
+    private final MemoryBudget memoryBudget;
+    private final Semaphore renderPermits;
+
+    /**
+     * @param asyncOutputWriter the writer to queue the outputs on, or null to write them on the executor's threads
+     * @param memoryBudget      the budget to admit each density under, or null to start them straight away
+     * @param renderPermits     the permits each density must hold while it renders and encodes, or null if the
+     *                          executor already bounds how many run at once
+     */
+    public DensityOptions(AsyncOutputWriter asyncOutputWriter, MemoryBudget memoryBudget, Semaphore renderPermits) {
+        this.asyncOutputWriter = asyncOutputWriter;
+        this.memoryBudget = memoryBudget;
+        this.renderPermits = renderPermits;
+    }
+
+    public Optional<AsyncOutputWriter> getAsyncOutputWriter() {
+        return Optional.ofNullable(asyncOutputWriter);
+    }
+
+    public Optional<MemoryBudget> getMemoryBudget() {
+        return Optional.ofNullable(memoryBudget);
+    }
+
+    public Optional<Semaphore> getRenderPermits() {
+        return Optional.ofNullable(renderPermits);
+    }
+}
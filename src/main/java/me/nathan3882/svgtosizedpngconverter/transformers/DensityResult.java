@@ -0,0 +1,183 @@
+package me.nathan3882.svgtosizedpngconverter.transformers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import javax.xml.transform.TransformerException;
+
+import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * The outcome of transforming a single {@link FilenameAttachableImageType}. Densities can be transformed on any
+ * thread, so their console messages are held here and only printed once results are collected in order.
+ * <p>
+ * With --writer-threads, a density's outputs may still be being written after it's been transformed. The messages
+ * about them are filled in from the writer threads, so everything that changes a result is synchronized, and
+ * {@link #awaitPendingWrites()} waits for those writes before the result is read.
+ */
+public class DensityResult {
+
+    private final FilenameAttachableImageType imageType;
+    private final List<String> messages = new ArrayList<>();
+    private boolean successful = true;
+    private long bytesWritten;
+    private Throwable failure;
+    private CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+
+    public DensityResult(FilenameAttachableImageType imageType) {
+        this.imageType = imageType;
+    }
+
+    public synchronized void addMessage(String message) {
+        messages.add(message);
+    }
+
+    /**
+     * Holds the place of a message that can only be written once an output has been, so that the messages stay in
+     * the order the outputs were created in.
+     *
+     * @return the slot to pass to {@link #setMessage}
+     */
+    public synchronized int reserveMessage() {
+        messages.add(null);
+        return messages.size() - 1;
+    }
+
+    public synchronized void setMessage(int slot, String message) {
+        messages.set(slot, message);
+    }
+
+    public synchronized void addBytesWritten(long bytes) {
+        this.bytesWritten += bytes;
+    }
+
+    public synchronized void markUnsuccessful() {
+        this.successful = false;
+    }
+
+    /**
+     * Adds an output that's queued to be written, which this result isn't complete without. If it can't be written,
+     * that's recorded as this result's failure.
+     *
+     * @param pendingWrite completes once the output has been written, and whatever follows from it is recorded here
+     */
+    public synchronized void addPendingWrite(CompletableFuture<?> pendingWrite) {
+        final CompletableFuture<Void> recordedWrite = pendingWrite.handle((ignored, throwable) -> {
+            if (throwable != null) {
+                recordWriteFailure(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+            return null;
+        });
+        this.written = written.thenCombine(recordedWrite, (first, second) -> null);
+    }
+
+    /**
+     * Runs an action once every output added so far with {@link #addPendingWrite} has been written or has failed, or
+     * straight away if there are none.
+     *
+     * @param action what to do once the outputs are written
+     */
+    public synchronized void whenWritten(Runnable action) {
+        this.written = written.thenRun(action);
+    }
+
+    /**
+     * Waits for every output added with {@link #addPendingWrite}, and every action added with {@link #whenWritten},
+     * to finish.
+     */
+    public void awaitPendingWrites() {
+        final CompletableFuture<Void> written;
+        synchronized (this) {
+            written = this.written;
+        }
+        written.join();
+    }
+
+    private synchronized void recordWriteFailure(Throwable throwable) {
+        if (failure == null) {
+            setFailure(throwable);
+        }
+    }
+
+    /**
+     * Records an exception that should be rethrown to whoever collects this result.
+     *
+     * @param failure the exception thrown while transforming this density
+     */
+    public synchronized void setFailure(Throwable failure) {
+        this.failure = failure;
+        markUnsuccessful();
+    }
+
+    /**
+     * Prints the held messages, then rethrows the recorded failure, if any, as the exception types
+     * {@link SvgImageTransformer#transform} declares.
+     */
+    public void printAndRethrow() throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        for (String message : getMessages()) {
+            System.out.println(message);
+        }
+        rethrow();
+    }
+
+    /**
+     * Rethrows the recorded failure, if any, as the exception types {@link SvgImageTransformer#transform} declares.
+     */
+    public void rethrow() throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        final Throwable failure = getFailure();
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof TransformerException) {
+            throw (TransformerException) failure;
+        }
+        if (failure instanceof DuplicateFileException) {
+            throw (DuplicateFileException) failure;
+        }
+        if (failure instanceof LackOfTransformationException) {
+            throw (LackOfTransformationException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    public FilenameAttachableImageType getImageType() {
+        return imageType;
+    }
+
+    /**
+     * Gets the messages to print, leaving out any whose output was never written.
+     *
+     * @return the messages, in order
+     */
+    public synchronized List<String> getMessages() {
+        return Collections.unmodifiableList(messages.stream().filter(message -> message != null).collect(Collectors.toList()));
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized boolean isSuccessful() {
+        return successful;
+    }
+
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+}
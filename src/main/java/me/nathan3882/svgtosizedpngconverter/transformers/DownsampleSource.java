@@ -0,0 +1,217 @@
+package me.nathan3882.svgtosizedpngconverter.transformers;
+
+import java.awt.image.BufferedImage;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.svglogic.RasterBufferPool;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * The render of a transformer's largest density, which its smaller densities are downsampled from. It's rendered by
+ * whichever density needs it first, without holding any lock, while any others that need it at the same time wait
+ * for it, and then shared by all of them.
+ * <p>
+ * The render outlives the density that rendered it, so it's held against the {@link MemoryBudget} from when it's
+ * started until every density of the transformer is done, when it's handed back to the {@link RasterBufferPool}.
+ */
+final class DownsampleSource {
+
+    private final String inputSvgPath;
+    private final FilenameAttachableImageType largestImageType;
+    private final MemoryBudget memoryBudget;
+    private final long imageBytes;
+
+    /**
+     * Guards the fields below, a lock rather than a monitor as it's taken by virtual threads too.
+     */
+    private final Lock lock = new ReentrantLock();
+    private FutureTask<BufferedImage> render;
+    private int remainingDensities;
+    private boolean released;
+
+    /**
+     * @param inputSvgPath the svg to render
+     * @param imageTypes   every density of the transformer, each of which must call {@link #densityDone} once it's done
+     * @param memoryBudget the budget to hold the render against, or null
+     */
+    DownsampleSource(String inputSvgPath, List<? extends FilenameAttachableImageType> imageTypes, MemoryBudget memoryBudget) {
+        this.inputSvgPath = inputSvgPath;
+        this.largestImageType = imageTypes.stream()
+                .max(Comparator.comparingLong(imageType -> (long) imageType.getWidth() * imageType.getHeight()))
+                .orElseThrow(() -> new IllegalArgumentException("There are no densities to downsample"));
+        this.memoryBudget = memoryBudget;
+        this.imageBytes = (long) largestImageType.getWidth() * largestImageType.getHeight() * Integer.BYTES;
+        this.remainingDensities = imageTypes.size();
+    }
+
+    /**
+     * Gets the render of the largest density, rendering it on this thread if no density has started to yet, or waiting
+     * for the density that has. A render that failed isn't retried.
+     *
+     * @return the rendered image, which must not be changed
+     */
+    BufferedImage getImage() throws LackOfTransformationException, InterruptedIOException {
+        final FutureTask<BufferedImage> startedRender;
+        boolean renderHere = false;
+        lock.lock();
+        try {
+            if (render == null) {
+                render = new FutureTask<>(() -> {
+                    try {
+                        return render();
+                    } catch (LackOfTransformationException e) {
+                        throw new RenderFailedException(e); //It's a Throwable, which a Callable can't throw.
+                    }
+                });
+                renderHere = true;
+            }
+            startedRender = render;
+        } finally {
+            lock.unlock();
+        }
+        if (renderHere) {
+            startedRender.run();
+        }
+        return await(startedRender);
+    }
+
+    /**
+     * Waits for the render of the largest density if another density is rendering it, so that a density can wait for
+     * it before it's admitted by the {@link MemoryBudget}, rather than after while holding memory it can't use yet. It
+     * doesn't start the render, as the density may find its png in the render cache.
+     */
+    void awaitStartedRender() throws InterruptedIOException {
+        final FutureTask<BufferedImage> startedRender;
+        lock.lock();
+        try {
+            startedRender = render;
+        } finally {
+            lock.unlock();
+        }
+        if (startedRender == null) {
+            return;
+        }
+        try {
+            await(startedRender);
+        } catch (LackOfTransformationException | RuntimeException e) {
+            //The density that needs it is told when it asks for the image.
+        }
+    }
+
+    private BufferedImage render() throws LackOfTransformationException {
+        //Held from the start, as the memory is allocated while it's rendered, and as it can't wait for admission here
+        //without the density that's rendering it, and is already admitted, possibly waiting on itself.
+        if (memoryBudget != null) {
+            memoryBudget.hold(imageBytes);
+        }
+
+        final SvgFile largestSvgFile = SvgFile.fromFile(inputSvgPath);
+        if (!largestSvgFile.resizeInMemory(largestImageType.getWidth(), largestImageType.getHeight())) {
+            throw new LackOfTransformationException(inputSvgPath + " could not be resized to its largest density to downsample from.");
+        }
+
+        final long startNanos = System.nanoTime();
+        final BufferedImage image = largestSvgFile.rasterize();
+        ConversionMetrics.getShared().recordStage(Stage.RASTERIZE, largestImageType, System.nanoTime() - startNanos);
+        return image;
+    }
+
+    private static BufferedImage await(Future<BufferedImage> startedRender) throws LackOfTransformationException, InterruptedIOException {
+        try {
+            return startedRender.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the largest density to downsample from.");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RenderFailedException) {
+                throw (LackOfTransformationException) cause.getCause();
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Records that one of the transformer's densities is done with the render, handing it back, and the memory held
+     * for it, once they all are.
+     */
+    void densityDone() {
+        final FutureTask<BufferedImage> finishedRender;
+        lock.lock();
+        try {
+            remainingDensities--;
+            if (remainingDensities > 0 || released || render == null) {
+                return;
+            }
+            released = true;
+            finishedRender = render;
+        } finally {
+            lock.unlock();
+        }
+
+        //Every density is done, so the render was either finished or failed.
+        try {
+            RasterBufferPool.getShared().release(finishedRender.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //It failed, so there's nothing to hand back but the memory.
+        }
+        if (memoryBudget != null) {
+            memoryBudget.releaseHeld(imageBytes);
+        }
+    }
+
+    /**
+     * Gets whether an image is the shared render of the largest density, which mustn't be handed back to the
+     * {@link RasterBufferPool} by any one density while others may still read it.
+     *
+     * @param candidate the image to check
+     * @return true if it's the render every density is downsampled from
+     */
+    boolean isSourceImage(BufferedImage candidate) {
+        final FutureTask<BufferedImage> startedRender;
+        lock.lock();
+        try {
+            startedRender = render;
+        } finally {
+            lock.unlock();
+        }
+        if (startedRender == null || !startedRender.isDone()) {
+            return false;
+        }
+        try {
+            return startedRender.get() == candidate;
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    FilenameAttachableImageType getLargestImageType() {
+        return largestImageType;
+    }
+
+    private static final class RenderFailedException extends Exception {
+
+        private RenderFailedException(LackOfTransformationException cause) {
+            super(cause);
+        }
+    }
+}
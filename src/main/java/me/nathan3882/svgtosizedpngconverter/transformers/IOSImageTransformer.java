@@ -2,6 +2,7 @@ package me.nathan3882.svgtosizedpngconverter.transformers;
 
 import java.io.File;
 import java.io.IOException;
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
 import me.nathan3882.svgtosizedpngconverter.TransformerType;
 
 public class IOSImageTransformer extends SvgImageTransformer {
@@ -10,6 +11,10 @@ public class IOSImageTransformer extends SvgImageTransformer {
         super(inputSvgFile, outputDirectory);
     }
 
+    public IOSImageTransformer(File inputSvgFile, File outputDirectory, ConversionSettings settings) throws IOException {
+        super(inputSvgFile, outputDirectory, settings);
+    }
+
     /**
      * This gets the output directory for this specific {@link TransformerType}.
      * It appends {@link TransformerType#getPretty()}
@@ -0,0 +1,285 @@
+package me.nathan3882.svgtosizedpngconverter.transformers;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.FileUtils;
+
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgComplexity;
+import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
+
+/**
+ * Admits densities to be transformed only while the memory they're estimated to need at their peak, added up, stays
+ * under a budget. A density that doesn't fit waits on its worker thread until enough of those already admitted have
+ * finished, so a large custom size or illustration lowers how many densities are transformed at once, instead of
+ * running out of heap halfway through a batch. Small icons never come close, so they still use every thread.
+ * <p>
+ * Densities are admitted in the order they ask, so a large one isn't kept waiting forever by smaller ones that keep
+ * fitting around it. One that's estimated to need more than the whole budget is admitted once nothing else is.
+ * <p>
+ * Memory that outlives the density that allocated it, such as renders kept for an atlas, is {@link #hold held} against
+ * the budget too. It's counted when deciding whether a density fits, but as it's already been allocated it never waits,
+ * and however much is held a density is still admitted once no other is running, so holding can't stop a batch.
+ */
+public class MemoryBudget {
+
+    /**
+     * The share of the maximum heap that's budgeted for densities unless --memory-budget says otherwise.
+     */
+    public static final double DEFAULT_HEAP_FRACTION = 0.5;
+
+    /**
+     * The most offscreen images a density is estimated to paint into at once, however many the svg has. They're
+     * painted one after another, and only those of nested groups and filters are alive at the same time.
+     */
+    private static final int MAXIMUM_OFFSCREEN_LAYERS = 8;
+
+    /**
+     * Roughly what each element costs in the resized copy of the document and the graphics tree built from it.
+     */
+    private static final long BYTES_PER_ELEMENT = 2 * 1024;
+
+    /**
+     * A lock rather than the monitor, as a virtual thread waiting on a monitor can't let go of its carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final long budgetBytes;
+    private long admittedBytes;
+    private long heldBytes;
+    private long nextTicket;
+    private long admittedTicket;
+
+    private long peakAdmittedBytes;
+    private long waits;
+    private long waitNanos;
+    private long oversized;
+
+    /**
+     * @param budgetBytes the most bytes that densities are estimated to need at once
+     */
+    public MemoryBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Gets the budget used unless --memory-budget is given, {@link #DEFAULT_HEAP_FRACTION} of the maximum heap.
+     *
+     * @return the default budget in bytes
+     */
+    public static long getDefaultBytes() {
+        return (long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION);
+    }
+
+    /**
+     * Estimates the most memory a density needs at once: the image it's rendered into, any offscreen images painted
+     * into along the way, the encoded png, and the resized copy of the document with its graphics tree.
+     *
+     * @param width         the width of the density in pixels
+     * @param height        the height of the density in pixels
+     * @param complexity    the complexity of the input svg
+     * @param renderedImages the number of images of the density's size alive at once, such as a downsampled image
+     *                       and the true render it's checked against, or 0 if no png is created
+     * @return the estimated peak in bytes
+     */
+    public static long estimateDensityBytes(int width, int height, SvgComplexity complexity, int renderedImages) {
+        final long documentBytes = estimateDocumentBytes(complexity);
+        if (renderedImages == 0) {
+            return documentBytes;
+        }
+
+        final long pixels = (long) width * height;
+        final long imageBytes = pixels * Integer.BYTES;
+        final int offscreenLayers = Math.min(complexity.getOffscreenLayers(), MAXIMUM_OFFSCREEN_LAYERS);
+        //A png is never much larger than its raw pixels, and the encoder's buffer starts at a byte per pixel.
+        final long encodedBytes = pixels * 2;
+        return imageBytes * (renderedImages + offscreenLayers) + encodedBytes + documentBytes;
+    }
+
+    /**
+     * Estimates the memory of a resized copy of a document and the graphics tree built from it, such as those kept by
+     * an idle rasterizer between densities.
+     *
+     * @param complexity the complexity of the input svg
+     * @return the estimate in bytes
+     */
+    public static long estimateDocumentBytes(SvgComplexity complexity) {
+        return complexity.getElements() * BYTES_PER_ELEMENT;
+    }
+
+    /**
+     * Waits until a density fits in the budget and admits it. It must be handed back with {@link #release} once it's
+     * done, whether it succeeded or not.
+     *
+     * @param estimatedBytes the estimated peak of the density
+     * @param imageType      the density, to record any time spent waiting against
+     * @return the bytes admitted, to hand back with {@link #release}
+     * @throws InterruptedIOException if this thread is interrupted while waiting, in which case nothing is admitted
+     */
+    public long admit(long estimatedBytes, FilenameAttachableImageType imageType) throws InterruptedIOException {
+        lock.lock();
+        try {
+            final long ticket = nextTicket++;
+            final long waitStartNanos = System.nanoTime();
+            boolean waited = false;
+
+            try {
+                //Wait for this density's turn, then for there to be room, or for nothing else to be running.
+                while (ticket != admittedTicket || (admittedBytes > 0 && admittedBytes + heldBytes + estimatedBytes > budgetBytes)) {
+                    waited = true;
+                    changed.await();
+                }
+            } catch (InterruptedException e) {
+                //Skip this ticket, so the densities behind it aren't stuck waiting for it.
+                skipTicket(ticket);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory to transform a density.");
+            }
+
+            admittedTicket++;
+            admittedBytes += estimatedBytes;
+            peakAdmittedBytes = Math.max(peakAdmittedBytes, admittedBytes + heldBytes);
+            if (estimatedBytes > budgetBytes) {
+                oversized++;
+            }
+            if (waited) {
+                final long waitedNanos = System.nanoTime() - waitStartNanos;
+                waits++;
+                waitNanos += waitedNanos;
+                ConversionMetrics.getShared().recordStage(Stage.ADMISSION_WAIT, imageType, waitedNanos);
+            }
+            ConversionMetrics.getShared().recordAdmittedBytes(admittedBytes + heldBytes);
+            changed.signalAll(); //The next ticket may fit too.
+            return estimatedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void skipTicket(long ticket) {
+        if (ticket == admittedTicket) {
+            admittedTicket++;
+            changed.signalAll();
+            return;
+        }
+        //A ticket further back can't be skipped yet, so wait without being interrupted for its turn to pass it on.
+        while (ticket != admittedTicket) {
+            changed.awaitUninterruptibly();
+        }
+        admittedTicket++;
+        changed.signalAll();
+    }
+
+    /**
+     * Hands back the memory of a density that's done.
+     *
+     * @param admittedBytes the bytes returned by {@link #admit}
+     */
+    public void release(long admittedBytes) {
+        lock.lock();
+        try {
+            this.admittedBytes -= admittedBytes;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts memory that's already been allocated against the budget, until it's handed back with
+     * {@link #releaseHeld}, without waiting for it to fit.
+     *
+     * @param bytes the bytes being held
+     */
+    public void hold(long bytes) {
+        lock.lock();
+        try {
+            heldBytes += bytes;
+            peakAdmittedBytes = Math.max(peakAdmittedBytes, admittedBytes + heldBytes);
+            ConversionMetrics.getShared().recordAdmittedBytes(admittedBytes + heldBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands back memory that was {@link #hold held}.
+     *
+     * @param bytes the bytes that were held
+     */
+    public void releaseHeld(long bytes) {
+        lock.lock();
+        try {
+            heldBytes -= bytes;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getPeakAdmittedBytes() {
+        lock.lock();
+        try {
+            return peakAdmittedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of densities that had to wait to be admitted.
+     *
+     * @return the number of waits
+     */
+    public long getWaits() {
+        lock.lock();
+        try {
+            return waits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWaitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of densities estimated to need more than the whole budget, which were each transformed alone.
+     *
+     * @return the number of oversized densities
+     */
+    public long getOversized() {
+        lock.lock();
+        try {
+            return oversized;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "Memory budget: " + FileUtils.byteCountToDisplaySize(budgetBytes) + ", peaked at " + FileUtils.byteCountToDisplaySize(peakAdmittedBytes) +
+                    " admitted, densities waited " + waits + " times for " + getWaitMillis() + " ms, " + oversized + " larger than the budget were transformed alone.";
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,24 +1,52 @@
 package me.nathan3882.svgtosizedpngconverter.transformers;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 import javax.xml.transform.TransformerException;
 
 import org.apache.batik.anim.dom.SVGDOMImplementation;
-import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeException;
 import org.apache.commons.io.FilenameUtils;
 import org.w3c.dom.DOMImplementation;
 
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
+import me.nathan3882.svgtosizedpngconverter.ConverterVersion;
 import me.nathan3882.svgtosizedpngconverter.TransformerType;
+import me.nathan3882.svgtosizedpngconverter.atlas.TextureAtlas;
+import me.nathan3882.svgtosizedpngconverter.cache.RenderCache;
 import me.nathan3882.svgtosizedpngconverter.exceptions.DuplicateFileException;
 import me.nathan3882.svgtosizedpngconverter.exceptions.LackOfTransformationException;
+import me.nathan3882.svgtosizedpngconverter.metrics.ConversionMetrics;
+import me.nathan3882.svgtosizedpngconverter.metrics.Stage;
+import me.nathan3882.svgtosizedpngconverter.output.AsyncOutputWriter;
+import me.nathan3882.svgtosizedpngconverter.output.OutputFiles;
+import me.nathan3882.svgtosizedpngconverter.svglogic.ParsedSvg;
+import me.nathan3882.svgtosizedpngconverter.svglogic.RasterBufferPool;
+import me.nathan3882.svgtosizedpngconverter.svglogic.RasterDownsampler;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgComplexity;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
 import me.nathan3882.svgtosizedpngconverter.svglogic.SvgFile;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgRootRewriter;
 import me.nathan3882.svgtosizedpngconverter.types.AndroidCompatibleImageType;
+import me.nathan3882.svgtosizedpngconverter.types.FileType;
 import me.nathan3882.svgtosizedpngconverter.types.FilenameAttachableImageType;
 import me.nathan3882.svgtosizedpngconverter.types.IOSCompatibleImageType;
 
@@ -27,6 +55,11 @@ import me.nathan3882.svgtosizedpngconverter.types.IOSCompatibleImageType;
  */
 public abstract class SvgImageTransformer implements Transformable {
 
+    /**
+     * The directory inside the output directory that --atlas sheets are written to.
+     */
+    public static final String ATLAS_DIRECTORY_NAME = "atlas";
+
     private static final DOMImplementation SVG_DOM_IMPLEMENTATION;
 
     static {
@@ -37,20 +70,127 @@ public abstract class SvgImageTransformer implements Transformable {
     private final String inputSvgFileName;
     private final String outputDirectoryPath;
     private final String inputSvgPath;
+    private final ConversionSettings settings;
 
     public SvgImageTransformer(File inputSvgFile, File outputDirectoryPath) throws IOException {
+        this(inputSvgFile, outputDirectoryPath, new ConversionSettings());
+    }
+
+    public SvgImageTransformer(File inputSvgFile, File outputDirectoryPath, ConversionSettings settings) throws IOException {
         this.inputSvgFile = inputSvgFile;
         this.inputSvgFileName = inputSvgFile.getName();
         this.inputSvgPath = inputSvgFile.getPath();
         this.outputDirectoryPath = outputDirectoryPath.getPath();
+        this.settings = settings;
     }
 
     /**
      * This function should be overridden to transform the {@link #inputSvgPath} svg file into
-     * png files that are placed into the overridden abstract function {@link #getOutputDirectory}
+     * png files that are placed into the overridden abstract function {@link #getOutputDirectory}.
+     * The densities are transformed on an executor of the {@link ConversionSettings#getExecutionStrategy()}.
      */
     public boolean transform(boolean isPngAlso) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        final ExecutorService executorService = getSettings().getExecutionStrategy().createExecutorService(getSettings().getThreads());
+        try {
+            return transform(isPngAlso, executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Transforms each density as its own task on the given executor. The console output and the outcome are collected
+     * in the order of the densities, no matter which finishes first.
+     *
+     * @param isPngAlso       whether png images should be created
+     * @param executorService the executor to submit each density to
+     * @return true if every density was transformed successfully
+     */
+    public boolean transform(boolean isPngAlso, ExecutorService executorService) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        return isSuccessful(collectResults(submitDensities(isPngAlso, executorService, DensityOptions.NONE), true));
+    }
+
+    /**
+     * Prepares the output directory, then submits every density of this transformer to the given executor without
+     * waiting for any of them, so that they can be scheduled alongside the densities of other transformers. Outputs
+     * queued on the options' writer aren't written until {@link #collectResults} has waited for them.
+     *
+     * @param isPngAlso       whether png images should be created
+     * @param executorService the executor to submit each density to
+     * @param densityOptions  where the outputs are written, and what bounds how many densities run at once
+     * @return the pending results, in density order
+     */
+    public List<Future<DensityResult>> submitDensities(boolean isPngAlso, ExecutorService executorService, DensityOptions densityOptions) throws IOException {
+        final String outputDirPath = prepareOutputDirectory();
+
+        final Optional<DensityResult> vectorResult = createVectorOutput(densityOptions.getAsyncOutputWriter().orElse(null));
+        if (vectorResult.isPresent()) {
+            return Collections.<Future<DensityResult>>singletonList(CompletableFuture.completedFuture(vectorResult.get()));
+        }
+
+        final MemoryBudget memoryBudget = densityOptions.getMemoryBudget().orElse(null);
+        final boolean downsample = isPngAlso && getSettings().isDownsample();
+        final ParsedSvg parsedSvg = memoryBudget != null || downsample ? SvgDocumentCache.getShared().get(new File(getInputSvgPath())) : null;
+
+        //Without a viewBox every density is painted at the svg's own scale, so a smaller one isn't a downsample of the largest.
+        final DownsampleSource downsampleSource = downsample && parsedSvg.hasViewBox() ?
+                new DownsampleSource(getInputSvgPath(), getImageTypes(), memoryBudget) : null;
+
+        final SvgComplexity complexity = memoryBudget == null ? null : parsedSvg.getComplexity();
 
+        final List<Future<DensityResult>> densityFutures = new ArrayList<>();
+        for (FilenameAttachableImageType imageType : getImageTypes()) {
+            final long estimatedBytes = complexity == null ? 0 : MemoryBudget.estimateDensityBytes(imageType.getWidth(), imageType.getHeight(), complexity, getRenderedImages(isPngAlso));
+            densityFutures.add(executorService.submit(() -> transformDensity(outputDirPath, imageType, isPngAlso, downsampleSource, densityOptions, estimatedBytes)));
+        }
+        return densityFutures;
+    }
+
+    /**
+     * Gets the number of images of a density's size that are alive at once while it's transformed.
+     */
+    private int getRenderedImages(boolean isPngAlso) {
+        if (!isPngAlso) {
+            return 0;
+        }
+        //A downsampled png that's checked is compared against a true render of the same size.
+        return getSettings().isDownsample() && getSettings().getDownsampleMaximumDelta() != ConversionSettings.UNCHECKED_DOWNSAMPLE ? 2 : 1;
+    }
+
+    /**
+     * Waits for each of the given densities in turn, and for their outputs to be written, printing their messages in
+     * that order if asked to.
+     *
+     * @param densityFutures the pending results from {@link #submitDensities}
+     * @param printMessages  whether the messages of each density should be printed
+     * @return the results, in density order
+     */
+    public static List<DensityResult> collectResults(List<Future<DensityResult>> densityFutures, boolean printMessages) throws IOException, TransformerException, DuplicateFileException, LackOfTransformationException {
+        final List<DensityResult> densityResults = new ArrayList<>();
+        for (Future<DensityResult> densityFuture : densityFutures) {
+            final DensityResult densityResult = getUninterruptibly(densityFuture);
+            densityResult.awaitPendingWrites();
+
+            if (printMessages) {
+                densityResult.printAndRethrow();
+            } else {
+                densityResult.rethrow();
+            }
+            densityResults.add(densityResult);
+        }
+        return densityResults;
+    }
+
+    public static boolean isSuccessful(List<DensityResult> densityResults) {
+        return densityResults.stream().allMatch(DensityResult::isSuccessful);
+    }
+
+    /**
+     * Creates the directory that this transformer outputs to, if it doesn't exist already.
+     *
+     * @return the output directory path, ending with a separator
+     */
+    protected String prepareOutputDirectory() throws IOException {
         String outputDirPath = getOutputDirectory().getPath() + File.separatorChar;
 
         try {
@@ -60,12 +200,188 @@ public abstract class SvgImageTransformer implements Transformable {
         } catch (FileAlreadyExistsException e) {
             //The directory @ outputDirPath already exists... goody.
         }
+        return outputDirPath;
+    }
+
+    public List<? extends FilenameAttachableImageType> getImageTypes() {
+        return getTransformerType() == TransformerType.ANDROID ? AndroidCompatibleImageType.asList() : IOSCompatibleImageType.asList();
+    }
+
+    /**
+     * Gets every file that transforming the given density creates.
+     *
+     * @param imageType the density
+     * @param isPngAlso whether png images are created
+     * @return the output files of that density
+     */
+    public List<File> getOutputFiles(FilenameAttachableImageType imageType, boolean isPngAlso) {
+        final String savePath = getSavePath(getOutputDirectory().getPath() + File.separatorChar, getInputSvgFileName(), imageType);
+
+        final List<File> outputFiles = new ArrayList<>();
+        if (getSettings().isSvgAlso()) {
+            outputFiles.add(new File(savePath));
+        }
+        if (isPngAlso && !getSettings().getTextureAtlas().isPresent()) {
+            outputFiles.add(new File(FilenameUtils.removeExtension(savePath) + FileType.PNG.getExtensionWithDot()));
+        }
+        return outputFiles;
+    }
+
+    /**
+     * Gets the files of a density's --atlas sheets, by their index.
+     *
+     * @param imageType the density
+     * @return the sheet file of each index
+     */
+    public IntFunction<File> getAtlasSheetFiles(FilenameAttachableImageType imageType) {
+        final String atlasDirectoryPath = getOutputDirectory().getPath() + File.separatorChar + ATLAS_DIRECTORY_NAME + File.separatorChar;
+        return index -> new File(getSavePath(atlasDirectoryPath, ATLAS_DIRECTORY_NAME + "-" + index + FileType.PNG.getExtensionWithDot(), imageType));
+    }
+
+    /**
+     * Creates a single output that stands in for every density, if this type has one and the input can be expressed
+     * as it, in which case no density is transformed.
+     *
+     * @param asyncOutputWriter the writer to queue the output on, or null to write it straight away
+     * @return the result of creating it, or empty if the densities should be transformed as usual
+     */
+    protected Optional<DensityResult> createVectorOutput(AsyncOutputWriter asyncOutputWriter) {
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the file that a single output standing in for every density is written to, if this type creates one.
+     *
+     * @return the vector output file, or empty if every density is always transformed
+     */
+    public Optional<File> getVectorOutputFile() {
+        return Optional.empty();
+    }
+
+    /**
+     * Gets whether the last {@link #submitDensities} created a vector output instead of transforming the densities.
+     *
+     * @return true if the vector output was created
+     */
+    public boolean hasVectorOutput() {
+        return false;
+    }
+
+    /**
+     * Gets the files of the kind of output the last {@link #submitDensities} didn't create, a vector output or the
+     * densities, which an earlier conversion may have left behind. Android would pick a stale density's png over the
+     * VectorDrawable of the same name, so they're deleted once the new output has been created.
+     *
+     * @return the files that would be superseded, whether or not they exist
+     */
+    public List<File> getSupersededOutputFiles() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Gets why the last {@link #submitDensities} transformed the densities rather than creating a vector output.
+     *
+     * @return the reason, or empty if there's no vector output to fall back from
+     */
+    public Optional<String> getVectorFallback() {
+        return Optional.empty();
+    }
+
+    /**
+     * Writes a vector output, recording it in the {@link ConversionMetrics} like a density.
+     *
+     * @param outputFile        the file to write
+     * @param content           the encoded output
+     * @param imageType         the type it stands in for the densities as
+     * @param message           creates the message about the output from how it came to be
+     * @param asyncOutputWriter the writer to queue the output on, or null to write it straight away
+     * @return the result, holding the message to print and any failure
+     */
+    protected DensityResult writeVectorOutput(File outputFile, byte[] content, FilenameAttachableImageType imageType, Function<String, String> message, AsyncOutputWriter asyncOutputWriter) {
+        final long startNanos = System.nanoTime();
+        final DensityResult result = new DensityResult(imageType);
+        try {
+            writeOutput(outputFile, content, imageType, result, asyncOutputWriter, message, null);
+        } catch (Throwable throwable) {
+            result.setFailure(throwable);
+        }
+
+        result.whenWritten(() -> {
+            final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+            conversionMetrics.recordStage(Stage.DENSITY, imageType, System.nanoTime() - startNanos);
+            conversionMetrics.recordDensity(imageType, result.isSuccessful(), result.getBytesWritten());
+        });
+        return result;
+    }
+
+    /**
+     * Transforms the input svg into a single density, recording how long it took in the {@link ConversionMetrics}.
+     * This is safe to call from several threads at once.
+     *
+     * @return the result, holding the messages to print and any failure
+     */
+    protected DensityResult transformDensity(String outputDirPath, FilenameAttachableImageType imageType, boolean isPngAlso) {
+        return transformDensity(outputDirPath, imageType, isPngAlso, null, DensityOptions.NONE, 0);
+    }
+
+    private DensityResult transformDensity(String outputDirPath, FilenameAttachableImageType imageType, boolean isPngAlso, DownsampleSource downsampleSource,
+                                           DensityOptions densityOptions, long estimatedBytes) {
+        final long startNanos = System.nanoTime();
+        final Optional<MemoryBudget> memoryBudgetOptional = densityOptions.getMemoryBudget();
+        final DensityResult result;
+        try {
+            if (memoryBudgetOptional.isPresent()) {
+                result = createAdmittedDensity(outputDirPath, imageType, isPngAlso, downsampleSource, densityOptions, memoryBudgetOptional.get(), estimatedBytes);
+            } else {
+                result = createDensity(outputDirPath, imageType, isPngAlso, downsampleSource, densityOptions);
+            }
+        } finally {
+            if (downsampleSource != null) {
+                downsampleSource.densityDone();
+            }
+        }
 
-        List<? extends FilenameAttachableImageType> imageTypes =
-                getTransformerType() == TransformerType.ANDROID ? AndroidCompatibleImageType.asList() : IOSCompatibleImageType.asList();
+        //Queued outputs are part of the density too, so it's only recorded once they've been written.
+        result.whenWritten(() -> {
+            final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+            conversionMetrics.recordStage(Stage.DENSITY, imageType, System.nanoTime() - startNanos);
+            conversionMetrics.recordDensity(imageType, result.isSuccessful(), result.getBytesWritten());
+        });
+        return result;
+    }
 
-        for (FilenameAttachableImageType imageType : imageTypes) {
+    /**
+     * Creates a density once the memory budget admits it, handing the memory back as soon as its outputs are encoded.
+     * Outputs queued on the writer are held by the writer's bounded queue rather than the budget.
+     */
+    private DensityResult createAdmittedDensity(String outputDirPath, FilenameAttachableImageType imageType, boolean isPngAlso, DownsampleSource downsampleSource,
+                                                DensityOptions densityOptions, MemoryBudget memoryBudget, long estimatedBytes) {
+        final long admittedBytes;
+        try {
+            if (downsampleSource != null) {
+                downsampleSource.awaitStartedRender();
+            }
+            admittedBytes = memoryBudget.admit(estimatedBytes, imageType);
+        } catch (InterruptedIOException e) {
+            final DensityResult result = new DensityResult(imageType);
+            result.setFailure(e);
+            return result;
+        }
 
+        try {
+            return createDensity(outputDirPath, imageType, isPngAlso, downsampleSource, densityOptions);
+        } finally {
+            memoryBudget.release(admittedBytes);
+        }
+    }
+
+    private DensityResult createDensity(String outputDirPath, FilenameAttachableImageType imageType, boolean isPngAlso, DownsampleSource downsampleSource,
+                                        DensityOptions densityOptions) {
+        final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+        final AsyncOutputWriter asyncOutputWriter = densityOptions.getAsyncOutputWriter().orElse(null);
+        final DensityResult result = new DensityResult(imageType);
+
+        try {
             String inputSvgFileName = getInputSvgFileName();
             String savePath = this.getSavePath(outputDirPath, inputSvgFileName, imageType);
             File outputLocation = new File(savePath);
@@ -78,29 +394,261 @@ public abstract class SvgImageTransformer implements Transformable {
             final boolean wasResizeSuccessful = baseSvgFile.resizeInMemory(width, height);
 
             if (!wasResizeSuccessful) {
-                System.out.println("ERROR: " + getTransformerType().getPretty() + " file could not be resized to" +
+                result.addMessage("ERROR: " + getTransformerType().getPretty() + " file could not be resized to" +
                         " " + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + " due to an IOException :(");
-                continue;
+                return result;
             }
 
-            String outputPath = baseSvgFile.saveTo(outputLocation, true);
-
-            System.out.println(getTransformerType().getPretty() + " file \"" + FilenameUtils.getName(outputPath) + "\" resized to" +
-                    " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & created @ \"" + outputPath + "\".");
+            if (getSettings().isSvgAlso() && getSettings().isStreamSvg()) {
+                final long stageStartNanos = System.nanoTime();
+                final OutputFiles.WriteOutcome writeOutcome = SvgRootRewriter.rewrite(new File(getInputSvgPath()), outputLocation, width, height);
+                if (writeOutcome != OutputFiles.WriteOutcome.ABANDONED) {
+                    conversionMetrics.recordStage(Stage.SVG_SERIALIZE, imageType, System.nanoTime() - stageStartNanos);
+
+                    result.addMessage(getTransformerType().getPretty() + " file \"" + outputLocation.getName() + "\" resized to" +
+                            " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & " + recordWrite(writeOutcome, outputLocation, imageType, result) +
+                            " @ \"" + outputLocation.getPath() + "\".");
+                } else {
+                    result.addMessage(getTransformerType().getPretty() + " file \"" + outputLocation.getName() + "\" can't be streamed, so its document will be serialized instead.");
+                    saveResizedDocument(baseSvgFile, outputLocation, imageType, result, asyncOutputWriter);
+                }
+            } else if (getSettings().isSvgAlso()) {
+                saveResizedDocument(baseSvgFile, outputLocation, imageType, result, asyncOutputWriter);
+            }
 
             if (!isPngAlso) {
-                continue;
+                return result;
+            }
+
+            //Strip the svg extension, then append a ".png"
+            final File outputPngFile = new File(FilenameUtils.removeExtension(savePath) + FileType.PNG.getExtensionWithDot());
+
+            //An atlas packs the rendered image itself, so there's nothing for the render cache to link.
+            final Optional<TextureAtlas> textureAtlasOptional = getSettings().getTextureAtlas();
+            final Optional<RenderCache> renderCacheOptional = textureAtlasOptional.isPresent() ? Optional.empty() : getSettings().getRenderCache();
+            final Optional<String> renderCacheContentHash = renderCacheOptional.isPresent() ?
+                    baseSvgFile.getParsedSvg().getRenderCacheContentHash() : Optional.empty();
+            final String renderCacheKey = renderCacheContentHash.map(contentHash -> RenderCache.createKey(contentHash,
+                    width, height, getSettings().getPngFingerprint(), ConverterVersion.get())).orElse(null);
+
+            final Optional<OutputFiles.WriteOutcome> fetchOutcome = renderCacheKey == null ? Optional.empty() :
+                    renderCacheOptional.get().fetch(renderCacheKey, outputPngFile);
+            if (fetchOutcome.isPresent()) {
+                conversionMetrics.recordRenderCacheHit(imageType);
+                result.addMessage(getTransformerType().getPretty() + " png \"" + outputPngFile.getName() + "\" found in the render cache at" +
+                        " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & " + recordWrite(fetchOutcome.get(), outputPngFile, imageType, result) +
+                        " @ \"" + outputPngFile.getPath() + "\".");
+                return result;
             }
 
             try {
-                baseSvgFile.createPngAlternative();
-                System.out.print("Created a png alternative in the same directory also!");
-            } catch (TranscoderException e) {
-                return false;
+                final byte[] pngBytes;
+                acquireRenderPermit(densityOptions);
+                try {
+                    final BufferedImage pngImage = downsampleSource == null ? rasterize(baseSvgFile, imageType) :
+                            createDownsampledImage(baseSvgFile, imageType, downsampleSource, result);
+
+                    if (textureAtlasOptional.isPresent()) {
+                        try {
+                            textureAtlasOptional.get().add(getAtlasSheetFiles(imageType), imageType, FilenameUtils.removeExtension(inputSvgFileName), pngImage, densityOptions.getMemoryBudget().orElse(null));
+                        } finally {
+                            releaseRender(pngImage, downsampleSource);
+                        }
+                        result.addMessage(getTransformerType().getPretty() + " png of \"" + inputSvgFileName + "\" rendered at" +
+                                " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & added to the atlas.");
+                        return result;
+                    }
+
+                    final long stageStartNanos = System.nanoTime();
+                    try {
+                        pngBytes = SvgFile.encodePng(pngImage, getSettings().getPngEncoder());
+                    } finally {
+                        releaseRender(pngImage, downsampleSource);
+                    }
+                    conversionMetrics.recordStage(Stage.PNG_ENCODE, imageType, System.nanoTime() - stageStartNanos);
+                } finally {
+                    densityOptions.getRenderPermits().ifPresent(Semaphore::release);
+                }
+
+                //The png can only be stored in the render cache once it's been written.
+                final Runnable storeInRenderCache = renderCacheKey == null ? null : () -> renderCacheOptional.get().store(renderCacheKey, outputPngFile);
+                writeOutput(outputPngFile, pngBytes, imageType, result, asyncOutputWriter, writeDescription ->
+                        getTransformerType().getPretty() + " png \"" + outputPngFile.getName() + "\" rendered at" +
+                                " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & " + writeDescription +
+                                " @ \"" + outputPngFile.getPath() + "\".", storeInRenderCache);
+            } catch (BridgeException e) {
+                //The svg could not be built into a graphics tree, so no size of it can be rendered.
+                e.printStackTrace();
+                result.markUnsuccessful();
             }
+        } catch (Throwable throwable) {
+            result.setFailure(throwable);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a permit to render and encode, if the executor doesn't bound how many densities do so at once itself.
+     */
+    private static void acquireRenderPermit(DensityOptions densityOptions) throws InterruptedIOException {
+        final Optional<Semaphore> renderPermitsOptional = densityOptions.getRenderPermits();
+        if (!renderPermitsOptional.isPresent()) {
+            return;
+        }
+        try {
+            renderPermitsOptional.get().acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a permit to render a density.");
+        }
+    }
 
+    /**
+     * Hands a density's render back to the {@link RasterBufferPool}, unless it's the largest render, which is shared
+     * by every density downsampled from it.
+     */
+    private static void releaseRender(BufferedImage pngImage, DownsampleSource downsampleSource) {
+        if (downsampleSource == null || !downsampleSource.isSourceImage(pngImage)) {
+            RasterBufferPool.getShared().release(pngImage);
         }
-        return true;
+    }
+
+    /**
+     * Waits for a density to finish, even if this thread is interrupted while doing so.
+     */
+    private static DensityResult getUninterruptibly(Future<DensityResult> densityFuture) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return densityFuture.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    //transformDensity catches everything itself, so this can't really happen.
+                    final DensityResult failedResult = new DensityResult(null);
+                    failedResult.setFailure(e.getCause());
+                    return failedResult;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static BufferedImage rasterize(SvgFile baseSvgFile, FilenameAttachableImageType imageType) throws LackOfTransformationException {
+        final long stageStartNanos = System.nanoTime();
+        final BufferedImage pngImage = baseSvgFile.rasterize();
+        ConversionMetrics.getShared().recordStage(Stage.RASTERIZE, imageType, System.nanoTime() - stageStartNanos);
+        return pngImage;
+    }
+
+    /**
+     * Creates a density's png image by shrinking the render of the largest density. If a maximum delta is set, the
+     * density is also rendered, and that render is used instead if the two differ by too much.
+     */
+    private BufferedImage createDownsampledImage(SvgFile baseSvgFile, FilenameAttachableImageType imageType, DownsampleSource downsampleSource, DensityResult result)
+            throws LackOfTransformationException, InterruptedIOException {
+        final BufferedImage sourceImage = downsampleSource.getImage();
+        if (imageType == downsampleSource.getLargestImageType()) {
+            return sourceImage;
+        }
+        if (imageType.getWidth() > sourceImage.getWidth() || imageType.getHeight() > sourceImage.getHeight()) {
+            return rasterize(baseSvgFile, imageType); //It's wider or taller than the largest density, so it can't be shrunk from it.
+        }
+
+        final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+        final long stageStartNanos = System.nanoTime();
+        final BufferedImage downsampledImage = RasterDownsampler.downsample(sourceImage, imageType.getWidth(), imageType.getHeight());
+        conversionMetrics.recordStage(Stage.DOWNSAMPLE, imageType, System.nanoTime() - stageStartNanos);
+
+        final int maximumDelta = getSettings().getDownsampleMaximumDelta();
+        if (maximumDelta == ConversionSettings.UNCHECKED_DOWNSAMPLE) {
+            return downsampledImage;
+        }
+
+        final BufferedImage renderedImage = rasterize(baseSvgFile, imageType);
+        final int delta = RasterDownsampler.maximumChannelDelta(downsampledImage, renderedImage);
+        final boolean rejected = delta > maximumDelta;
+        conversionMetrics.recordDownsampleDelta(imageType, delta, rejected);
+
+        final String sourceSize = sourceImage.getWidth() + "x" + sourceImage.getHeight();
+        if (rejected) {
+            RasterBufferPool.getShared().release(downsampledImage);
+            result.addMessage(getTransformerType().getPretty() + " png at " + imageType.getWidth() + "x" + imageType.getHeight() + " downsampled from " + sourceSize + " differs from its true render by " + delta +
+                    ", more than the maximum of " + maximumDelta + ", so the true render is used.");
+            return renderedImage;
+        }
+        RasterBufferPool.getShared().release(renderedImage);
+        result.addMessage(getTransformerType().getPretty() + " png at " + imageType.getWidth() + "x" + imageType.getHeight() + " downsampled from " + sourceSize + " differs from its true render by at most " + delta + ".");
+        return downsampledImage;
+    }
+
+    /**
+     * Writes the resized svg file by serializing a resized copy of the parsed document.
+     */
+    private void saveResizedDocument(SvgFile baseSvgFile, File outputLocation, FilenameAttachableImageType imageType, DensityResult result, AsyncOutputWriter asyncOutputWriter) throws LackOfTransformationException, TransformerException, IOException {
+        final ConversionMetrics conversionMetrics = ConversionMetrics.getShared();
+
+        long stageStartNanos = System.nanoTime();
+        final SVGOMDocument resizedDocument = baseSvgFile.getResizedDocument().orElseThrow(() ->
+                new LackOfTransformationException(getInputSvgPath() + " could not be parsed, so there's no document to resize."));
+        conversionMetrics.recordStage(Stage.RESIZE, imageType, System.nanoTime() - stageStartNanos);
+
+        stageStartNanos = System.nanoTime();
+        final byte[] svgBytes = SvgFile.serialize(resizedDocument);
+        conversionMetrics.recordStage(Stage.SVG_SERIALIZE, imageType, System.nanoTime() - stageStartNanos);
+
+        writeOutput(outputLocation, svgBytes, imageType, result, asyncOutputWriter, writeDescription ->
+                getTransformerType().getPretty() + " file \"" + outputLocation.getName() + "\" resized to" +
+                        " \"" + baseSvgFile.getHeight() + "x" + baseSvgFile.getWidth() + "\" & " + writeDescription +
+                        " @ \"" + outputLocation.getPath() + "\".", null);
+    }
+
+    /**
+     * Writes an encoded output, either straight away or by queueing it on the writer, in which case its message and
+     * whatever follows the write are filled in once it's been written.
+     *
+     * @param message      creates the message about the output from how it came to be
+     * @param afterWritten run once the output has been written, or null
+     */
+    private static void writeOutput(File outputFile, byte[] content, FilenameAttachableImageType imageType, DensityResult result, AsyncOutputWriter asyncOutputWriter,
+                                    Function<String, String> message, Runnable afterWritten) throws IOException {
+        if (asyncOutputWriter == null) {
+            final long stageStartNanos = System.nanoTime();
+            final OutputFiles.WriteOutcome writeOutcome = OutputFiles.write(outputFile.toPath(), content);
+            ConversionMetrics.getShared().recordStage(Stage.WRITE, imageType, System.nanoTime() - stageStartNanos);
+
+            result.addMessage(message.apply(recordWrite(writeOutcome, outputFile, imageType, result)));
+            if (afterWritten != null) {
+                afterWritten.run();
+            }
+            return;
+        }
+
+        final int messageSlot = result.reserveMessage();
+        result.addPendingWrite(asyncOutputWriter.submit(outputFile.toPath(), content, imageType).thenAccept(writeOutcome -> {
+            result.setMessage(messageSlot, message.apply(recordWrite(writeOutcome, outputFile, imageType, result)));
+            if (afterWritten != null) {
+                afterWritten.run();
+            }
+        }));
+    }
+
+    /**
+     * Counts the bytes of an output that was written, or records that it was already up to date and left alone.
+     *
+     * @return how the output came to be, for the message about it
+     */
+    private static String recordWrite(OutputFiles.WriteOutcome writeOutcome, File outputFile, FilenameAttachableImageType imageType, DensityResult result) {
+        if (writeOutcome == OutputFiles.WriteOutcome.UNCHANGED) {
+            ConversionMetrics.getShared().recordUnchangedOutput(imageType);
+            return "left unchanged";
+        }
+        result.addBytesWritten(outputFile.length());
+        return "created";
     }
 
     /**
@@ -135,6 +683,10 @@ public abstract class SvgImageTransformer implements Transformable {
         return inputSvgPath;
     }
 
+    public ConversionSettings getSettings() {
+        return settings;
+    }
+
     public String getInputSvgFileName() {
         return inputSvgFileName;
     }
@@ -3,7 +3,8 @@ package me.nathan3882.svgtosizedpngconverter.types;
 public enum FileType {
 
     SVG("svg"),
-    PNG("png");
+    PNG("png"),
+    XML("xml");
 
     private final String extensionNoDot;
 
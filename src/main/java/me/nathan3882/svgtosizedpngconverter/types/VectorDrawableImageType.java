@@ -0,0 +1,60 @@
+package me.nathan3882.svgtosizedpngconverter.types;
+
+import me.nathan3882.svgtosizedpngconverter.TransformerType;
+
+import java.io.File;
+
+/**
+ * The single Android VectorDrawable that stands in for every {@link AndroidCompatibleImageType} with --vector-drawable.
+ * It's not one of the densities, so it's never rendered, but it's placed and recorded in the same way as them.
+ */
+public enum VectorDrawableImageType implements FilenameAttachableImageType {
+
+    //Density independent, in the plain drawable directory, sized in dp like the baseline mdpi png.
+    VECTOR("drawable", AndroidCompatibleImageType.M_DPI.getWidth(), AndroidCompatibleImageType.M_DPI.getHeight());
+
+    private final String directoryName;
+    private final int width;
+    private final int height;
+
+    VectorDrawableImageType(String directoryName, int width, int height) {
+        this.directoryName = directoryName;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public boolean isPrepended() {
+        return true;
+    }
+
+    /**
+     * Get the width
+     *
+     * @return the width of the drawable in dp
+     */
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height
+     *
+     * @return the height of the drawable in dp
+     */
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public String getFilenameAttachString() {
+        return directoryName + File.separatorChar;
+    }
+
+    @Override
+    public TransformerType getTransformerType() {
+        return TransformerType.ANDROID;
+    }
+}
@@ -0,0 +1,246 @@
+package me.nathan3882.svgtosizedpngconverter.watch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import me.nathan3882.svgtosizedpngconverter.BatchConverter;
+import me.nathan3882.svgtosizedpngconverter.ConversionEngine;
+import me.nathan3882.svgtosizedpngconverter.ConversionSettings;
+import me.nathan3882.svgtosizedpngconverter.svglogic.SvgDocumentCache;
+
+/**
+ * Converts every svg an input argument names, then keeps the engine warm and watches their directories with a
+ * {@link WatchService}, converting each svg again as soon as it's saved, and deleting the images of each svg that's
+ * deleted. Only the svgs that changed are converted, so a designer iterating on one icon sees its images within
+ * moments of saving it, without retyping the arguments.
+ * <p>
+ * Editors often save a file as a burst of events, such as a truncate and a write, or a write to a temporary file
+ * that's then moved into place, so changes are collected until none have arrived for {@link #QUIET_MILLIS} and then
+ * handled together, each svg once, by what's on the disk by then.
+ */
+public class ConversionWatcher {
+
+    /**
+     * How long to wait for the directories to go quiet after a change before converting what changed.
+     */
+    public static final long QUIET_MILLIS = 300;
+
+    private final ConversionSettings settings;
+    private final BatchConverter.InputPattern inputPattern;
+    private final File imageOutputDirectory;
+    private final Path outputPath;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<Path> knownInputs = new TreeSet<>();
+
+    /**
+     * @param settings             the settings to convert every svg with, which can't have a texture atlas
+     * @param inputArgument        a directory, a glob such as {@code icons/**}{@code /*.svg}, or an svg file
+     * @param imageOutputDirectory the directory to recreate the inputs' sub paths inside of
+     */
+    public ConversionWatcher(ConversionSettings settings, String inputArgument, File imageOutputDirectory) {
+        if (settings.getTextureAtlas().isPresent()) {
+            throw new IllegalArgumentException("--atlas can't be used with --watch, as the sheets are packed from every svg's pngs at once.");
+        }
+        this.settings = settings;
+        this.inputPattern = BatchConverter.InputPattern.of(inputArgument);
+        this.imageOutputDirectory = imageOutputDirectory;
+        this.outputPath = imageOutputDirectory.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Converts every svg, then converts those that change until the process is stopped or this thread is
+     * interrupted. What's been converted is saved after every change, as the process is usually stopped by Ctrl+C.
+     */
+    public void run() throws IOException {
+        final Path baseDirectory = inputPattern.getBaseDirectory();
+        if (!Files.isDirectory(baseDirectory)) {
+            System.out.println("We cant find the directory @ " + baseDirectory + " to watch.");
+            return;
+        }
+
+        final ConversionEngine conversionEngine = new ConversionEngine(settings);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            //Watch before the first conversion, so that svgs saved while it's running are converted again after it.
+            register(baseDirectory, watchService);
+
+            final List<BatchConverter.BatchInput> inputs = inputPattern.findInputs(imageOutputDirectory);
+            for (BatchConverter.BatchInput input : inputs) {
+                knownInputs.add(input.getSvgFile().toPath());
+            }
+            convert(inputs, conversionEngine);
+            System.out.println("Watching " + baseDirectory + " for svgs that change, press Ctrl+C to stop.");
+
+            while (true) {
+                final Set<Path> changedPaths = new TreeSet<>();
+                boolean overflowed = false;
+
+                //Wait for a change, then gather any more until the directories go quiet.
+                WatchKey watchKey = watchService.take();
+                while (watchKey != null) {
+                    overflowed |= drain(watchKey, watchService, changedPaths);
+                    watchKey = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflowed) {
+                    //Events were lost, so check every svg there was and is.
+                    changedPaths.addAll(knownInputs);
+                    for (BatchConverter.BatchInput input : inputPattern.findInputs(imageOutputDirectory)) {
+                        changedPaths.add(input.getSvgFile().toPath());
+                    }
+                }
+                handleChanges(changedPaths, conversionEngine);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            conversionEngine.shutdown();
+        }
+        System.out.println("Stopped watching for svgs that change.");
+    }
+
+    /**
+     * Watches a directory, and every directory inside of it if the input pattern can match svgs in them. The output
+     * directory is never watched, as the images written to it would be seen as changes, and svgs converted again.
+     */
+    private void register(Path directory, WatchService watchService) throws IOException {
+        final List<Path> directories;
+        try (Stream<Path> walk = Files.walk(directory, inputPattern.isRecursive() ? Integer.MAX_VALUE : 0)) {
+            directories = walk.filter(Files::isDirectory).filter(path -> !isOutput(path)).collect(Collectors.toList());
+        }
+        for (Path subDirectory : directories) {
+            final WatchKey watchKey = subDirectory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(watchKey, subDirectory);
+        }
+    }
+
+    /**
+     * Adds the path of every event of a watch key to the changed paths, and watches any directories created.
+     *
+     * @return true if events were lost
+     */
+    private boolean drain(WatchKey watchKey, WatchService watchService, Set<Path> changedPaths) throws IOException {
+        final Path directory = watchedDirectories.get(watchKey);
+        boolean overflowed = false;
+
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                overflowed = true;
+                continue;
+            }
+            final Path path = directory.resolve((Path) watchEvent.context());
+            if (isOutput(path)) {
+                continue;
+            }
+
+            if (watchEvent.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                if (!inputPattern.isRecursive()) {
+                    continue;
+                }
+                //Svgs may have been created inside of it before it was watched, such as when it was moved here.
+                try {
+                    register(path, watchService);
+                    try (Stream<Path> walk = Files.walk(path)) {
+                        walk.filter(Files::isRegularFile).forEach(changedPaths::add);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    overflowed = true; //It changed again while being walked, so check everything once it's quiet.
+                }
+                continue;
+            }
+            changedPaths.add(path);
+        }
+
+        if (!watchKey.reset()) {
+            watchedDirectories.remove(watchKey); //The directory is gone.
+        }
+        return overflowed;
+    }
+
+    /**
+     * Converts the svgs that were created or changed, and deletes the images of those that were deleted, along with
+     * any inside of deleted directories.
+     */
+    private void handleChanges(Set<Path> changedPaths, ConversionEngine conversionEngine) throws IOException {
+        final List<BatchConverter.BatchInput> changedInputs = new ArrayList<>();
+        final Set<Path> deletedInputs = new TreeSet<>();
+
+        for (Path path : changedPaths) {
+            if (Files.isRegularFile(path)) {
+                if (inputPattern.matches(path)) {
+                    changedInputs.add(inputPattern.toBatchInput(path));
+                    knownInputs.add(path);
+                }
+            } else if (!Files.exists(path)) {
+                for (Path knownInput : knownInputs) {
+                    if (knownInput.startsWith(path)) {
+                        deletedInputs.add(knownInput);
+                    }
+                }
+            }
+        }
+
+        for (Path deletedInput : deletedInputs) {
+            knownInputs.remove(deletedInput);
+            removeOutputs(inputPattern.toBatchInput(deletedInput), conversionEngine);
+        }
+
+        for (BatchConverter.BatchInput input : changedInputs) {
+            //A save can keep the size, and land within the modified time's resolution, so don't trust the parse.
+            SvgDocumentCache.getShared().invalidate(input.getSvgFile());
+        }
+        if (!changedInputs.isEmpty()) {
+            convert(changedInputs, conversionEngine);
+        } else if (!deletedInputs.isEmpty()) {
+            conversionEngine.saveManifests();
+        }
+    }
+
+    private void removeOutputs(BatchConverter.BatchInput input, ConversionEngine conversionEngine) {
+        final File outputDirectory = getOutputDirectory(input);
+        try {
+            final List<File> deletedFiles = conversionEngine.removeOutputs(input.getSvgFile(), outputDirectory);
+            System.out.println(input.getSvgFile().getPath() + " was deleted, so its " + deletedFiles.size() + " images in " + outputDirectory.getPath() + " were too.");
+        } catch (IOException e) {
+            System.out.println("ERROR: Not every image of the deleted " + input.getSvgFile().getPath() + " could be deleted - " + e);
+        }
+    }
+
+    private void convert(List<BatchConverter.BatchInput> inputs, ConversionEngine conversionEngine) throws IOException {
+        final BatchConverter.BatchSummary batchSummary = new BatchConverter(conversionEngine).convertAll(inputs, imageOutputDirectory);
+        System.out.println(batchSummary);
+
+        //Watching only stops when the process is, so don't wait until then to save what's been converted.
+        conversionEngine.saveManifests();
+        conversionEngine.writeMetrics(settings);
+    }
+
+    private boolean isOutput(Path path) {
+        return path.toAbsolutePath().normalize().startsWith(outputPath);
+    }
+
+    private File getOutputDirectory(BatchConverter.BatchInput input) {
+        return input.getRelativeDirectory().toString().isEmpty()
+                ? imageOutputDirectory
+                : new File(imageOutputDirectory, input.getRelativeDirectory().toString());
+    }
+}